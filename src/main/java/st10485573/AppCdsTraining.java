@@ -0,0 +1,90 @@
+package st10485573;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.swing.GroupLayout;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JPasswordField;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.JTextPane;
+
+/**
+ * A short training run used by the appcds Maven profile to build a class data
+ * sharing (AppCDS) archive. The JVM records every class loaded here and saves
+ * them already parsed, so the real app can map them in instead of loading them
+ * one by one at start-up.
+ *
+ * It must work without a screen (the build runs it with java.awt.headless=true),
+ * so it builds the same kinds of Swing components the forms use but never opens a window.
+ *
+ * @author Funiwe Ngobeni
+ */
+public final class AppCdsTraining {
+
+    private static final String[] GUI_CLASSES = {
+        "st10485573.RegistrationGUI", "st10485573.LoginGUI", "st10485573.MessageGUI"
+    };
+
+    private AppCdsTraining() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        // The non-GUI side: register, log in, send and report, like the headless mode does
+        Path messages = Files.createTempDirectory("quickchat-appcds");
+        Registration registration = new Registration(new UserDirectory(), new PasswordHasher(1000));
+        Login login = new Login(registration);
+        QuickChatCli cli = new QuickChatCli(registration, login, new Report(), new MessageJsonStore(messages),
+                new PrintStream(new ByteArrayOutputStream()));
+        cli.run(new BufferedReader(new StringReader(String.join("\n",
+                "register kyl_1 Passw0rd! +27838968976 John Doe",
+                "login kyl_1 Passw0rd!",
+                "send +27834557896 \"Did you get the cake?\"",
+                "store +27838884567 \"Where are you? You are late!\"",
+                "query report",
+                "query recipient +27838884567",
+                "load"))));
+
+        // The GUI side: our form classes and the components they are built from
+        for (String name : GUI_CLASSES) {
+            Class.forName(name);
+        }
+        JPanel panel = new JPanel();
+        GroupLayout layout = new GroupLayout(panel);
+        panel.setLayout(layout);
+        JLabel logo = new JLabel(AppImages.getLogo());
+        JTextField field = new JTextField(20);
+        JPasswordField password = new JPasswordField(20);
+        JButton button = new JButton("Register");
+        layout.setHorizontalGroup(layout.createSequentialGroup().addComponent(logo).addComponent(field)
+                .addComponent(password).addComponent(button));
+        layout.setVerticalGroup(layout.createParallelGroup().addComponent(logo).addComponent(field)
+                .addComponent(password).addComponent(button));
+        panel.doLayout();
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Browse Messages", new JScrollPane(new JTable(new MessageTableModel(new Report()))));
+        tabs.addTab("Full Report", new JScrollPane(new JTextArea(cli.execute("query report"))));
+        tabs.addTab("Text", new JTextPane());
+        tabs.addTab("Filter", new JComboBox<>(new String[] {"All", "Sent", "Stored"}));
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(messages)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(messages);
+        System.out.println("AppCDS training run finished: " + cli.getStatistics());
+    }
+}
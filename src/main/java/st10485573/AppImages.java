@@ -0,0 +1,53 @@
+package st10485573;
+
+import java.util.concurrent.CompletableFuture;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+
+/**
+ * Loads the app's images once and shares them between the forms.
+ * The logo used to be decoded again by every form that showed it, on the
+ * Swing thread. Now preload starts decoding it on a background thread as
+ * soon as the app starts, and every form gets the same ImageIcon.
+ *
+ * @author Funiwe Ngobeni
+ */
+public final class AppImages {
+
+    private static final String LOGO_PATH = "/logo.png";
+
+    private static volatile CompletableFuture<Icon> logo;
+
+    private AppImages() {
+    }
+
+    /**
+     * Starts decoding the images in the background, if that hasn't started yet.
+     */
+    public static void preload() {
+        logoFuture();
+    }
+
+    /**
+     * The QuickChat logo. Waits for the background decode if it is still running.
+     */
+    public static Icon getLogo() {
+        return logoFuture().join();
+    }
+
+    private static CompletableFuture<Icon> logoFuture() {
+        CompletableFuture<Icon> future = logo;
+        if (future == null) {
+            synchronized (AppImages.class) {
+                future = logo;
+                if (future == null) {
+                    // ImageIcon waits until the image is fully decoded, so this thread does the waiting
+                    future = CompletableFuture.supplyAsync(() -> new ImageIcon(AppImages.class.getResource(LOGO_PATH)),
+                            runnable -> new Thread(runnable, "quickchat-image-loader").start());
+                    logo = future;
+                }
+            }
+        }
+        return future;
+    }
+}
@@ -0,0 +1,57 @@
+package st10485573;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs slow work (saving and loading files, building reports) away from the
+ * Swing Event Dispatch Thread, so the screen keeps repainting while it happens.
+ * Each task gets its own virtual thread; they are cheap, and most of the work
+ * here is waiting on the disk.
+ *
+ * @author Funiwe Ngobeni
+ */
+public final class BackgroundTasks {
+
+    private static final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("quickchat-background-", 0).factory());
+
+    private BackgroundTasks() {
+    }
+
+    /**
+     * Starts the work in the background.
+     */
+    public static <T> CompletableFuture<T> submit(Callable<T> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return work.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Starts the work in the background and then calls onSuccess (or onFailure
+     * with the cause) back on the Event Dispatch Thread.
+     */
+    public static <T> void run(Callable<T> work, Consumer<T> onSuccess, Consumer<Throwable> onFailure) {
+        submit(work).whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                onFailure.accept(unwrap(error));
+            } else {
+                onSuccess.accept(result);
+            }
+        }));
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,191 @@
+package st10485573;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Registers many users at once from a CSV file, without the GUI.
+ * Each row is username,password,cell,first name,last name. Rows are read in
+ * chunks and every chunk is validated and registered in parallel using the
+ * same rules as the registration form. Rows that fail go to a rejects file
+ * together with the reasons. If the same username or cell number appears
+ * twice in one chunk, whichever row is registered first wins.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class BulkUserImporter {
+
+    // How many rows we read before handing them to the parallel workers
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private static final int COLUMN_COUNT = 5;
+
+    private final Registration registration;
+    private final int chunkSize;
+
+    public BulkUserImporter(Registration registration) {
+        this(registration, DEFAULT_CHUNK_SIZE);
+    }
+
+    public BulkUserImporter(Registration registration, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive, got " + chunkSize);
+        }
+        this.registration = registration;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * What happened during an import.
+     */
+    public static final class Summary {
+        private final long rowsRead;
+        private final long accepted;
+        private final long rejected;
+        private final long elapsedNanos;
+
+        Summary(long rowsRead, long accepted, long rejected, long elapsedNanos) {
+            this.rowsRead = rowsRead;
+            this.accepted = accepted;
+            this.rejected = rejected;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRowsRead() { return rowsRead; }
+        public long getAccepted() { return accepted; }
+        public long getRejected() { return rejected; }
+        public long getElapsedNanos() { return elapsedNanos; }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rowsRead / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d of %d rows (%d rejected) in %.2f s, %.0f rows/sec",
+                    accepted, rowsRead, rejected, elapsedNanos / 1e9, getRowsPerSecond());
+        }
+    }
+
+    /**
+     * Imports every row of the CSV file and writes rejected rows to rejectsFile.
+     * A first line starting with "username" is treated as a header and skipped.
+     */
+    public Summary importFile(Path csvFile, Path rejectsFile) throws IOException {
+        long start = System.nanoTime();
+        long rowsRead = 0, accepted = 0, rejected = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectsFile, StandardCharsets.UTF_8)) {
+            rejects.write("line,reasons,row");
+            rejects.newLine();
+
+            List<String> chunk = new ArrayList<>(chunkSize);
+            long lineNumber = 0;
+            long chunkFirstLine = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && line.regionMatches(true, 0, "username", 0, 8)) {
+                    chunkFirstLine = 2;
+                    continue; // Header row
+                }
+                chunk.add(line);
+                if (chunk.size() == chunkSize) {
+                    accepted += importChunk(chunk, chunkFirstLine, rejects);
+                    rowsRead += chunk.size();
+                    chunkFirstLine = lineNumber + 1;
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                accepted += importChunk(chunk, chunkFirstLine, rejects);
+                rowsRead += chunk.size();
+            }
+            rejected = rowsRead - accepted;
+        }
+
+        return new Summary(rowsRead, accepted, rejected, System.nanoTime() - start);
+    }
+
+    // Registers one chunk of rows in parallel and writes its rejects in file order.
+    // Returns how many rows were accepted.
+    private int importChunk(List<String> rows, long firstLineNumber, BufferedWriter rejects) throws IOException {
+        String[] reasons = new String[rows.size()];
+        IntStream.range(0, rows.size()).parallel().forEach(i -> reasons[i] = importRow(rows.get(i)));
+
+        int accepted = 0;
+        for (int i = 0; i < reasons.length; i++) {
+            if (reasons[i] == null) {
+                accepted++;
+            } else {
+                rejects.write((firstLineNumber + i) + "," + reasons[i] + "," + quote(rows.get(i)));
+                rejects.newLine();
+            }
+        }
+        return accepted;
+    }
+
+    // Returns null if the row was registered, otherwise the reasons it was rejected
+    private String importRow(String row) {
+        List<String> fields = parseCsvRow(row);
+        if (fields == null || fields.size() != COLUMN_COUNT) {
+            return "MALFORMED_ROW";
+        }
+        RegistrationResult result = registration.register(fields.get(0), fields.get(1), fields.get(2), fields.get(3), fields.get(4));
+        if (result.isSuccessful()) {
+            return null;
+        }
+        StringBuilder reasons = new StringBuilder();
+        for (RegistrationRule rule : result.getFailedRules()) {
+            if (reasons.length() > 0) reasons.append(';');
+            reasons.append(rule.name());
+        }
+        return reasons.toString();
+    }
+
+    /**
+     * Splits one CSV line into its fields. Fields may be wrapped in double quotes,
+     * with "" inside quotes meaning a single quote character.
+     * Returns null if a quoted field is never closed.
+     */
+    static List<String> parseCsvRow(String row) {
+        List<String> fields = new ArrayList<>(COLUMN_COUNT);
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (inQuotes) {
+                if (c == '"' && i + 1 < row.length() && row.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    inQuotes = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (inQuotes) return null;
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,85 @@
+package st10485573;
+
+/**
+ * Counts how often each item has been seen, in a fixed amount of memory, by giving
+ * up a little accuracy. There are depth rows of width counters; an item adds one
+ * to a counter in every row (picked by a different hash per row), and its count
+ * is the smallest of its counters, since other items can only have added to them.
+ *
+ * So an estimate is never too low, and with N items added it is at most
+ * e / width * N too high in all but e^-depth of the cases. For example width 2048
+ * and depth 5 (80 KB) is within 0.13% of N, 99.3% of the time.
+ *
+ * Not thread-safe; MessageStatistics does the locking.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final long[] counters; // depth rows of width, one after the other
+    private long total;
+
+    public CountMinSketch(int width, int depth) {
+        if (width <= 0 || depth <= 0 || (long) width * depth > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Width and depth must be positive and not too big, got " + width + " and " + depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counters = new long[width * depth];
+    }
+
+    /**
+     * Counts an item by its 64-bit hash (see HyperLogLog.hash64) and returns its new estimate.
+     */
+    public long add(long hash) {
+        total++;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int slot = slot(hash, row);
+            estimate = Math.min(estimate, ++counters[slot]);
+        }
+        return estimate;
+    }
+
+    /**
+     * About how many times the item has been added: never less, and rarely more than getErrorBound() more.
+     */
+    public long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[slot(hash, row)]);
+        }
+        return estimate;
+    }
+
+    // Row i uses the hash h1 + i * h2, built from the two halves of the 64-bit hash
+    private int slot(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * width + ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+    }
+
+    public long getTotal() { return total; }
+    public int getWidth() { return width; }
+    public int getDepth() { return depth; }
+
+    /**
+     * How far over an estimate can be right now (e / width * total), except for getFailureChance() of them.
+     */
+    public long getErrorBound() {
+        return (long) Math.ceil(Math.E / width * total);
+    }
+
+    /**
+     * The chance an estimate is further over than getErrorBound(), e^-depth.
+     */
+    public double getFailureChance() {
+        return Math.exp(-depth);
+    }
+
+    public long getMemoryBytes() {
+        return (long) counters.length * Long.BYTES;
+    }
+}
@@ -0,0 +1,89 @@
+package st10485573;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks usernames and passwords against the UserDirectory.
+ * Password hashing is slow on purpose, so verifyAsync() runs it on a small
+ * bounded pool of worker threads and hands back a future. That way the Swing
+ * thread (or a server thread) never waits for the hash itself.
+ * If the queue is full the future fails with a RejectedExecutionException.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class CredentialVerifier {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final AtomicInteger poolNumber = new AtomicInteger();
+
+    private final UserDirectory userDirectory;
+    private final PasswordHasher passwordHasher;
+    private final ThreadPoolExecutor workers;
+    // How many times we actually ran the password hash
+    private final AtomicLong hashChecks = new AtomicLong();
+
+    public CredentialVerifier(UserDirectory userDirectory, PasswordHasher passwordHasher) {
+        this(userDirectory, passwordHasher, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public CredentialVerifier(UserDirectory userDirectory, PasswordHasher passwordHasher, int threads, int queueCapacity) {
+        this.userDirectory = userDirectory;
+        this.passwordHasher = passwordHasher;
+        this.workers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), daemonThreads());
+        this.workers.allowCoreThreadTimeOut(true); // Don't keep idle threads around between logins
+    }
+
+    /**
+     * Checks the credentials on the calling thread.
+     * Returns the matching account, or null if the username or password is wrong.
+     */
+    public UserAccount verify(String userName, String password) {
+        hashChecks.incrementAndGet();
+        UserAccount account = userDirectory.find(userName);
+        if (account == null) {
+            passwordHasher.verifyAgainstDummy(password); // Take just as long as a wrong password
+            return null;
+        }
+        return passwordHasher.verify(password, account.getPasswordHash()) ? account : null;
+    }
+
+    /**
+     * Checks the credentials on a worker thread.
+     * The future completes with the matching account, or null if they are wrong.
+     */
+    public CompletableFuture<UserAccount> verifyAsync(String userName, String password) {
+        try {
+            return CompletableFuture.supplyAsync(() -> verify(userName, password), workers);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e); // Too many logins waiting already
+        }
+    }
+
+    public long getHashCheckCount() {
+        return hashChecks.get();
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    // Daemon threads so an unfinished login never stops the app from closing
+    private static ThreadFactory daemonThreads() {
+        int pool = poolNumber.incrementAndGet();
+        AtomicInteger threadNumber = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "credential-verifier-" + pool + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
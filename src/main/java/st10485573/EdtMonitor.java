@@ -0,0 +1,115 @@
+package st10485573;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Watches the Swing Event Dispatch Thread (EDT) so we notice when it gets stuck.
+ * Once installed, every event is timed and any stretch where the EDT was busy
+ * for longer than the threshold is counted as a slow event. Code that must never run on the EDT (file I/O,
+ * going through every message) calls checkOffEdt, which counts a violation
+ * if it finds itself on the EDT anyway.
+ *
+ * Until install is called this class does nothing and doesn't touch AWT at all,
+ * so the non-GUI parts of the app can call checkOffEdt freely.
+ *
+ * @author Funiwe Ngobeni
+ */
+public final class EdtMonitor {
+
+    public static final long DEFAULT_THRESHOLD_MILLIS = 100;
+
+    // The thread that dispatched the most recent event, or null before install
+    private static volatile Thread dispatchThread;
+    private static volatile long thresholdNanos = Long.MAX_VALUE;
+    private static volatile TimingEventQueue queue;
+
+    private static final LongAdder slowEvents = new LongAdder();
+    private static final AtomicLong longestDispatchNanos = new AtomicLong();
+    private static final LongAdder offEdtViolations = new LongAdder();
+    private static volatile String lastViolation;
+
+    private EdtMonitor() {
+    }
+
+    /**
+     * Starts timing every event on the EDT. Calling it again only changes the threshold.
+     */
+    public static synchronized void install(long thresholdMillis) {
+        thresholdNanos = thresholdMillis * 1_000_000L;
+        if (queue == null) {
+            queue = new TimingEventQueue();
+            queue.pushOntoSystemQueue();
+        }
+    }
+
+    /**
+     * Call this at the start of work that would freeze the screen if it ran on the EDT.
+     */
+    public static void checkOffEdt(String work) {
+        Thread edt = dispatchThread;
+        if (edt != null && edt == Thread.currentThread()) {
+            offEdtViolations.increment();
+            lastViolation = work;
+        }
+    }
+
+    public static long getSlowEventCount() { return slowEvents.sum(); }
+    public static long getLongestDispatchMillis() { return longestDispatchNanos.get() / 1_000_000L; }
+    public static long getOffEdtViolationCount() { return offEdtViolations.sum(); }
+    public static String getLastViolation() { return lastViolation; }
+
+    /**
+     * Clears the counters, e.g. between tests.
+     */
+    public static void reset() {
+        slowEvents.reset();
+        longestDispatchNanos.set(0);
+        offEdtViolations.reset();
+        lastViolation = null;
+    }
+
+    // Replaces the system event queue and times each event as it is dispatched.
+    // A modal dialog dispatches more events from inside the current one;
+    // the EDT isn't stuck while it does that, so we only time the stretches between
+    // one event starting or finishing and the next, while some event is running.
+    private static final class TimingEventQueue extends EventQueue {
+        // Only touched on the EDT
+        private int depth;
+        private long lastBoundaryNanos;
+
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            dispatchThread = Thread.currentThread();
+            long now = System.nanoTime();
+            if (depth > 0) {
+                record(now - lastBoundaryNanos); // The outer event was busy until now
+            }
+            lastBoundaryNanos = now;
+            depth++;
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                depth--;
+                now = System.nanoTime();
+                record(now - lastBoundaryNanos);
+                lastBoundaryNanos = now;
+            }
+        }
+
+        // Kept in here rather than in install, so loading EdtMonitor itself never loads AWT classes
+        void pushOntoSystemQueue() {
+            Toolkit.getDefaultToolkit().getSystemEventQueue().push(this);
+        }
+
+        private void record(long busyNanos) {
+            longestDispatchNanos.accumulateAndGet(busyNanos, Math::max);
+            if (busyNanos > thresholdNanos) {
+                slowEvents.increment();
+            }
+        }
+    }
+}
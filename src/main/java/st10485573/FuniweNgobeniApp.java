@@ -23,6 +23,11 @@
  */
 package st10485573;
 
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 
@@ -35,27 +40,86 @@ import javax.swing.JOptionPane;
  */
 public class FuniweNgobeniApp {
 
+    // Where registered users are kept between runs
+    private static final Path DATA_DIRECTORY = Path.of("quickchat-data");
+
     /**
      * Main method to launch the QuickChat application.
      * It creates the core logic objects and displays the initial Registration GUI.
      *
-     * @param args Command-line arguments (not used).
+     * With --headless it runs the command line (QuickChatCli) instead, without any windows,
+     * with --server it serves clients over TCP (QuickChatServer), and with --follower
+     * it keeps a read-only copy of a server's messages (ReplicationFollower).
+     *
+     * @param args Command-line arguments, see QuickChatCli, QuickChatServer and ReplicationFollower for the options.
      */
     public static void main(String[] args) {
+        // Checked before anything else, so a headless run never loads a single Swing class
+        if (Arrays.asList(args).contains("--headless")) {
+            System.exit(QuickChatCli.launch(args));
+        }
+        if (Arrays.asList(args).contains("--server")) {
+            System.exit(QuickChatServer.launch(args));
+        }
+        if (Arrays.asList(args).contains("--follower")) {
+            System.exit(ReplicationFollower.launch(args));
+        }
+
+        // Start decoding the logo in the background while Swing starts up
+        AppImages.preload();
+
+        // Opening the user files is disk work, so it happens here on the main thread, before the EDT takes over
+        UserDirectory userDirectory = openUserDirectory();
+
         // It's good practice to run Swing GUI code on the Event Dispatch Thread (EDT)
         javax.swing.SwingUtilities.invokeLater(new Runnable() {
             public void run() {
+                // Warn us if the EDT is ever kept busy for too long
+                EdtMonitor.install(EdtMonitor.DEFAULT_THRESHOLD_MILLIS);
+
                 // Create core business logic objects
-                Registration reg = new Registration();
-                Login login = new Login(reg); // Login logic depends on Registration data
+                Registration reg = new Registration(userDirectory);
 
                 // Start with the registration form.
-                // The RegistrationGUI will be responsible for transitioning to LoginGUI.
-                RegistrationGUI regGUI = new RegistrationGUI(reg, login);
+                // The RegistrationGUI will be responsible for transitioning to LoginGUI,
+                // and the Login (which depends on Registration data) is only made then.
+                RegistrationGUI regGUI = new RegistrationGUI(reg, () -> new Login(reg));
+                if (StartupClock.isTimingEnabled()) {
+                    regGUI.addWindowListener(new WindowAdapter() {
+                        @Override
+                        public void windowOpened(WindowEvent e) {
+                            System.err.println("# First frame after " + StartupClock.millisSinceJvmStart() + " ms");
+                        }
+                    });
+                }
                 regGUI.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE); // Exit app when this main window is closed
                 regGUI.setLocationRelativeTo(null); // Center it on screen
                 regGUI.setVisible(true); // Show it!
             }
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * Opens the users saved by earlier runs. If the files can't be opened we still
+     * start, but new users will only be kept until the app closes.
+     */
+    private static UserDirectory openUserDirectory() {
+        try {
+            PersistentUserStore store = PersistentUserStore.open(DATA_DIRECTORY);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    System.err.println("Could not close the user store: " + e.getMessage());
+                }
+            }));
+            return new UserDirectory(store);
+        } catch (IOException e) {
+            String warning = "Could not open saved users (" + e.getMessage() + ").\n"
+                    + "New registrations will not be kept after you close QuickChat.";
+            javax.swing.SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(null, warning, "Storage Error", JOptionPane.WARNING_MESSAGE));
+            return new UserDirectory();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package st10485573;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how long things took, in buckets that double in size (1 ns, 2 ns, 4 ns ... ),
+ * so we can read off percentiles without keeping every measurement.
+ * Many threads can record at once; each bucket is a LongAdder, so they don't fight over one counter.
+ * A percentile is only accurate to within its bucket, which is close enough for
+ * telling 2 microseconds from 2 milliseconds.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class LatencyHistogram {
+
+    // Bucket i holds times from 2^(i-1) up to 2^i - 1 nanoseconds; bucket 0 holds 0
+    private final LongAdder[] buckets = new LongAdder[64];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        totalNanos.add(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) totalNanos.sum() / n;
+    }
+
+    /**
+     * The time that the given fraction (0.5 for the median, 0.99 for p99) of
+     * measurements were at or under, as the top of its bucket. Returns 0 if nothing was recorded.
+     */
+    public long getPercentileNanos(double fraction) {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) return 0;
+        long wanted = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= wanted) {
+                return i == 0 ? 0 : (i == 63 ? Long.MAX_VALUE : (1L << i) - 1);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        totalNanos.reset();
+    }
+
+    /**
+     * A short summary like "p50 1.0 us, p99 16.4 us, mean 2.3 us (1,000 samples)".
+     */
+    @Override
+    public String toString() {
+        return String.format("p50 %.1f us, p99 %.1f us, p99.9 %.1f us, mean %.1f us (%,d samples)",
+                getPercentileNanos(0.5) / 1e3, getPercentileNanos(0.99) / 1e3, getPercentileNanos(0.999) / 1e3,
+                getMeanNanos() / 1e3, getCount());
+    }
+}
@@ -28,30 +28,120 @@ package st10485573;
  * @author Funiwe Ngobeni
  */
 
+import java.util.concurrent.CompletableFuture;
+
 public class Login {
-    private final Registration registration;
-    private boolean accessGranted;
+    // Does the slow password hash check, optionally on its own worker threads
+    private final CredentialVerifier credentialVerifier;
+    // Turns away floods of attempts before they reach the slow password check
+    private final LoginThrottle loginThrottle;
+    // Hands out a token after a successful login so later actions don't need the password again
+    private final SessionManager sessionManager;
+    // The user who logged in last, or null if the last attempt failed
+    private volatile UserAccount currentUser;
+    // The session token of the current user, or null
+    private volatile String sessionToken;
+    // True if the last attempt was turned away by the throttle
+    private volatile boolean lastAttemptThrottled;
+
+    // The source used for attempts made on this computer, e.g. from the GUI
+    public static final String LOCAL_SOURCE = "local";
 
     public Login(Registration registration) {
-        this.registration = registration;
+        this(registration, new CredentialVerifier(registration.getUserDirectory(), registration.getPasswordHasher()),
+                new SessionManager(), new LoginThrottle());
+    }
+
+    public Login(Registration registration, CredentialVerifier credentialVerifier, SessionManager sessionManager, LoginThrottle loginThrottle) {
+        this.credentialVerifier = credentialVerifier;
+        this.sessionManager = sessionManager;
+        this.loginThrottle = loginThrottle;
+        sessionManager.start(); // Idle sessions are expired in the background
     }
 
+    // Checks the credentials on the calling thread. Don't call this from the Swing thread,
+    // because the password hash takes a noticeable amount of time on purpose.
     public boolean loginUser(String userNameAttempt, String passwordAttempt) {
-        accessGranted = userNameAttempt != null && passwordAttempt != null &&
-                        userNameAttempt.equals(registration.getUserName()) &&
-                        passwordAttempt.equals(registration.getPassword());
-        return accessGranted;
+        return loginUser(userNameAttempt, passwordAttempt, LOCAL_SOURCE);
+    }
+
+    // Same as above for attempts coming from somewhere else, like a network address
+    public boolean loginUser(String userNameAttempt, String passwordAttempt, String source) {
+        if (!admit(userNameAttempt, source)) {
+            return false;
+        }
+        return loggedIn(credentialVerifier.verify(userNameAttempt, passwordAttempt));
+    }
+
+    // Same as loginUser, but the hash runs on a worker thread and the result arrives later
+    public CompletableFuture<Boolean> loginUserAsync(String userNameAttempt, String passwordAttempt) {
+        if (!admit(userNameAttempt, LOCAL_SOURCE)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return credentialVerifier.verifyAsync(userNameAttempt, passwordAttempt).thenApply(this::loggedIn);
+    }
+
+    // Asks the throttle first; a throttled attempt costs a map lookup, not a password hash
+    private boolean admit(String userNameAttempt, String source) {
+        lastAttemptThrottled = !loginThrottle.tryAcquire(userNameAttempt, source);
+        if (lastAttemptThrottled) {
+            sessionManager.invalidate(sessionToken);
+            sessionToken = null;
+            currentUser = null;
+        }
+        return !lastAttemptThrottled;
+    }
+
+    // Remembers who logged in and starts their session (account is null if the login failed)
+    private boolean loggedIn(UserAccount account) {
+        loginThrottle.recordResult(account != null);
+        sessionManager.invalidate(sessionToken); // Any earlier session on this Login ends here
+        currentUser = account;
+        sessionToken = account == null ? null : sessionManager.createSession(account.getUserName());
+        return account != null;
+    }
+
+    public LoginThrottle getLoginThrottle() {
+        return loginThrottle;
+    }
+
+    // The token for the current session, or null if nobody is logged in
+    public String getSessionToken() {
+        return sessionToken;
+    }
+
+    // Returns the username the token belongs to, or null if the session is unknown or expired.
+    // This never looks at the password again.
+    public String validateSession(String token) {
+        return sessionManager.validate(token);
+    }
+
+    public void logout() {
+        sessionManager.invalidate(sessionToken);
+        sessionToken = null;
+        currentUser = null;
     }
 
     public String returnLoginStatus() 
     {
+        if (lastAttemptThrottled) {
+            return "Too many login attempts, please wait a moment and try again.";
+        }
+        UserAccount user = currentUser;
         // String interpolation is used here so I don't have to concatinate. 
-        return accessGranted ?
-                String.format("Welcome %s %s,\nit is great to see you.", registration.getFirstName(), registration.getLastName()) :
+        return user != null ?
+                String.format("Welcome %s %s,\nit is great to see you.", user.getFirstName(), user.getLastName()) :
                 "Username & Password do not match our records, please try again.";
     }
 
     public String getUsername() {
-        return registration.getUserName();
+        UserAccount user = currentUser;
+        return user == null ? null : user.getUserName();
+    }
+
+    // The logged-in user's own cell number, or null if nobody is logged in
+    public String getCellPhoneNumber() {
+        UserAccount user = currentUser;
+        return user == null ? null : user.getCellPhoneNumber();
     }
 }
\ No newline at end of file
@@ -24,6 +24,7 @@
 package st10485573;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 /**
  *
@@ -88,7 +89,7 @@ public class LoginGUI extends javax.swing.JFrame
         gridBagConstraints.anchor = java.awt.GridBagConstraints.NORTHWEST;
         jPanel2.add(jLabel1, gridBagConstraints);
 
-        logo.setIcon(new javax.swing.ImageIcon(getClass().getResource("/logo.png"))); // NOI18N
+        logo.setIcon(AppImages.getLogo());
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 1;
         gridBagConstraints.gridy = 0;
@@ -227,22 +228,33 @@ public class LoginGUI extends javax.swing.JFrame
         String username = usernameField.getText();
         String password = new String(passwordField.getPassword());
 
-        // Try logging in with the Login class
-        boolean loggedIn = login.loginUser(username, password);
-        String status = login.returnLoginStatus();
+        // Checking the password hash takes a moment, so it runs in the background.
+        // The button is switched off until we have an answer.
+        loginButton.setEnabled(false);
+        login.loginUserAsync(username, password).whenComplete((loggedIn, error) ->
+                SwingUtilities.invokeLater(() -> showLoginResult(Boolean.TRUE.equals(loggedIn), error)));
+    }//GEN-LAST:event_loginButtonActionPerformed
+
+    // Runs back on the Swing thread once the background login check is done
+    private void showLoginResult(boolean loggedIn, Throwable error) {
+        loginButton.setEnabled(true);
+        if (error != null) {
+            JOptionPane.showMessageDialog(this, "Login is busy right now, please try again.", "Login", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
 
         // Show them the result
-        JOptionPane.showMessageDialog(this, status);
+        JOptionPane.showMessageDialog(this, login.returnLoginStatus());
         
         if (loggedIn)
         {
             // If login is successful, open the message GUI
             // We pass the username so the message part knows who is logged in
             MessageGUI messageGUI = new MessageGUI(login.getUsername());
-            messageGUI.startMessagingInteraction();
+            messageGUI.startMessagingInteraction(); // Just shows the window, so this returns straight away
             dispose(); // Close this login form
         }
-    }//GEN-LAST:event_loginButtonActionPerformed
+    }
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JLabel jLabel1;
@@ -0,0 +1,175 @@
+package st10485573;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits how often someone can try to log in, before any password is checked.
+ * Every username and every source (like an IP address) gets its own token bucket:
+ * each attempt takes a token, and tokens slowly refill. If either bucket is
+ * empty the attempt is turned away straight away, so a flood of guesses never
+ * reaches the slow password hash.
+ *
+ * The buckets are spread over several stripes, each with its own lock and a
+ * size limit. When a stripe is full, the bucket that was used least recently
+ * is dropped, so idle usernames and sources don't pile up forever.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class LoginThrottle {
+
+    // Five tries per username, then one more every 12 seconds
+    public static final int DEFAULT_USER_BURST = 5;
+    public static final double DEFAULT_USER_REFILL_PER_SECOND = 1.0 / 12;
+    // A single source (e.g. one office behind the same address) gets more room
+    public static final int DEFAULT_SOURCE_BURST = 50;
+    public static final double DEFAULT_SOURCE_REFILL_PER_SECOND = 1.0;
+    public static final int DEFAULT_STRIPES = 16;
+    public static final int DEFAULT_ENTRIES_PER_STRIPE = 4096;
+
+    private final StripedBuckets userBuckets;
+    private final StripedBuckets sourceBuckets;
+
+    private final LongAdder throttledAttempts = new LongAdder();
+    private final LongAdder acceptedAttempts = new LongAdder();
+    private final LongAdder rejectedAttempts = new LongAdder();
+
+    public LoginThrottle() {
+        this(DEFAULT_USER_BURST, DEFAULT_USER_REFILL_PER_SECOND, DEFAULT_SOURCE_BURST, DEFAULT_SOURCE_REFILL_PER_SECOND,
+                DEFAULT_STRIPES, DEFAULT_ENTRIES_PER_STRIPE, System::nanoTime);
+    }
+
+    /**
+     * Creates a throttle with its own limits. The clock is in nanoseconds and can be replaced in tests.
+     */
+    public LoginThrottle(int userBurst, double userRefillPerSecond, int sourceBurst, double sourceRefillPerSecond,
+                         int stripes, int entriesPerStripe, LongSupplier nanoClock) {
+        this.userBuckets = new StripedBuckets(userBurst, userRefillPerSecond, stripes, entriesPerStripe, nanoClock);
+        this.sourceBuckets = new StripedBuckets(sourceBurst, sourceRefillPerSecond, stripes, entriesPerStripe, nanoClock);
+    }
+
+    /**
+     * Takes a token for both the username and the source.
+     * Returns false (and counts the attempt as throttled) if either has run out.
+     */
+    public boolean tryAcquire(String userName, String source) {
+        String userKey = userName == null ? "" : userName;
+        String sourceKey = source == null ? "" : source;
+        if (!userBuckets.tryTake(userKey)) {
+            throttledAttempts.increment();
+            return false;
+        }
+        if (!sourceBuckets.tryTake(sourceKey)) {
+            userBuckets.giveBack(userKey); // This attempt never happened as far as the user is concerned
+            throttledAttempts.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records how an attempt that got past the throttle turned out.
+     */
+    public void recordResult(boolean accepted) {
+        if (accepted) {
+            acceptedAttempts.increment();
+        } else {
+            rejectedAttempts.increment();
+        }
+    }
+
+    public long getThrottledCount() { return throttledAttempts.sum(); }
+    public long getAcceptedCount() { return acceptedAttempts.sum(); }
+    public long getRejectedCount() { return rejectedAttempts.sum(); }
+
+    // How many buckets we are holding right now (usernames plus sources)
+    public int getTrackedKeyCount() {
+        return userBuckets.size() + sourceBuckets.size();
+    }
+
+    // One token bucket. Only touched while holding its stripe's lock.
+    private static final class Bucket {
+        double tokens;
+        long lastRefillNanos;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefillNanos = now;
+        }
+    }
+
+    // A set of token buckets split over stripes, each an LRU map with its own lock
+    private static final class StripedBuckets {
+        private final LinkedHashMap<String, Bucket>[] stripes;
+        private final int burst;
+        private final double refillPerNano;
+        private final LongSupplier clock;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        StripedBuckets(int burst, double refillPerSecond, int stripeCount, int entriesPerStripe, LongSupplier clock) {
+            if (burst <= 0 || refillPerSecond < 0 || stripeCount <= 0 || entriesPerStripe <= 0) {
+                throw new IllegalArgumentException("Throttle limits must be positive");
+            }
+            this.burst = burst;
+            this.refillPerNano = refillPerSecond / 1e9;
+            this.clock = clock;
+            this.stripes = new LinkedHashMap[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                // Access order, so the eldest entry is the one that has been idle the longest
+                stripes[i] = new LinkedHashMap<String, Bucket>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+                        return size() > entriesPerStripe;
+                    }
+                };
+            }
+        }
+
+        boolean tryTake(String key) {
+            LinkedHashMap<String, Bucket> stripe = stripeFor(key);
+            synchronized (stripe) {
+                long now = clock.getAsLong();
+                Bucket bucket = stripe.get(key);
+                if (bucket == null) {
+                    stripe.put(key, new Bucket(burst - 1, now));
+                    return true;
+                }
+                bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.lastRefillNanos) * refillPerNano);
+                bucket.lastRefillNanos = now;
+                if (bucket.tokens < 1) {
+                    return false;
+                }
+                bucket.tokens -= 1;
+                return true;
+            }
+        }
+
+        void giveBack(String key) {
+            LinkedHashMap<String, Bucket> stripe = stripeFor(key);
+            synchronized (stripe) {
+                Bucket bucket = stripe.get(key);
+                if (bucket != null) {
+                    bucket.tokens = Math.min(burst, bucket.tokens + 1);
+                }
+            }
+        }
+
+        int size() {
+            int total = 0;
+            for (LinkedHashMap<String, Bucket> stripe : stripes) {
+                synchronized (stripe) {
+                    total += stripe.size();
+                }
+            }
+            return total;
+        }
+
+        private LinkedHashMap<String, Bucket> stripeFor(String key) {
+            int hash = key.hashCode();
+            hash ^= (hash >>> 16); // Spread the high bits like HashMap does
+            return stripes[Math.floorMod(hash, stripes.length)];
+        }
+    }
+}
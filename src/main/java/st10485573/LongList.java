@@ -0,0 +1,65 @@
+package st10485573;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive longs.
+ * It works like an ArrayList&lt;Long&gt; but without boxing every value,
+ * so a column of a million numbers is one array instead of a million objects.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class LongList {
+
+    private long[] values;
+    private int size;
+
+    public LongList() {
+        this(16);
+    }
+
+    public LongList(int initialCapacity) {
+        this.values = new long[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = value;
+    }
+
+    public long get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return values[index];
+    }
+
+    public void set(int index, long value) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        values[index] = value;
+    }
+
+    /**
+     * Removes the value at the given index and shifts everything after it down by one.
+     */
+    public long remove(int index) {
+        long removed = get(index);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return removed;
+    }
+
+    public int indexOf(long value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) return i;
+        }
+        return -1;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+}
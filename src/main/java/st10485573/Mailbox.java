@@ -0,0 +1,188 @@
+package st10485573;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * One recipient's incoming messages: a fixed-size queue that many senders can
+ * add to at once without locking, and one reader takes out in batches.
+ *
+ * It is a ring of slots, each with a sequence number that says whose turn it is.
+ * A sender claims the next slot by moving the tail forward with compareAndSet, writes
+ * its message, then bumps the slot's sequence to hand it to the reader. The reader
+ * walks forward from the head while the slots are ready and hands each one back to
+ * the senders for the next time round. When the ring is full offer() says no
+ * instead of waiting, so a slow reader can never block a sender.
+ *
+ * The slots are made in chunks of 16 the first time a sender reaches them, so a
+ * mailbox that only ever holds a few messages stays small whatever its capacity.
+ *
+ * Once it is empty the reader can retire it (see retireIfEmpty), after which every
+ * offer() fails, so MessageBroker can drop it and start a new one if needed.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class Mailbox {
+
+    /**
+     * Receives the messages drain() takes out, with the System.nanoTime() they were offered at.
+     */
+    public interface Sink {
+        void accept(Message message, long offeredAtNanos);
+    }
+
+    private static final int CHUNK_SIZE = 16;
+    // The tail of a retired mailbox; no sender can claim a slot after it
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final int mask;
+    private final int chunkShift;
+    private final int chunkMask;
+    private final AtomicReferenceArray<Chunk> chunks;
+    // Next position a sender will claim, or RETIRED
+    private final AtomicLong tail = new AtomicLong();
+    // Next position the reader will take; only the reader writes it
+    private volatile long head;
+
+    // Part of the ring. For slot i: sequence equal to the position when a sender may write it,
+    // position + 1 once it holds a message
+    private static final class Chunk {
+        final Message[] messages;
+        final long[] offeredAt;
+        final AtomicLongArray sequences;
+
+        Chunk(int firstSlot, int size) {
+            messages = new Message[size];
+            offeredAt = new long[size];
+            sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, firstSlot + i);
+            }
+        }
+    }
+
+    /**
+     * Creates a mailbox holding up to capacity messages, rounded up to a power of two.
+     */
+    public Mailbox(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Mailbox capacity must be between 1 and 2^30, got " + capacity);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        int chunkSize = Math.min(size, CHUNK_SIZE);
+        this.mask = size - 1;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.chunkMask = chunkSize - 1;
+        this.chunks = new AtomicReferenceArray<>(size / chunkSize);
+    }
+
+    /**
+     * Adds the message, or returns false straight away if the mailbox is full or retired. Safe from any thread.
+     */
+    public boolean offer(Message message, long nowNanos) {
+        while (true) {
+            long position = tail.get();
+            if (position == RETIRED) {
+                return false;
+            }
+            int slot = (int) position & mask;
+            Chunk chunk = chunkFor(slot);
+            int index = slot & chunkMask;
+            long turn = chunk.sequences.getAcquire(index) - position;
+            if (turn == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    chunk.messages[index] = message;
+                    chunk.offeredAt[index] = nowNanos;
+                    chunk.sequences.setRelease(index, position + 1); // Publishes the two writes above to the reader
+                    return true;
+                }
+            } else if (turn < 0) {
+                return false; // The reader hasn't emptied this slot from the last time round: full
+            }
+            // Otherwise another sender got this slot first, so try the next one
+        }
+    }
+
+    // The chunk holding the slot, made now if no sender has reached it before.
+    // Senders only reach a new slot the first time round, so its sequence starts at the slot number.
+    private Chunk chunkFor(int slot) {
+        int number = slot >>> chunkShift;
+        Chunk chunk = chunks.get(number);
+        if (chunk == null) {
+            Chunk made = new Chunk(number << chunkShift, chunkMask + 1);
+            chunk = chunks.compareAndExchange(number, null, made);
+            if (chunk == null) {
+                chunk = made; // Nobody beat us to it
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Takes out up to max messages, oldest first, and passes them to the sink.
+     * Returns how many were taken. Only one thread drains at a time.
+     */
+    public synchronized int drain(Sink sink, int max) {
+        long position = head;
+        int taken = 0;
+        while (taken < max) {
+            int slot = (int) position & mask;
+            Chunk chunk = chunks.get(slot >>> chunkShift);
+            int index = slot & chunkMask;
+            if (chunk == null || chunk.sequences.getAcquire(index) != position + 1) {
+                break; // Empty, or a sender has claimed the slot but not finished writing it
+            }
+            Message message = chunk.messages[index];
+            long at = chunk.offeredAt[index];
+            chunk.messages[index] = null;
+            chunk.sequences.setRelease(index, position + mask + 1);
+            position++;
+            taken++;
+            sink.accept(message, at);
+        }
+        head = position;
+        return taken;
+    }
+
+    /**
+     * Stops the mailbox taking any more messages, but only if it is empty and no sender
+     * is half way through adding one. Returns true if it is now retired.
+     */
+    public synchronized boolean retireIfEmpty() {
+        return tail.compareAndSet(head, RETIRED);
+    }
+
+    public boolean isRetired() {
+        return tail.get() == RETIRED;
+    }
+
+    /**
+     * Roughly how many messages are waiting. Senders may be adding more while we look.
+     */
+    public int size() {
+        long claimed = tail.get();
+        if (claimed == RETIRED) {
+            return 0;
+        }
+        long waiting = claimed - head;
+        return (int) Math.max(0, Math.min(waiting, mask + 1));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * How many slots have been made so far; at most capacity().
+     */
+    public int allocatedSlots() {
+        int made = 0;
+        for (int i = 0; i < chunks.length(); i++) {
+            if (chunks.get(i) != null) {
+                made += chunkMask + 1;
+            }
+        }
+        return made;
+    }
+}
@@ -0,0 +1,215 @@
+package st10485573;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongPredicate;
+
+/**
+ * A hash table from long keys to long values that lives in a memory-mapped file.
+ * Opening it only maps the file, so it takes the same time whether it holds
+ * ten entries or ten million; the operating system pages in the slots we touch.
+ *
+ * Slots use open addressing with linear probing. Key 0 marks an empty slot.
+ * Several entries may share a key (e.g. two usernames with the same hash), so
+ * lookups take a check that decides which of the matching values is the right one.
+ * The table doubles when it gets half full, into a new file that then replaces the old one.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class MappedHashIndex implements AutoCloseable {
+
+    private static final int MAGIC = 0x51434958; // "QCIX"
+    private static final int HEADER_BYTES = 32;
+    private static final int SLOT_BYTES = 16;
+    private static final long MIN_CAPACITY = 1024;
+    // A MappedByteBuffer can't be bigger than 2 GB
+    private static final long MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_BYTES) / SLOT_BYTES;
+
+    // Header layout
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SIZE_OFFSET = 16;
+    private static final int WATERMARK_OFFSET = 24;
+
+    private final Path file;
+    private MappedByteBuffer buffer;
+    private long capacity; // Always a power of two
+    private long size;
+
+    private MappedHashIndex(Path file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = buffer.getLong(CAPACITY_OFFSET);
+        this.size = buffer.getLong(SIZE_OFFSET);
+    }
+
+    /**
+     * Opens the index file, creating an empty one if it doesn't exist yet.
+     */
+    public static MappedHashIndex open(Path file) throws IOException {
+        // A bigger table that grow() didn't get to finish; the file itself is still whole
+        Files.deleteIfExists(growFileFor(file));
+        if (!Files.exists(file)) {
+            // Start empty, with watermark 0 so the owner indexes everything
+            createEmpty(file, MIN_CAPACITY);
+        }
+        MappedByteBuffer buffer = map(file);
+        if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+            throw new IOException(file + " is not a QuickChat index file");
+        }
+        return new MappedHashIndex(file, buffer);
+    }
+
+    /**
+     * Adds an entry. Keys must not be 0.
+     */
+    public synchronized void put(long key, long value) throws IOException {
+        if (key == 0) {
+            throw new IllegalArgumentException("Key 0 is reserved for empty slots");
+        }
+        if ((size + 1) * 2 > capacity) {
+            grow();
+        }
+        insert(buffer, capacity, key, value);
+        size++;
+        buffer.putLong(SIZE_OFFSET, size);
+    }
+
+    /**
+     * Returns the first value stored under the key that the check accepts, or -1 if none does.
+     */
+    public synchronized long find(long key, LongPredicate check) {
+        long mask = capacity - 1;
+        for (long slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int position = slotPosition(slot);
+            long slotKey = buffer.getLong(position);
+            if (slotKey == 0) {
+                return -1;
+            }
+            if (slotKey == key) {
+                long value = buffer.getLong(position + 8);
+                if (check.test(value)) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * A number the owner can store alongside the index, e.g. how much of a data file
+     * has already been indexed, so it knows what to catch up on after a crash.
+     */
+    public synchronized long getWatermark() {
+        return buffer.getLong(WATERMARK_OFFSET);
+    }
+
+    public synchronized void setWatermark(long watermark) {
+        buffer.putLong(WATERMARK_OFFSET, watermark);
+    }
+
+    /**
+     * Writes any changes still in memory out to disk.
+     */
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+    }
+
+    // Doubles the table. The bigger table is built in a file next to ours and then moved over it
+    // in one step, so if we stop half way the old file is still whole and the new one is just
+    // thrown away by open(). The old mapping isn't let go by hand: the garbage collector unmaps
+    // it once nothing points at it. If anything fails, buffer still points at the old table.
+    private void grow() throws IOException {
+        long newCapacity = capacity * 2;
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IOException("Index " + file + " is full");
+        }
+        Path grown = growFileFor(file);
+        MappedByteBuffer bigger;
+        try {
+            createEmpty(grown, newCapacity);
+            bigger = map(grown);
+            for (long slot = 0; slot < capacity; slot++) {
+                int position = slotPosition(slot);
+                long key = buffer.getLong(position);
+                if (key != 0) {
+                    insert(bigger, newCapacity, key, buffer.getLong(position + 8));
+                }
+            }
+            bigger.putLong(SIZE_OFFSET, size);
+            bigger.putLong(WATERMARK_OFFSET, buffer.getLong(WATERMARK_OFFSET));
+            bigger.force();
+            Files.move(grown, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(grown);
+            throw e;
+        }
+        // The mapping follows the file to its new name
+        buffer = bigger;
+        capacity = newCapacity;
+    }
+
+    private static Path growFileFor(Path target) {
+        return target.resolveSibling(target.getFileName() + ".grow");
+    }
+
+    private static void insert(MappedByteBuffer target, long targetCapacity, long key, long value) {
+        long mask = targetCapacity - 1;
+        for (long slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int position = slotPosition(slot);
+            if (target.getLong(position) == 0) {
+                target.putLong(position + 8, value); // Value first, so a crash never leaves a key without its value
+                target.putLong(position, key);
+                return;
+            }
+        }
+    }
+
+    private static void createEmpty(Path target, long capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + capacity * SLOT_BYTES);
+            header.order(ByteOrder.BIG_ENDIAN);
+            header.putInt(MAGIC_OFFSET, MAGIC);
+            header.putLong(CAPACITY_OFFSET, capacity);
+            header.putLong(SIZE_OFFSET, 0);
+            header.putLong(WATERMARK_OFFSET, 0);
+            header.force();
+        }
+    }
+
+    private static MappedByteBuffer map(Path target) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    private static int slotPosition(long slot) {
+        return (int) (HEADER_BYTES + slot * SLOT_BYTES);
+    }
+
+    // Spreads the key's bits so nearby keys (like phone numbers) don't cluster
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
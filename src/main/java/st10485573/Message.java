@@ -17,6 +17,7 @@ public class Message {
     private String messageSender;
     private String messageHash;
     private String messageStatus; // "New", "Sent", "Stored", "Disregarded"
+    private final long timestampMillis; // When the message was written, in milliseconds since 1970 (UTC)
 
     // A random number generator to create unique IDs
     private static final Random idGenerator = new Random();
@@ -37,10 +38,17 @@ public class Message {
         // When a message is new, it has no hash or status yet
         this.messageHash = "";
         this.messageStatus = "New";
+        this.timestampMillis = System.currentTimeMillis();
     }
     
     // This is a special constructor for our tests, so we can use predictable data
     public Message(String id, String sender, String recipient, String payload, String status) {
+        this(id, sender, recipient, payload, status, System.currentTimeMillis());
+    }
+
+    // For a message read back from a file (or a replica) that already has its time
+    public Message(String id, String sender, String recipient, String payload, String status, long timestampMillis) {
+        this.timestampMillis = timestampMillis;
         this.messageID = id;
         this.messageSender = sender;
         this.messageRecipient = recipient;
@@ -57,6 +65,12 @@ public class Message {
     public String getMessageSender() { return messageSender; }
     public String getMessageHash() { return messageHash; }
     public String getMessageStatus() { return messageStatus; }
+    public long getTimestampMillis() { return timestampMillis; }
+
+    /**
+     * The recipient packed into a long, or PhoneNumber.NONE if it is not a valid cell number.
+     */
+    public long getRecipientKey() { return PhoneNumber.pack(messageRecipient); }
 
     // --- These are the 'setter' methods to update the message details ---
     public void setMessageHash(String hash) { this.messageHash = hash; }
@@ -0,0 +1,210 @@
+package st10485573;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Delivers sent messages to their recipients inside this program.
+ * Every recipient (by cell number) gets their own Mailbox, so senders to
+ * different people never touch the same queue (they only share one counter of
+ * waiting messages), and senders to the same person only race on one
+ * compareAndSet. Recipients take their messages out in batches.
+ *
+ * A mailbox is made when the first message for a number arrives and dropped again
+ * once its recipient has taken everything out, so only numbers with messages
+ * waiting use any memory. There can be at most maxMailboxes at once; messages to
+ * yet another number are dropped, so sending to millions of made-up numbers can't
+ * use up the memory. On top of that at most maxQueuedMessages can be waiting across
+ * all mailboxes together. That matters in the GUI and the stand-alone CLI, where the
+ * default broker is filled by every send but hardly anyone ever takes messages out.
+ *
+ * It keeps counts of what was delivered, dropped and received, and how long
+ * messages waited in a mailbox before being picked up.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class MessageBroker {
+
+    // Enough for a recipient who has been away for a while; after that new messages are dropped and counted
+    public static final int DEFAULT_MAILBOX_CAPACITY = 1024;
+    // An empty mailbox is well under 1 KB, but a full one holds 1024 messages, so this
+    // alone doesn't bound the memory; DEFAULT_MAX_QUEUED_MESSAGES does
+    public static final int DEFAULT_MAX_MAILBOXES = 10_000;
+    // A waiting message with a full 250-character payload is about 600 bytes plus its slot,
+    // so all the mailboxes together stay under about 30 MB
+    public static final int DEFAULT_MAX_QUEUED_MESSAGES = 50_000;
+
+    // The broker the app uses when nobody passes one in
+    private static final MessageBroker DEFAULT = new MessageBroker(DEFAULT_MAILBOX_CAPACITY);
+
+    private final int mailboxCapacity;
+    private final int maxMailboxes;
+    private final int maxQueuedMessages;
+    // Messages waiting in any mailbox. Senders add theirs before offering it and take it off again if it is dropped
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final ConcurrentHashMap<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    private final LongAdder deliveredCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder undeliverableCount = new LongAdder();
+    private final LongAdder receivedCount = new LongAdder();
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+
+    public MessageBroker(int mailboxCapacity) {
+        this(mailboxCapacity, DEFAULT_MAX_MAILBOXES);
+    }
+
+    public MessageBroker(int mailboxCapacity, int maxMailboxes) {
+        this(mailboxCapacity, maxMailboxes, DEFAULT_MAX_QUEUED_MESSAGES);
+    }
+
+    public MessageBroker(int mailboxCapacity, int maxMailboxes, int maxQueuedMessages) {
+        if (maxMailboxes <= 0) {
+            throw new IllegalArgumentException("There must be room for at least one mailbox, got " + maxMailboxes);
+        }
+        if (maxQueuedMessages <= 0) {
+            throw new IllegalArgumentException("There must be room for at least one message, got " + maxQueuedMessages);
+        }
+        this.mailboxCapacity = mailboxCapacity;
+        this.maxMailboxes = maxMailboxes;
+        this.maxQueuedMessages = maxQueuedMessages;
+    }
+
+    public static MessageBroker getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Puts the message in its recipient's mailbox. Returns false if it couldn't be
+     * delivered: the recipient isn't a cell number, their mailbox is full, there
+     * are already maxMailboxes other recipients with messages waiting, or
+     * maxQueuedMessages are waiting altogether.
+     * Safe to call from any number of threads at once.
+     */
+    public boolean deliver(Message message) {
+        long recipientKey = message.getRecipientKey();
+        if (recipientKey == PhoneNumber.NONE) {
+            undeliverableCount.increment();
+            return false;
+        }
+        if (queuedCount.incrementAndGet() > maxQueuedMessages) {
+            queuedCount.decrementAndGet();
+            droppedCount.increment();
+            return false;
+        }
+        while (true) {
+            Mailbox mailbox = mailboxFor(recipientKey);
+            if (mailbox != null && mailbox.offer(message, System.nanoTime())) {
+                deliveredCount.increment();
+                return true;
+            }
+            if (mailbox == null || !mailbox.isRetired()) {
+                queuedCount.decrementAndGet();
+                droppedCount.increment();
+                return false;
+            }
+            // The reader emptied and retired it just now; take it out and start a new one
+            mailboxes.remove(recipientKey, mailbox);
+        }
+    }
+
+    /**
+     * Takes up to maxBatch waiting messages for the recipient, oldest first.
+     */
+    public List<Message> receive(String recipient, int maxBatch) {
+        List<Message> batch = new ArrayList<>();
+        receive(PhoneNumber.pack(recipient), maxBatch, batch::add);
+        return batch;
+    }
+
+    /**
+     * Passes up to maxBatch waiting messages for the packed recipient number to the consumer,
+     * without building a list. Returns how many there were.
+     */
+    public int receive(long recipientKey, int maxBatch, Consumer<Message> consumer) {
+        Mailbox mailbox = mailboxes.get(recipientKey);
+        if (mailbox == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        int taken = mailbox.drain((message, offeredAt) -> {
+            deliveryLatency.record(now - offeredAt);
+            consumer.accept(message);
+        }, maxBatch);
+        receivedCount.add(taken);
+        queuedCount.addAndGet(-taken);
+        // Nothing left, so let it go; a sender racing us finds it retired and makes a new one
+        if (mailbox.size() == 0 && mailbox.retireIfEmpty()) {
+            mailboxes.remove(recipientKey, mailbox);
+        }
+        return taken;
+    }
+
+    // The recipient's mailbox, made if needed. Null if there are too many mailboxes already.
+    private Mailbox mailboxFor(long recipientKey) {
+        Mailbox mailbox = mailboxes.get(recipientKey);
+        if (mailbox == null) {
+            if (mailboxes.size() >= maxMailboxes) {
+                return null;
+            }
+            mailbox = mailboxes.computeIfAbsent(recipientKey, key -> new Mailbox(mailboxCapacity));
+        }
+        return mailbox;
+    }
+
+    // --- Metrics ---
+
+    /**
+     * How many messages are waiting for this recipient.
+     */
+    public int getQueueDepth(String recipient) {
+        Mailbox mailbox = mailboxes.get(PhoneNumber.pack(recipient));
+        return mailbox == null ? 0 : mailbox.size();
+    }
+
+    /**
+     * How many messages are waiting across all mailboxes.
+     */
+    public long getTotalQueueDepth() {
+        long total = 0;
+        for (Mailbox mailbox : mailboxes.values()) {
+            total += mailbox.size();
+        }
+        return total;
+    }
+
+    /**
+     * The most messages waiting in any one mailbox right now.
+     */
+    public int getMaxQueueDepth() {
+        int max = 0;
+        for (Mailbox mailbox : mailboxes.values()) {
+            max = Math.max(max, mailbox.size());
+        }
+        return max;
+    }
+
+    public int getMailboxCount() { return mailboxes.size(); }
+    public long getDeliveredCount() { return deliveredCount.sum(); }
+    public long getDroppedCount() { return droppedCount.sum(); }
+    public long getUndeliverableCount() { return undeliverableCount.sum(); }
+    public long getReceivedCount() { return receivedCount.sum(); }
+
+    /**
+     * How long messages waited between deliver() and receive().
+     */
+    public LatencyHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d delivered, %,d received, %,d dropped (mailbox or broker full, or too many mailboxes), %,d undeliverable, %,d waiting in %,d mailboxes; latency %s",
+                getDeliveredCount(), getReceivedCount(), getDroppedCount(), getUndeliverableCount(),
+                getTotalQueueDepth(), getMailboxCount(), deliveryLatency);
+    }
+}
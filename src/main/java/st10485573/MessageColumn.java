@@ -0,0 +1,27 @@
+package st10485573;
+
+/**
+ * The columns the message browser shows, in order. Report returns each row's
+ * values in this order and can sort its rows by any of them.
+ *
+ * @author Funiwe Ngobeni
+ */
+public enum MessageColumn {
+    ID("Message ID"),
+    SENDER("Sender"),
+    RECIPIENT("Recipient"),
+    MESSAGE("Message"),
+    HASH("Hash"),
+    STATUS("Status"),
+    TIME("Time");
+
+    private final String title;
+
+    MessageColumn(String title) {
+        this.title = title;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+}
@@ -1,186 +1,499 @@
 package st10485573;
 
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
-import org.json.simple.JSONObject;
-import java.io.FileWriter;
-import java.io.IOException;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.TableColumn;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 /**
- * Handles the user interface for messaging features using JOptionPane dialogs.
- * This is where the user will interact with the chat app after logging in.
+ * The messaging window the user works in after logging in.
+ * A Compose tab writes a message and sends, stores or disregards it, and
+ * each of the six reports has its own tab. The Browse tab shows every message
+ * in a table that only loads the rows on screen (see MessageTableModel).
+ * Every button just starts the work through BackgroundTasks and returns, and
+ * the result is shown when it comes back, so the window keeps responding while
+ * files are saved or reports built.
+ * The actual messaging logic lives in MessagingService.
  *
  * @author Funiwe Ngobeni
  */
-public class MessageGUI {
+public class MessageGUI extends JFrame {
 
-    // We need the username of the person who logged in
-    private final String loggedInUser;
-    // This object will handle all our arrays and reports
-    private final Report reportManager;
+    // Same look as the login and registration forms
+    private static final Color BACKGROUND = new Color(17, 42, 70);
+    private static final Font LABEL_FONT = new Font("Verdana", Font.BOLD, 14);
+    private static final Font TEXT_FONT = new Font("Verdana", Font.PLAIN, 13);
+    private static final Font REPORT_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 13);
+    // How long typing has to pause before we look up recipient suggestions
+    private static final int SUGGESTION_DELAY_MILLIS = 150;
+
+    private final MessagingService messaging;
+    private final MessageTableModel browserModel;
+
+    private final JTextField recipientField = new JTextField(20);
+    private final JTextArea payloadArea = new JTextArea(6, 30);
+    private final JLabel characterCount = new JLabel();
+    private final JLabel statusLabel = new JLabel(" ");
+    private final List<JButton> composeButtons = new ArrayList<>();
+    private final JTabbedPane tabs = new JTabbedPane();
+    // What to run when a report tab is shown, or null for tabs that need input first
+    private final List<Runnable> tabRefreshers = new ArrayList<>();
+    // Counts suggestion lookups, so an older answer that arrives late is thrown away
+    private int suggestionRequest;
 
     /**
      * Constructor that takes the logged-in user's name.
+     * Sending and storing go through a SendPipeline, so a burst of messages queues up instead of piling onto the disk.
+     * The window made the pipeline, so closing the window closes it too.
      */
     public MessageGUI(String username) {
-        this.loggedInUser = username;
-        this.reportManager = new Report(); // Create our report manager
+        this(new MessagingService(username, new SendPipeline(new Report(), new MessageJsonStore(), MessageBroker.getDefault())));
+        SendPipeline pipeline = messaging.getPipeline();
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                // Waits for the messages still on their way to be saved, then stops the stage threads
+                pipeline.close();
+            }
+        });
+    }
+
+    public MessageGUI(MessagingService messaging) {
+        super("QuickChat - " + messaging.getLoggedInUser());
+        this.messaging = messaging;
+        this.browserModel = new MessageTableModel(messaging.getReport());
+        browserModel.setErrorHandler(problem -> showStatus(problem, true));
+        buildWindow();
     }
 
     /**
-     * Starts and manages the main application loop.
-     * This method shows the main menu and handles user choices.
+     * Shows the messaging window. Unlike the old dialog loop this returns straight away.
      */
     public void startMessagingInteraction() {
-        JOptionPane.showMessageDialog(null, "Welcome to QuickChat, " + loggedInUser + "!", "Funiwe POE", JOptionPane.INFORMATION_MESSAGE);
-
-        boolean continueMessaging = true;
-        while (continueMessaging) {
-            String[] menuOptions = {"Send a Message", "Show Reports", "Quit"};
-            int menuChoice = JOptionPane.showOptionDialog(null,
-                    "What would you like to do?",
-                    "QuickChat Menu",
-                    JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, menuOptions, menuOptions[0]);
-
-            switch (menuChoice) {
-                case 0: // Send a Message
-                    processNewMessage();
-                    break;
-                case 1: // Show Reports
-                    showReportMenu();
-                    break;
-                case 2: // Quit
-                default: // Also handles closing the dialog
-                    continueMessaging = false;
-                    break;
+        setVisible(true);
+        showStatus("Welcome to QuickChat, " + messaging.getLoggedInUser() + "!", false);
+    }
+
+    private void buildWindow() {
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+
+        JPanel header = new JPanel(new BorderLayout());
+        header.setBackground(BACKGROUND);
+        header.setBorder(BorderFactory.createEmptyBorder(8, 12, 8, 12));
+        JLabel title = new JLabel("QuickChat");
+        title.setFont(new Font("Verdana", Font.BOLD, 20));
+        title.setForeground(Color.WHITE);
+        header.add(title, BorderLayout.WEST);
+        JPanel headerButtons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 6, 0));
+        headerButtons.setOpaque(false);
+        JButton loadButton = new JButton("Load Saved Messages");
+        loadButton.addActionListener(e -> loadSavedMessages(loadButton));
+        JButton quitButton = new JButton("Quit");
+        quitButton.addActionListener(e -> quit());
+        headerButtons.add(loadButton);
+        headerButtons.add(quitButton);
+        header.add(headerButtons, BorderLayout.EAST);
+
+        tabs.setFont(TEXT_FONT);
+        addTab("Compose", buildComposePanel(), null);
+        addTab("Browse Messages", buildBrowserPanel(), browserModel::refresh);
+        addReportTab("Sent Senders/Recipients", null, "Refresh", input -> messaging.sentMessageDetails());
+        addReportTab("Longest Message", null, "Refresh", input -> messaging.longestMessage());
+        addReportTab("Search by ID", "Message ID:", "Search", messaging::findMessageById);
+        addRecipientSearchTab();
+        addReportTab("Delete by Hash", "Full message hash:", "Delete", messaging::deleteMessageByHash);
+        addReportTab("Full Report", null, "Refresh", input -> messaging.fullReport());
+        tabs.addChangeListener(e -> refreshSelectedTab());
+
+        statusLabel.setFont(TEXT_FONT);
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(6, 12, 6, 12));
+
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(header, BorderLayout.NORTH);
+        getContentPane().add(tabs, BorderLayout.CENTER);
+        getContentPane().add(statusLabel, BorderLayout.SOUTH);
+        setSize(760, 520);
+        setLocationRelativeTo(null); // Center it on screen
+    }
+
+    private JPanel buildComposePanel() {
+        JPanel panel = new JPanel(new GridBagLayout());
+        panel.setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12));
+        GridBagConstraints c = new GridBagConstraints();
+        c.insets = new Insets(4, 4, 4, 4);
+        c.anchor = GridBagConstraints.WEST;
+
+        c.gridx = 0; c.gridy = 0;
+        panel.add(label("Recipient's cell number (e.g., +27718693002):"), c);
+        c.gridy = 1; c.fill = GridBagConstraints.HORIZONTAL; c.weightx = 1;
+        recipientField.setFont(TEXT_FONT);
+        panel.add(recipientField, c);
+
+        c.gridy = 2; c.fill = GridBagConstraints.NONE; c.weightx = 0;
+        panel.add(label("Your message (max " + MessagingService.MAX_PAYLOAD_LENGTH + " characters):"), c);
+        c.gridy = 3; c.fill = GridBagConstraints.BOTH; c.weightx = 1; c.weighty = 1;
+        payloadArea.setFont(TEXT_FONT);
+        payloadArea.setLineWrap(true);
+        payloadArea.setWrapStyleWord(true);
+        payloadArea.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { updateCharacterCount(); }
+            @Override public void removeUpdate(DocumentEvent e) { updateCharacterCount(); }
+            @Override public void changedUpdate(DocumentEvent e) { updateCharacterCount(); }
+        });
+        panel.add(new JScrollPane(payloadArea), c);
+
+        c.gridy = 4; c.fill = GridBagConstraints.NONE; c.weighty = 0; c.anchor = GridBagConstraints.EAST;
+        characterCount.setFont(TEXT_FONT);
+        panel.add(characterCount, c);
+        updateCharacterCount();
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        buttons.add(composeButton("Send Message", Action.SEND));
+        buttons.add(composeButton("Store Message", Action.STORE));
+        buttons.add(composeButton("Disregard Message", Action.DISREGARD));
+        JButton sendStoredButton = new JButton("Send All Stored");
+        sendStoredButton.setFont(LABEL_FONT);
+        sendStoredButton.addActionListener(e -> sendAllStored());
+        composeButtons.add(sendStoredButton);
+        buttons.add(sendStoredButton);
+        c.gridy = 5; c.anchor = GridBagConstraints.WEST;
+        panel.add(buttons, c);
+        return panel;
+    }
+
+    /**
+     * A table of all Sent and Stored messages. Filtering and sorting (click a column
+     * heading) are done by Report in the background; the table only fetches what is on screen.
+     */
+    private JPanel buildBrowserPanel() {
+        JPanel panel = new JPanel(new BorderLayout(0, 8));
+        panel.setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12));
+
+        JComboBox<String> statusBox = new JComboBox<>(new String[] {"All", "Sent", "Stored"});
+        JTextField recipientFilter = new JTextField(16);
+        recipientFilter.setFont(TEXT_FONT);
+        JButton filterButton = new JButton("Filter");
+        JLabel countLabel = label(" ");
+        Runnable applyFilter = () -> {
+            String status = (String) statusBox.getSelectedItem();
+            browserModel.setFilter("All".equals(status) ? null : status, recipientFilter.getText());
+        };
+        statusBox.addActionListener(e -> applyFilter.run());
+        recipientFilter.addActionListener(e -> applyFilter.run());
+        filterButton.addActionListener(e -> applyFilter.run());
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        controls.add(label("Status:"));
+        controls.add(statusBox);
+        controls.add(label("Recipient:"));
+        controls.add(recipientFilter);
+        controls.add(filterButton);
+        controls.add(countLabel);
+
+        JTable table = new JTable(browserModel);
+        table.setFont(TEXT_FONT);
+        table.setFillsViewportHeight(true);
+        table.getTableHeader().setReorderingAllowed(false);
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table.convertColumnIndexToModel(table.columnAtPoint(e.getPoint()));
+                if (column >= 0) {
+                    browserModel.sortBy(MessageColumn.values()[column]);
+                }
             }
-        }
-        JOptionPane.showMessageDialog(null, "Thank you for using QuickChat. Goodbye!", "Exit", JOptionPane.INFORMATION_MESSAGE);
+        });
+        browserModel.addTableModelListener(e -> {
+            countLabel.setText(browserModel.getRowCount() + " message(s)");
+            // Show which column we are sorted by
+            for (int i = 0; i < table.getColumnCount(); i++) {
+                TableColumn column = table.getColumnModel().getColumn(i);
+                column.setHeaderValue(browserModel.getColumnName(column.getModelIndex()));
+            }
+            table.getTableHeader().repaint();
+        });
+
+        panel.add(controls, BorderLayout.NORTH);
+        panel.add(new JScrollPane(table), BorderLayout.CENTER);
+        return panel;
+    }
+
+    // What the user chose to do with the message they wrote
+    private enum Action { SEND, STORE, DISREGARD }
+
+    private JButton composeButton(String text, Action action) {
+        JButton button = new JButton(text);
+        button.setFont(LABEL_FONT);
+        button.addActionListener(e -> finishMessage(action));
+        composeButtons.add(button);
+        return button;
     }
-    
+
     /**
-     * This is the menu for all the Part 3 reports.
+     * Sends, stores or disregards the message in the compose panel, in the background.
      */
-    private void showReportMenu() {
-        boolean continueReporting = true;
-        while(continueReporting) {
-            String[] reportOptions = {
-                "Display Sent Senders/Recipients", 
-                "Display Longest Message", 
-                "Search Message by ID", 
-                "Search Messages by Recipient", 
-                "Delete Message by Hash", 
-                "Generate Full Report",
-                "Back to Main Menu"
-            };
-            int reportChoice = JOptionPane.showOptionDialog(null,
-                    "Please choose a report to view:",
-                    "Reports Menu",
-                    JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, reportOptions, reportOptions[0]);
-
-            String output = "";
-            String inputValue;
-
-            switch(reportChoice) {
-                case 0: // Display Sent Senders/Recipients
-                    output = reportManager.displaySentMessageDetails();
-                    break;
-                case 1: // Display Longest Message
-                    output = "Longest message found:\n\n\"" + reportManager.getLongestMessage() + "\"";
-                    break;
-                case 2: // Search by ID
-                    inputValue = JOptionPane.showInputDialog("Enter the Message ID to search for:");
-                    if (inputValue != null && !inputValue.isBlank()) {
-                        output = reportManager.findMessageById(inputValue);
-                    }
-                    break;
-                case 3: // Search by Recipient
-                    inputValue = JOptionPane.showInputDialog("Enter the Recipient's number to search for:");
-                     if (inputValue != null && !inputValue.isBlank()) {
-                        output = reportManager.findMessagesByRecipient(inputValue);
-                    }
-                    break;
-                case 4: // Delete by Hash
-                    inputValue = JOptionPane.showInputDialog("Enter the full Message Hash to delete:");
-                     if (inputValue != null && !inputValue.isBlank()) {
-                        output = reportManager.deleteMessageByHash(inputValue.toUpperCase());
-                    }
+    private void finishMessage(Action action) {
+        Message message = messaging.createMessage(recipientField.getText().trim(), payloadArea.getText());
+        setComposeEnabled(false);
+        showStatus("Working on message " + message.getMessageID() + "...", false);
+
+        BackgroundTasks.run(() -> {
+            switch (action) {
+                case SEND:
+                    return messaging.send(message);
+                case STORE:
+                    return messaging.store(message);
+                default:
+                    return messaging.disregard(message);
+            }
+        }, done -> {
+            setComposeEnabled(true);
+            recipientField.setText("");
+            payloadArea.setText("");
+            switch (action) {
+                case SEND:
+                    showStatus("Message " + done.getMessageID() + " sent, saved to JSON, and added to reports!", false);
                     break;
-                case 5: // Full Report
-                    output = reportManager.generateFullReport();
+                case STORE:
+                    showStatus("Message " + done.getMessageID() + " stored, saved to JSON, and added to reports!", false);
                     break;
-                case 6: // Back to Main Menu
                 default:
-                    continueReporting = false;
+                    showStatus("Message disregarded. It is kept for a short while in case you need it back.", false);
                     break;
             }
+            refreshSelectedTab();
+        }, error -> {
+            // The message is already in the reports; only the file is missing
+            setComposeEnabled(true);
+            showStatus("Could not save message to JSON file: " + error.getMessage(), true);
+        });
+    }
 
-            if (continueReporting && (output != null && !output.isEmpty())) {
-                JOptionPane.showMessageDialog(null, output, "Report Result", JOptionPane.INFORMATION_MESSAGE);
-            }
-        }
+    /**
+     * Sends every message the user stored earlier, in the background.
+     */
+    private void sendAllStored() {
+        setComposeEnabled(false);
+        showStatus("Sending your stored messages...", false);
+        BackgroundTasks.run(messaging::sendAllStored, count -> {
+            setComposeEnabled(true);
+            showStatus(count == 0 ? "You have no stored messages to send." : count + " stored message(s) sent and saved to JSON!", false);
+            refreshSelectedTab();
+        }, error -> {
+            // They are already Sent in the reports; only the files are behind
+            setComposeEnabled(true);
+            showStatus("Could not save the sent messages to JSON: " + error.getMessage(), true);
+        });
+    }
+
+    private void addTab(String title, JPanel panel, Runnable refresher) {
+        tabs.addTab(title, panel);
+        tabRefreshers.add(refresher);
     }
 
     /**
-     * Handles the process for a single new message.
+     * Adds a tab for one report. If the report needs input (an ID, a number or a hash)
+     * the tab gets a text field, otherwise it runs by itself whenever the tab is shown.
      */
-    private void processNewMessage() {
-        String recipient = JOptionPane.showInputDialog(null, "Enter recipient's cell number (e.g., +27718693002):", "New Message - Recipient", JOptionPane.PLAIN_MESSAGE);
-        if (recipient == null) return; // User cancelled
-
-        String payload = JOptionPane.showInputDialog(null, "Enter your message (max 250 characters):", "New Message - Payload", JOptionPane.PLAIN_MESSAGE);
-        if (payload == null) return; // User cancelled
-
-        // Create the message object with the logged-in user as the sender
-        Message currentMessage = new Message(loggedInUser, recipient, payload);
-        JOptionPane.showMessageDialog(null, "Message created with ID: " + currentMessage.getMessageID(), "Message ID", JOptionPane.INFORMATION_MESSAGE);
-        
-        String[] options = {"Send Message", "Store Message", "Disregard Message"};
-        int actionChoice = JOptionPane.showOptionDialog(null,
-                "Choose an action for this message:",
-                "Message Action",
-                JOptionPane.DEFAULT_OPTION, JOptionPane.INFORMATION_MESSAGE, null, options, options[0]);
-
-        switch (actionChoice) {
-            case 0: // Send
-                currentMessage.setMessageStatus("Sent");
-                reportManager.addMessage(currentMessage);
-                storeMessageToJSON(currentMessage); // *** NEW: SAVE JSON ON SEND ***
-                JOptionPane.showMessageDialog(null, "Message sent, saved to JSON, and added to reports!", "Sent", JOptionPane.INFORMATION_MESSAGE);
-                break;
-            case 1: // Store
-                currentMessage.setMessageStatus("Stored");
-                reportManager.addMessage(currentMessage);
-                storeMessageToJSON(currentMessage); // This was already here
-                JOptionPane.showMessageDialog(null, "Message stored, saved to JSON, and added to reports!", "Stored", JOptionPane.INFORMATION_MESSAGE);
-                break;
-            case 2: // Disregard
-            default:
-                currentMessage.setMessageStatus("Disregarded");
-                reportManager.addMessage(currentMessage);
-                // We don't save a JSON for disregarded messages
-                JOptionPane.showMessageDialog(null, "Message disregarded and added to reports.", "Disregarded", JOptionPane.INFORMATION_MESSAGE);
-                break;
+    private void addReportTab(String title, String inputLabel, String buttonText, Function<String, String> report) {
+        JPanel panel = new JPanel(new BorderLayout(0, 8));
+        panel.setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12));
+        JTextArea output = new JTextArea();
+        output.setEditable(false);
+        output.setFont(REPORT_FONT);
+        JTextField input = inputLabel == null ? null : new JTextField(24);
+        JButton runButton = new JButton(buttonText);
+
+        Runnable runReport = () -> {
+            String value = input == null ? "" : input.getText();
+            if (input != null && value.isBlank()) {
+                output.setText("Please enter a value to " + buttonText.toLowerCase() + ".");
+                return;
+            }
+            runButton.setEnabled(false);
+            output.setText("Working...");
+            BackgroundTasks.run(() -> report.apply(value), result -> {
+                runButton.setEnabled(true);
+                output.setText(result);
+                output.setCaretPosition(0);
+            }, error -> {
+                runButton.setEnabled(true);
+                output.setText("Something went wrong: " + error.getMessage());
+            });
+        };
+        runButton.addActionListener(e -> runReport.run());
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        if (input != null) {
+            controls.add(label(inputLabel));
+            input.setFont(TEXT_FONT);
+            input.addActionListener(e -> runReport.run()); // Enter runs it too
+            controls.add(input);
         }
+        controls.add(runButton);
+        panel.add(controls, BorderLayout.NORTH);
+        panel.add(new JScrollPane(output), BorderLayout.CENTER);
+        addTab(title, panel, input == null ? runReport : null);
     }
-    
+
     /**
-     * Saves a message object to a JSON file.
-     * Reference: This method was generated with assistance from an AI tool (ChatGPT) as per POE instructions.
+     * Search by recipient with suggestions as you type. Each pause in typing looks up the
+     * recipients starting with the text so far (see RecipientIndex) and lists them with
+     * their message counts; picking one, or pressing Enter, shows that recipient's messages.
      */
-    private void storeMessageToJSON(Message msg) {
-        JSONObject msgJson = new JSONObject();
-        msgJson.put("MESSAGE_ID", msg.getMessageID());
-        msgJson.put("MESSAGE_SENDER", msg.getMessageSender());
-        msgJson.put("MESSAGE_RECIPIENT", msg.getMessageRecipient());
-        msgJson.put("MESSAGE_PAYLOAD", msg.getMessagePayload());
-        msgJson.put("MESSAGE_STATUS", msg.getMessageStatus());
-
-        // We can name the file by its ID to make sure it's unique
-        String fileName = "message_" + msg.getMessageID() + ".json";
-        try (FileWriter file = new FileWriter(fileName)) {
-            file.write(msgJson.toJSONString());
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(null, "Could not save message to JSON file: " + e.getMessage(), "File Error", JOptionPane.ERROR_MESSAGE);
+    private void addRecipientSearchTab() {
+        JPanel panel = new JPanel(new BorderLayout(8, 8));
+        panel.setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12));
+        JTextField input = new JTextField(24);
+        input.setFont(TEXT_FONT);
+        JButton searchButton = new JButton("Search");
+        JTextArea output = new JTextArea();
+        output.setEditable(false);
+        output.setFont(REPORT_FONT);
+        DefaultListModel<RecipientIndex.Match> suggestions = new DefaultListModel<>();
+        JList<RecipientIndex.Match> suggestionList = new JList<>(suggestions);
+        suggestionList.setFont(TEXT_FONT);
+        suggestionList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+        Function<String, Runnable> search = recipient -> () -> {
+            if (recipient.isBlank()) {
+                output.setText("Please enter a value to search.");
+                return;
+            }
+            searchButton.setEnabled(false);
+            output.setText("Working...");
+            BackgroundTasks.run(() -> messaging.findMessagesByRecipient(recipient), result -> {
+                searchButton.setEnabled(true);
+                output.setText(result);
+                output.setCaretPosition(0);
+            }, error -> {
+                searchButton.setEnabled(true);
+                output.setText("Something went wrong: " + error.getMessage());
+            });
+        };
+        searchButton.addActionListener(e -> search.apply(input.getText()).run());
+        input.addActionListener(e -> search.apply(input.getText()).run()); // Enter runs it too
+        suggestionList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting() && suggestionList.getSelectedValue() != null) {
+                search.apply(suggestionList.getSelectedValue().getRecipient()).run();
+            }
+        });
+
+        Runnable lookUpSuggestions = () -> {
+            String prefix = input.getText();
+            int request = ++suggestionRequest;
+            BackgroundTasks.run(() -> messaging.suggestRecipients(prefix), matches -> {
+                if (request != suggestionRequest) {
+                    return; // The user has typed more since we asked
+                }
+                suggestions.clear();
+                suggestions.addAll(matches);
+            }, error -> showStatus("Could not look up recipients: " + error.getMessage(), true));
+        };
+        // Restarting the timer on every keystroke means we only look up once typing pauses
+        Timer debounce = new Timer(SUGGESTION_DELAY_MILLIS, e -> lookUpSuggestions.run());
+        debounce.setRepeats(false);
+        input.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { debounce.restart(); }
+            @Override public void removeUpdate(DocumentEvent e) { debounce.restart(); }
+            @Override public void changedUpdate(DocumentEvent e) { debounce.restart(); }
+        });
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        controls.add(label("Recipient's number:"));
+        controls.add(input);
+        controls.add(searchButton);
+        JScrollPane suggestionScroll = new JScrollPane(suggestionList);
+        suggestionScroll.setPreferredSize(new Dimension(250, 0));
+        suggestionScroll.setBorder(BorderFactory.createTitledBorder("Matching recipients"));
+        panel.add(controls, BorderLayout.NORTH);
+        panel.add(suggestionScroll, BorderLayout.WEST);
+        panel.add(new JScrollPane(output), BorderLayout.CENTER);
+        // Showing the tab again refreshes the counts, since messages may have been sent meanwhile
+        addTab("Search by Recipient", panel, lookUpSuggestions);
+    }
+
+    private void refreshSelectedTab() {
+        int selected = tabs.getSelectedIndex();
+        if (selected >= 0 && tabRefreshers.get(selected) != null) {
+            tabRefreshers.get(selected).run();
+        }
+    }
+
+    private void loadSavedMessages(JButton loadButton) {
+        loadButton.setEnabled(false);
+        showStatus("Loading saved messages...", false);
+        List<String> problems = new ArrayList<>();
+        BackgroundTasks.run(() -> messaging.loadSavedMessages(problems), added -> {
+            loadButton.setEnabled(true);
+            if (problems.isEmpty()) {
+                showStatus("Loaded " + added + " saved message(s) into the reports.", false);
+            } else {
+                showStatus("Loaded " + added + " saved message(s); skipped " + problems.size() + " that couldn't be read ("
+                        + problems.get(0) + ").", true);
+            }
+            refreshSelectedTab();
+        }, error -> {
+            loadButton.setEnabled(true);
+            showStatus("Could not load saved messages: " + error.getMessage(), true);
+        });
+    }
+
+    private void quit() {
+        JOptionPane.showMessageDialog(this, "Thank you for using QuickChat. Goodbye!", "Exit", JOptionPane.INFORMATION_MESSAGE);
+        dispose();
+    }
+
+    private void updateCharacterCount() {
+        int length = payloadArea.getDocument().getLength();
+        characterCount.setText(length + " / " + MessagingService.MAX_PAYLOAD_LENGTH);
+        characterCount.setForeground(length > MessagingService.MAX_PAYLOAD_LENGTH ? Color.RED : Color.DARK_GRAY);
+    }
+
+    private void setComposeEnabled(boolean enabled) {
+        for (JButton button : composeButtons) {
+            button.setEnabled(enabled);
         }
     }
+
+    private void showStatus(String text, boolean error) {
+        statusLabel.setText(text);
+        statusLabel.setForeground(error ? Color.RED : BACKGROUND);
+    }
+
+    private static JLabel label(String text) {
+        JLabel label = new JLabel(text);
+        label.setFont(LABEL_FONT);
+        return label;
+    }
 }
@@ -0,0 +1,155 @@
+package st10485573;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Saves messages to JSON files and reads them back, one file per message.
+ * This used to live in MessageGUI; it has no Swing code so it can run on a
+ * background thread (see BackgroundTasks) and be tested on its own.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class MessageJsonStore {
+
+    // How many files saveAll writes at the same time, like one batch of SendPipeline's persist stage
+    private static final int SAVE_ALL_WRITERS = 32;
+
+    private final Path directory;
+
+    /**
+     * Keeps the files in the folder the app was started from, like before.
+     */
+    public MessageJsonStore() {
+        this(Path.of("."));
+    }
+
+    public MessageJsonStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Writes the message to message_ID.json and returns the file it went to.
+     * Reference: The JSON layout was generated with assistance from an AI tool (ChatGPT) as per POE instructions.
+     */
+    @SuppressWarnings("unchecked")
+    public Path save(Message msg) throws IOException {
+        EdtMonitor.checkOffEdt("Saving message " + msg.getMessageID());
+        JSONObject msgJson = new JSONObject();
+        msgJson.put("MESSAGE_ID", msg.getMessageID());
+        msgJson.put("MESSAGE_SENDER", msg.getMessageSender());
+        msgJson.put("MESSAGE_RECIPIENT", msg.getMessageRecipient());
+        msgJson.put("MESSAGE_PAYLOAD", msg.getMessagePayload());
+        msgJson.put("MESSAGE_STATUS", msg.getMessageStatus());
+        msgJson.put("MESSAGE_TIMESTAMP", msg.getTimestampMillis());
+
+        // We can name the file by its ID to make sure it's unique
+        Path file = directory.resolve(fileNameFor(msg.getMessageID()));
+        Files.writeString(file, msgJson.toJSONString(), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * Writes several messages, e.g. after a bulk status change, and returns the files they went to.
+     * Each message is its own file, so up to SAVE_ALL_WRITERS of them are written at the same time.
+     * If one fails the rest are still written, and the first IOException is passed on afterwards.
+     */
+    public List<Path> saveAll(List<Message> messages) throws IOException {
+        EdtMonitor.checkOffEdt("Saving " + messages.size() + " messages");
+        List<Future<Path>> writes = new ArrayList<>(messages.size());
+        for (int from = 0; from < messages.size(); from += SAVE_ALL_WRITERS) {
+            // Closing the executor waits for this group before the next one starts
+            try (ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (Message msg : messages.subList(from, Math.min(from + SAVE_ALL_WRITERS, messages.size()))) {
+                    writes.add(writers.submit(() -> save(msg)));
+                }
+            }
+        }
+        List<Path> files = new ArrayList<>(messages.size());
+        IOException firstFailure = null;
+        for (Future<Path> write : writes) {
+            try {
+                files.add(write.get()); // Already finished, so this never waits
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof IOException)) {
+                    throw new IllegalStateException("Could not save a message", e.getCause());
+                }
+                if (firstFailure == null) {
+                    firstFailure = (IOException) e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while saving messages", e);
+            }
+        }
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+        return files;
+    }
+
+    /**
+     * Reads one message file back. Files saved before messages had a time get the time the file was last changed.
+     */
+    public Message load(Path file) throws IOException {
+        EdtMonitor.checkOffEdt("Loading " + file);
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JSONObject jsonObject = (JSONObject) new JSONParser().parse(reader);
+            Long timestamp = (Long) jsonObject.get("MESSAGE_TIMESTAMP");
+            return new Message(
+                    (String) jsonObject.get("MESSAGE_ID"),
+                    (String) jsonObject.get("MESSAGE_SENDER"),
+                    (String) jsonObject.get("MESSAGE_RECIPIENT"),
+                    (String) jsonObject.get("MESSAGE_PAYLOAD"),
+                    (String) jsonObject.get("MESSAGE_STATUS"),
+                    timestamp != null ? timestamp : Files.getLastModifiedTime(file).toMillis());
+        } catch (ParseException | ClassCastException e) {
+            throw new IOException("Could not read message file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads every message file in the folder, skipping any that can't be read.
+     */
+    public List<Message> loadAll() throws IOException {
+        return loadAll(new ArrayList<>());
+    }
+
+    /**
+     * Reads every message file in the folder. Files that can't be read are skipped,
+     * and why is added to problems so the caller can tell the user.
+     */
+    public List<Message> loadAll(List<String> problems) throws IOException {
+        List<Message> messages = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return messages;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "message_*.json")) {
+            for (Path file : files) {
+                try {
+                    messages.add(load(file));
+                } catch (IOException e) {
+                    problems.add(e.getMessage());
+                }
+            }
+        }
+        return messages;
+    }
+
+    public static String fileNameFor(String messageId) {
+        return "message_" + messageId + ".json";
+    }
+}
@@ -0,0 +1,89 @@
+package st10485573;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A fixed-size ring buffer for messages we only want to keep for a little while,
+ * like Disregarded drafts. When the buffer is full the oldest message is
+ * overwritten, and we count how many were lost that way.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class MessageRingBuffer {
+
+    // The slots that hold the messages, reused over and over
+    private final Message[] slots;
+    // Where the next message will be written
+    private int nextSlot;
+    // How many slots currently hold a message
+    private int size;
+    // How many messages were pushed out because the buffer was full
+    private long overwrittenCount;
+
+    /**
+     * Creates a ring buffer that can hold up to the given number of messages.
+     */
+    public MessageRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ring buffer capacity must be positive, got " + capacity);
+        }
+        this.slots = new Message[capacity];
+    }
+
+    /**
+     * Adds a message, overwriting the oldest one if the buffer is already full.
+     */
+    public void add(Message msg) {
+        if (size == slots.length) {
+            overwrittenCount++;
+        } else {
+            size++;
+        }
+        slots[nextSlot] = msg;
+        nextSlot = (nextSlot + 1) % slots.length;
+    }
+
+    /**
+     * Returns the buffered messages from oldest to newest.
+     */
+    public List<Message> toList() {
+        List<Message> messages = new ArrayList<>(size);
+        int oldest = (nextSlot - size + slots.length) % slots.length;
+        for (int i = 0; i < size; i++) {
+            messages.add(slots[(oldest + i) % slots.length]);
+        }
+        return messages;
+    }
+
+    /**
+     * Removes and returns the message with the given ID so it can be recovered.
+     * Returns null if the message is no longer in the buffer.
+     */
+    public Message remove(String id) {
+        List<Message> messages = toList();
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i).getMessageID().equals(id)) {
+                Message found = messages.remove(i);
+                clear();
+                for (Message kept : messages) {
+                    add(kept);
+                }
+                return found;
+            }
+        }
+        return null;
+    }
+
+    // Empties the slots but keeps the overwritten count
+    private void clear() {
+        Arrays.fill(slots, null);
+        nextSlot = 0;
+        size = 0;
+    }
+
+    public int size() { return size; }
+    public int capacity() { return slots.length; }
+    public long getOverwrittenCount() { return overwrittenCount; }
+}
@@ -0,0 +1,230 @@
+package st10485573;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Rough statistics about every message a Report has had, in memory that doesn't grow
+ * with the number of messages: how many different recipients and senders there
+ * have been (a HyperLogLog each) and which recipients get the most messages (a
+ * CountMinSketch with a small heap of the current top k).
+ *
+ * It is optional: attach it to a Report and it hears about each new Sent or Stored
+ * message through Report.ChangeListener. Unlike ReportAnalytics it never goes
+ * through the Report's rows again, so asking is instant however big the Report is.
+ * Messages are counted once they are added and stay counted, even if they are
+ * deleted or change status later.
+ *
+ * How far off the answers can be (see HyperLogLog and CountMinSketch for why):
+ *
+ *   distinct recipients and senders: a standard error of 1.04 / sqrt(2^precision)
+ *   messages per recipient: never too low, at most e / width * (all messages) too high,
+ *     except for e^-depth of the recipients
+ *
+ * The defaults (precision 14, width 2048, depth 5) are about 110 KB: 0.8% for the
+ * distinct counts, and within 0.13% of all messages for the per-recipient counts.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class MessageStatistics implements Report.ChangeListener {
+
+    public static final int DEFAULT_PRECISION = 14;
+    public static final int DEFAULT_WIDTH = 2048;
+    public static final int DEFAULT_DEPTH = 5;
+    public static final int DEFAULT_TOP = 10;
+
+    // A rough size for one top recipient: the entry, its map slot and its String
+    private static final int BYTES_PER_TOP_ENTRY = 128;
+
+    private final HyperLogLog recipients;
+    private final HyperLogLog senders;
+    private final CountMinSketch recipientCounts;
+    private final int topSize;
+    // The best topSize recipients so far, weakest at the head so it can be pushed out
+    private final PriorityQueue<TopEntry> top;
+    private final Map<String, TopEntry> topByRecipient = new HashMap<>();
+    private long messageCount;
+
+    public MessageStatistics() {
+        this(DEFAULT_PRECISION, DEFAULT_WIDTH, DEFAULT_DEPTH, DEFAULT_TOP);
+    }
+
+    public MessageStatistics(int precision, int width, int depth, int topSize) {
+        if (topSize <= 0) {
+            throw new IllegalArgumentException("The top list needs at least one place, got " + topSize);
+        }
+        this.recipients = new HyperLogLog(precision);
+        this.senders = new HyperLogLog(precision);
+        this.recipientCounts = new CountMinSketch(width, depth);
+        this.topSize = topSize;
+        this.top = new PriorityQueue<>(topSize + 1, TopEntry.WEAKEST_FIRST);
+    }
+
+    /**
+     * Counts the messages already in the report, then listens for new ones.
+     * Holds the report's lock in between so no message is missed or counted twice.
+     */
+    public MessageStatistics attachTo(Report report) {
+        synchronized (report) {
+            report.forEachMessage((sequence, id, sender, recipient, payload, hash, status, timestampMillis) ->
+                    record(sender, recipient));
+            report.addChangeListener(this);
+        }
+        return this;
+    }
+
+    public void detachFrom(Report report) {
+        report.removeChangeListener(this);
+    }
+
+    @Override
+    public void messageAdded(Message msg) {
+        record(msg.getMessageSender(), msg.getMessageRecipient(), msg.getRecipientKey());
+    }
+
+    @Override
+    public void messageDeleted(String hash) {
+        // Nothing can be taken back out of the sketches, so deleted messages stay counted
+    }
+
+    /**
+     * Counts one message. Valid cell numbers count as the same recipient however they were typed.
+     */
+    public void record(String sender, String recipient) {
+        record(sender, recipient, PhoneNumber.pack(recipient));
+    }
+
+    private synchronized void record(String sender, String recipient, long recipientKey) {
+        messageCount++;
+        senders.add(HyperLogLog.hash64(sender == null ? "" : sender));
+        String name;
+        long hash;
+        if (recipientKey != PhoneNumber.NONE) {
+            name = null; // Only formatted if it makes the top list
+            hash = HyperLogLog.hash64(recipientKey);
+        } else {
+            name = recipient == null ? "" : recipient.trim();
+            hash = HyperLogLog.hash64(name);
+        }
+        recipients.add(hash);
+        long estimate = recipientCounts.add(hash);
+
+        // Only a recipient that beats the weakest of the top list can get onto it
+        if (top.size() == topSize && estimate <= top.peek().count) {
+            return;
+        }
+        if (name == null) {
+            name = PhoneNumber.format(recipientKey);
+        }
+        TopEntry entry = topByRecipient.get(name);
+        if (entry != null) {
+            top.remove(entry);
+            entry.count = estimate;
+            top.add(entry);
+            return;
+        }
+        entry = new TopEntry(name, estimate);
+        topByRecipient.put(name, entry);
+        top.add(entry);
+        if (top.size() > topSize) {
+            topByRecipient.remove(top.poll().recipient);
+        }
+    }
+
+    public synchronized long getMessageCount() { return messageCount; }
+
+    /**
+     * About how many different recipients there have been.
+     */
+    public synchronized long estimateDistinctRecipients() {
+        return recipients.estimate();
+    }
+
+    /**
+     * About how many different senders there have been.
+     */
+    public synchronized long estimateDistinctSenders() {
+        return senders.estimate();
+    }
+
+    /**
+     * About how many messages the recipient has had: never less, and rarely more than getCountErrorBound() more.
+     */
+    public synchronized long estimateMessagesTo(String recipient) {
+        long key = PhoneNumber.pack(recipient);
+        return recipientCounts.estimate(key != PhoneNumber.NONE ? HyperLogLog.hash64(key) : HyperLogLog.hash64(recipient.trim()));
+    }
+
+    /**
+     * The recipients with the most messages and their estimated counts, most first.
+     * Holds at most the top size given to the constructor.
+     */
+    public synchronized List<Map.Entry<String, Long>> getTopRecipients() {
+        List<TopEntry> best = new ArrayList<>(top);
+        best.sort(TopEntry.WEAKEST_FIRST.reversed());
+        List<Map.Entry<String, Long>> result = new ArrayList<>(best.size());
+        for (TopEntry entry : best) {
+            result.add(Map.entry(entry.recipient, entry.count));
+        }
+        return result;
+    }
+
+    /**
+     * The relative standard error of the distinct counts, e.g. 0.008 for 0.8%.
+     */
+    public double getDistinctError() {
+        return recipients.getStandardError();
+    }
+
+    /**
+     * How far over a per-recipient count can be right now, for all but getCountFailureChance() of them.
+     */
+    public synchronized long getCountErrorBound() {
+        return recipientCounts.getErrorBound();
+    }
+
+    public double getCountFailureChance() {
+        return recipientCounts.getFailureChance();
+    }
+
+    /**
+     * About how much memory this uses. It is fixed when it is created and doesn't grow with the messages.
+     */
+    public long getMemoryBytes() {
+        return recipients.getMemoryBytes() + senders.getMemoryBytes() + recipientCounts.getMemoryBytes()
+                + (long) topSize * BYTES_PER_TOP_ENTRY;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder text = new StringBuilder(String.format(
+                "About %,d recipients and %,d senders (±%.1f%%) from %,d messages, using %,d KB; counts at most %,d over (%.1f%% chance)",
+                recipients.estimate(), senders.estimate(), getDistinctError() * 100, messageCount, getMemoryBytes() / 1024,
+                recipientCounts.getErrorBound(), getCountFailureChance() * 100));
+        for (Map.Entry<String, Long> entry : getTopRecipients()) {
+            text.append(String.format("%n  %s: about %,d", entry.getKey(), entry.getValue()));
+        }
+        return text.toString();
+    }
+
+    // One recipient on the top list. The count only goes up, and only while it's out of the heap.
+    private static final class TopEntry {
+        // Fewer messages first, and on a tie the later recipient first (like ReportAnalytics.Summary)
+        static final Comparator<TopEntry> WEAKEST_FIRST = (a, b) -> {
+            int byCount = Long.compare(a.count, b.count);
+            return byCount != 0 ? byCount : b.recipient.compareTo(a.recipient);
+        };
+
+        final String recipient;
+        long count;
+
+        TopEntry(String recipient, long count) {
+            this.recipient = recipient;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package st10485573;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * A table model for the message browser that never holds all the messages.
+ * It asks Report which messages match the filter and in what order (just an array
+ * of sequence numbers), and then fetches the rows in pages only when the JTable asks
+ * for a cell on screen. Until a page arrives its cells show "...".
+ * A message deleted in the meantime shows as an empty row until the next refresh.
+ *
+ * Report is only ever called from BackgroundTasks. Everything in this class is
+ * used on the Swing thread only, like any other table model.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class MessageTableModel extends AbstractTableModel {
+
+    public static final int PAGE_SIZE = 128;
+    public static final String LOADING = "...";
+    // About 8000 rows, far more than fit on any screen
+    private static final int MAX_CACHED_PAGES = 64;
+
+    private static final MessageColumn[] COLUMNS = MessageColumn.values();
+
+    private final Report report;
+
+    // The sequence numbers of the messages we are showing, in order
+    private long[] rows = new long[0];
+    // Pages we have fetched, dropping the least recently used one when there are too many
+    private final LinkedHashMap<Integer, String[][]> pages = new LinkedHashMap<Integer, String[][]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String[][]> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    private final Set<Integer> loadingPages = new HashSet<>();
+    // Goes up on every refresh, so an older query's answer is thrown away if it arrives late
+    private long generation;
+    private Consumer<String> errorHandler = problem -> { };
+    private int pageLoadCount;
+
+    private String statusFilter;
+    private String recipientFilter;
+    private MessageColumn sortColumn;
+    private boolean ascending = true;
+
+    public MessageTableModel(Report report) {
+        this.report = report;
+    }
+
+    /**
+     * Changes the filter and reloads. Null or blank means "any".
+     */
+    public void setFilter(String status, String recipient) {
+        this.statusFilter = status;
+        this.recipientFilter = recipient;
+        refresh();
+    }
+
+    /**
+     * Sorts by the column, or flips the direction if we were already sorted by it.
+     */
+    public void sortBy(MessageColumn column) {
+        ascending = column != sortColumn || !ascending;
+        sortColumn = column;
+        refresh();
+    }
+
+    /**
+     * Tells the handler, on the Swing thread, when messages couldn't be loaded (e.g. to show it in a status line).
+     */
+    public void setErrorHandler(Consumer<String> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    public MessageColumn getSortColumn() { return sortColumn; }
+    public boolean isAscending() { return ascending; }
+
+    /**
+     * Asks Report for the matching rows again, e.g. after messages were added or deleted.
+     */
+    public void refresh() {
+        long query = ++generation;
+        String status = statusFilter;
+        String recipient = recipientFilter;
+        MessageColumn sortBy = sortColumn;
+        boolean up = ascending;
+        BackgroundTasks.run(() -> report.findRows(status, recipient, sortBy, up), found -> {
+            if (query != generation) return; // A newer refresh has started since
+            rows = found;
+            pages.clear();
+            loadingPages.clear();
+            fireTableDataChanged();
+        }, error -> {
+            if (query == generation) {
+                errorHandler.accept("Could not load messages: " + error.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        MessageColumn col = COLUMNS[column];
+        if (col != sortColumn) return col.getTitle();
+        return col.getTitle() + (ascending ? " ▲" : " ▼");
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int page = row / PAGE_SIZE;
+        String[][] values = pages.get(page);
+        if (values == null) {
+            loadPage(page);
+            return LOADING;
+        }
+        String[] rowValues = values[row % PAGE_SIZE];
+        return rowValues == null ? "" : rowValues[column]; // null if the message was deleted since
+    }
+
+    /**
+     * How many pages have been fetched from Report so far.
+     */
+    public int getPageLoadCount() {
+        return pageLoadCount;
+    }
+
+    private void loadPage(int page) {
+        if (!loadingPages.add(page)) return; // Already on its way
+        long[] view = rows;
+        int from = page * PAGE_SIZE;
+        int to = Math.min(from + PAGE_SIZE, view.length);
+        BackgroundTasks.run(() -> report.getRows(view, from, to), values -> {
+            // Only keep the page if it was read from the rows we are still showing
+            if (view != rows) return;
+            loadingPages.remove(page);
+            pages.put(page, values);
+            pageLoadCount++;
+            fireTableRowsUpdated(from, to - 1);
+        }, error -> {
+            if (view != rows) return;
+            loadingPages.remove(page);
+            errorHandler.accept("Could not load messages: " + error.getMessage());
+        });
+    }
+}
@@ -0,0 +1,256 @@
+package st10485573;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Everything the messaging screen can do, without any Swing code:
+ * creating, sending, storing and disregarding messages, and the six reports.
+ * The methods can be slow (they save files and go through every message), so
+ * the GUI calls them through BackgroundTasks and never on the Swing thread.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class MessagingService {
+
+    public static final int MAX_PAYLOAD_LENGTH = 250;
+    // How many recipients the search box suggests at once
+    public static final int SUGGESTION_LIMIT = 10;
+    // How many messages we take out of a mailbox at a time
+    public static final int RECEIVE_BATCH_SIZE = 100;
+
+    // We need the username of the person who logged in
+    private final String loggedInUser;
+    // This object will handle all our arrays and reports
+    private final Report reportManager;
+    // Saves and loads the message JSON files
+    private final MessageJsonStore jsonStore;
+    // Delivers Sent messages to their recipients' mailboxes
+    private final MessageBroker broker;
+    // If there is one, sending and storing go through it instead of happening right here
+    private final SendPipeline pipeline;
+
+    public MessagingService(String loggedInUser) {
+        this(loggedInUser, new Report(), new MessageJsonStore());
+    }
+
+    public MessagingService(String loggedInUser, Report reportManager, MessageJsonStore jsonStore) {
+        this(loggedInUser, reportManager, jsonStore, MessageBroker.getDefault());
+    }
+
+    public MessagingService(String loggedInUser, Report reportManager, MessageJsonStore jsonStore, MessageBroker broker) {
+        this.loggedInUser = loggedInUser;
+        this.reportManager = reportManager;
+        this.jsonStore = jsonStore;
+        this.broker = broker;
+        this.pipeline = null;
+    }
+
+    /**
+     * Sends and stores through a SendPipeline, which may be shared with other users' services,
+     * and uses the pipeline's report, JSON store and broker.
+     */
+    public MessagingService(String loggedInUser, SendPipeline pipeline) {
+        this.loggedInUser = loggedInUser;
+        this.reportManager = pipeline.getReport();
+        this.jsonStore = pipeline.getJsonStore();
+        this.broker = pipeline.getBroker();
+        this.pipeline = pipeline;
+    }
+
+    public String getLoggedInUser() { return loggedInUser; }
+    public Report getReport() { return reportManager; }
+    public MessageBroker getBroker() { return broker; }
+    public SendPipeline getPipeline() { return pipeline; }
+
+    /**
+     * Creates a new message from the logged-in user. It isn't in the reports until it is sent, stored or disregarded.
+     */
+    public Message createMessage(String recipient, String payload) {
+        return new Message(loggedInUser, recipient, payload);
+    }
+
+    /**
+     * Marks the message as Sent, adds it to the reports, delivers it to the recipient's mailbox
+     * and saves it to a JSON file.
+     * A message with no recipient or a payload over MAX_PAYLOAD_LENGTH is refused with an IllegalArgumentException.
+     * If saving fails the message stays in the reports and the IOException is passed on.
+     */
+    public Message send(Message msg) throws IOException {
+        return keep(msg, "Sent");
+    }
+
+    /**
+     * Marks the message as Stored, adds it to the reports and saves it to a JSON file.
+     */
+    public Message store(Message msg) throws IOException {
+        return keep(msg, "Stored");
+    }
+
+    /**
+     * Marks the message as Disregarded. It goes to the short-term draft buffer, not the reports,
+     * and we don't save a JSON for it.
+     */
+    public Message disregard(Message msg) {
+        msg.setMessageStatus("Disregarded");
+        reportManager.addMessage(msg);
+        return msg;
+    }
+
+    /**
+     * Why this message can't be sent or stored, or null if it can.
+     * Both ways of keeping a message (straight here, or through a SendPipeline) check it with this.
+     */
+    public static String problemWith(Message msg) {
+        if (msg.getMessageRecipient() == null || msg.getMessageRecipient().isBlank()) {
+            return "Message " + msg.getMessageID() + " has no recipient";
+        }
+        if (msg.getMessagePayload() == null || msg.getMessagePayload().length() > MAX_PAYLOAD_LENGTH) {
+            return "Message " + msg.getMessageID() + " must be at most " + MAX_PAYLOAD_LENGTH + " characters";
+        }
+        return null;
+    }
+
+    private Message keep(Message msg, String status) throws IOException {
+        if (pipeline != null) {
+            return keepThroughPipeline(msg, status);
+        }
+        String problem = problemWith(msg);
+        if (problem != null) {
+            throw new IllegalArgumentException(problem);
+        }
+        msg.setMessageStatus(status);
+        reportManager.addMessage(msg);
+        if ("Sent".equals(status)) {
+            // Delivering never waits: if the mailbox is full the broker drops it and counts it
+            broker.deliver(msg);
+        }
+        jsonStore.save(msg);
+        return msg;
+    }
+
+    // Waits for the pipeline to finish with the message, so callers see the same thing as without one.
+    // A full pipeline shows up here as a RejectedExecutionException (unless its policy is BLOCK).
+    private Message keepThroughPipeline(Message msg, String status) throws IOException {
+        return join(pipeline.submit(msg, status));
+    }
+
+    // Waits for a pipeline future, passing on what went wrong as it was thrown
+    private static Message join(CompletableFuture<Message> result) throws IOException {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sends every message the logged-in user has stored: marks them Sent in one pass over the reports,
+     * delivers them, and saves them together (through the pipeline's persist stage if there is one).
+     * Returns how many were sent.
+     * If saving fails the reports already show them as Sent and the first IOException is passed on.
+     */
+    public int sendAllStored() throws IOException {
+        List<Message> sent = reportManager.sendAllStored(loggedInUser);
+        for (Message msg : sent) {
+            broker.deliver(msg);
+        }
+        if (pipeline == null) {
+            jsonStore.saveAll(sent);
+            return sent.size();
+        }
+        IOException firstFailure = null;
+        for (CompletableFuture<Message> saved : pipeline.saveChanged(sent)) {
+            try {
+                join(saved);
+            } catch (IOException e) {
+                if (firstFailure == null) {
+                    firstFailure = e;
+                }
+            }
+        }
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+        return sent.size();
+    }
+
+    /**
+     * Takes the next batch of messages waiting in the mailbox for this cell number, oldest first.
+     */
+    public List<Message> receiveMessages(String cellNumber) {
+        return broker.receive(cellNumber, RECEIVE_BATCH_SIZE);
+    }
+
+    /**
+     * Reads the JSON files from earlier sessions into the reports, skipping messages we already have.
+     * Returns how many were added.
+     */
+    public int loadSavedMessages() throws IOException {
+        return loadSavedMessages(new ArrayList<>());
+    }
+
+    /**
+     * Like loadSavedMessages(), adding why to problems for each file that couldn't be read.
+     */
+    public int loadSavedMessages(List<String> problems) throws IOException {
+        List<Message> saved = jsonStore.loadAll(problems);
+        int added = 0;
+        for (Message msg : saved) {
+            if (!reportManager.containsMessageId(msg.getMessageID())) {
+                reportManager.addMessage(msg);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    // --- The six reports ---
+
+    public String sentMessageDetails() {
+        return reportManager.displaySentMessageDetails();
+    }
+
+    public String longestMessage() {
+        return "Longest message found:\n\n\"" + reportManager.getLongestMessage() + "\"";
+    }
+
+    public String findMessageById(String id) {
+        return reportManager.findMessageById(id.trim());
+    }
+
+    public String findMessagesByRecipient(String recipient) {
+        return reportManager.findMessagesByRecipient(recipient.trim());
+    }
+
+    /**
+     * Suggests recipients starting with what has been typed so far, with how many messages each has.
+     */
+    public List<RecipientIndex.Match> suggestRecipients(String prefix) {
+        return reportManager.findRecipientsByPrefix(prefix, SUGGESTION_LIMIT);
+    }
+
+    /**
+     * Counts per recipient and sender, top recipients and average lengths, for management.
+     */
+    public ReportAnalytics.Summary analytics() {
+        return reportManager.summarize();
+    }
+
+    public String deleteMessageByHash(String hash) {
+        return reportManager.deleteMessageByHash(hash.trim().toUpperCase());
+    }
+
+    public String fullReport() {
+        return reportManager.generateFullReport();
+    }
+}
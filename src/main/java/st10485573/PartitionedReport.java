@@ -0,0 +1,281 @@
+package st10485573;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A Report split into several partitions, each an ordinary Report with its own lock.
+ * Every message goes to the partition picked by its recipient, so:
+ *
+ * - adding messages to different recipients can happen at the same time, and
+ * - a search by recipient only needs to look at one partition.
+ *
+ * The reports over every message (full report, longest message, sent details)
+ * ask all partitions at once on a ForkJoinPool and merge what they send back.
+ * All partitions number their messages from one shared counter, so the merged
+ * reports come out in the same order, with the same numbers, as one Report would give.
+ *
+ * Disregarded and New drafts go to their recipient's partition's draft buffer.
+ *
+ * It is only a library class for now: the app, QuickChatServer and the CLI all use
+ * one plain Report, since they need the browser, listeners and persistence that only
+ * Report has. Use this where many threads add messages to one in-memory report.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class PartitionedReport {
+
+    private final Report[] partitions;
+    private final ForkJoinPool pool;
+    // Shared by every partition, so each message gets a number that is unique across all of them
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Creates a report with the given number of partitions that fans out on the common ForkJoinPool.
+     */
+    public PartitionedReport(int partitionCount) {
+        this(partitionCount, ForkJoinPool.commonPool());
+    }
+
+    public PartitionedReport(int partitionCount, ForkJoinPool pool) {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("Need at least one partition, got " + partitionCount);
+        }
+        this.partitions = new Report[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Report(Report.DEFAULT_DRAFT_CAPACITY, sequence);
+        }
+        this.pool = pool;
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * The partition holding this recipient's messages.
+     */
+    public Report getPartition(String recipient) {
+        return partitionFor(PhoneNumber.pack(recipient), recipient);
+    }
+
+    public void addMessage(Message msg) {
+        partitionFor(msg.getRecipientKey(), msg.getMessageRecipient()).addMessage(msg);
+    }
+
+    // --- Queries that only need one partition ---
+
+    public String findMessagesByRecipient(String recipient) {
+        return getPartition(recipient).findMessagesByRecipient(recipient);
+    }
+
+    /**
+     * Each recipient lives in one partition, so this just merges every partition's first matches.
+     * It doesn't go through the messages, so it isn't worth fanning out.
+     */
+    public List<RecipientIndex.Match> findRecipientsByPrefix(String prefix, int limit) {
+        List<RecipientIndex.Match> matches = new ArrayList<>();
+        for (Report partition : partitions) {
+            matches.addAll(partition.findRecipientsByPrefix(prefix, limit));
+        }
+        matches.sort((a, b) -> a.getRecipient().compareTo(b.getRecipient()));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    public int getMessageCount() {
+        int count = 0;
+        for (Report partition : partitions) {
+            count += partition.getMessageCount();
+        }
+        return count;
+    }
+
+    // --- Queries that ask every partition at once ---
+
+    public String findMessageById(String id) {
+        EdtMonitor.checkOffEdt("Message ID search");
+        for (String result : fanOut(partition -> partition.findMessageById(id))) {
+            if (result.startsWith("Message Found!")) {
+                return result;
+            }
+        }
+        return "Message with ID [" + id + "] not found.";
+    }
+
+    public boolean containsMessageId(String id) {
+        EdtMonitor.checkOffEdt("Message ID check");
+        return fanOut(partition -> partition.containsMessageId(id)).contains(true);
+    }
+
+    /**
+     * Deletes the message with this hash. Hashes include the message ID, so in practice
+     * only one partition has it.
+     */
+    public String deleteMessageByHash(String hash) {
+        EdtMonitor.checkOffEdt("Delete by hash");
+        for (String result : fanOut(partition -> partition.deleteMessageByHash(hash))) {
+            if (result.endsWith("successfully deleted.")) {
+                return result;
+            }
+        }
+        return "Message with hash [" + hash + "] not found for deletion.";
+    }
+
+    public String getLongestMessage() {
+        EdtMonitor.checkOffEdt("Longest message search");
+        List<Longest> candidates = fanOut(partition -> {
+            Longest longest = new Longest();
+            partition.forEachMessage((seq, id, sender, recipient, payload, hash, status, timestamp) -> {
+                if (longest.payload == null || payload.length() > longest.payload.length()) {
+                    longest.payload = payload;
+                    longest.sequence = seq;
+                }
+            });
+            return longest;
+        });
+        // The longest of the longest; on a tie the one added first wins, like Report
+        Longest best = null;
+        for (Longest candidate : candidates) {
+            if (candidate.payload != null && (best == null || candidate.payload.length() > best.payload.length()
+                    || candidate.payload.length() == best.payload.length() && candidate.sequence < best.sequence)) {
+                best = candidate;
+            }
+        }
+        return best == null ? "No messages to compare." : best.payload;
+    }
+
+    public String displaySentMessageDetails() {
+        EdtMonitor.checkOffEdt("Sent message report");
+        List<Piece> pieces = fanOut(partition -> {
+            Piece piece = new Piece();
+            partition.forEachMessage((seq, id, sender, recipient, payload, hash, status, timestamp) -> {
+                if ("Sent".equals(status)) {
+                    piece.add(seq, "Sender: " + sender + ", Recipient: " + recipient + "\n");
+                }
+            });
+            return piece;
+        });
+        StringBuilder report = new StringBuilder("--- Sent Message Details ---\n");
+        int found = mergeInOrder(pieces, (position, text) -> report.append(text));
+        return found == 0 ? "No messages have been sent yet." : report.toString();
+    }
+
+    public String generateFullReport() {
+        EdtMonitor.checkOffEdt("Full report");
+        List<Piece> pieces = fanOut(partition -> {
+            Piece piece = new Piece();
+            partition.forEachMessage((seq, id, sender, recipient, payload, hash, status, timestamp) -> {
+                // Stored messages aren't printed, but they still count for the message numbers
+                piece.add(seq, "Sent".equals(status)
+                        ? "  Hash: " + hash + "\n  Recipient: " + recipient + "\n  Message: " + payload + "\n\n"
+                        : null);
+            });
+            return piece;
+        });
+        StringBuilder report = new StringBuilder("--- Full Message Report ---\n\n");
+        int found = mergeInOrder(pieces, (position, text) -> report.append("Message #").append(position + 1).append("\n").append(text));
+        return found == 0 ? "No messages have been sent to report." : report.toString();
+    }
+
+    /**
+     * Each partition counts its own messages (in parallel inside, too) and the answers are added up.
+     */
+    public ReportAnalytics.Summary summarize() {
+        EdtMonitor.checkOffEdt("Message analytics");
+        return ReportAnalytics.Summary.combine(fanOut(partition -> partition.summarize(pool)));
+    }
+
+    // Runs the query on every partition at the same time and returns the answers in partition order
+    private <T> List<T> fanOut(Function<Report, T> query) {
+        List<T> results = new ArrayList<>(partitions.length);
+        if (partitions.length == 1) {
+            results.add(query.apply(partitions[0]));
+            return results;
+        }
+        List<Callable<T>> tasks = new ArrayList<>(partitions.length);
+        for (Report partition : partitions) {
+            tasks.add(() -> query.apply(partition));
+        }
+        try {
+            for (Future<T> result : pool.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while asking the partitions", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    private Report partitionFor(long recipientKey, String recipient) {
+        int hash = recipientKey != PhoneNumber.NONE ? Long.hashCode(recipientKey * 0x9E3779B97F4A7C15L)
+                : (recipient == null ? 0 : recipient.trim().hashCode());
+        hash ^= (hash >>> 16); // Spread the high bits like HashMap does
+        return partitions[Math.floorMod(hash, partitions.length)];
+    }
+
+    // One partition's longest payload and when it was added
+    private static final class Longest {
+        String payload;
+        long sequence;
+    }
+
+    // One partition's share of a report: its messages' sequence numbers (in order) and their text,
+    // or null text for a message that only counts towards the numbering
+    private static final class Piece {
+        final LongList sequences = new LongList();
+        final List<String> texts = new ArrayList<>();
+
+        void add(long sequence, String text) {
+            sequences.add(sequence);
+            texts.add(text);
+        }
+    }
+
+    private interface PieceConsumer {
+        void accept(int position, String text);
+    }
+
+    /**
+     * Walks all the pieces in sequence order, as if they were still one Report, and passes
+     * every message that has text to the consumer with its position among all of them.
+     * Returns how many had text. There are only a few partitions, so finding the next
+     * smallest sequence by looking at each piece's head is quicker than a heap.
+     */
+    private static int mergeInOrder(List<Piece> pieces, PieceConsumer consumer) {
+        int[] heads = new int[pieces.size()];
+        int position = 0;
+        int withText = 0;
+        while (true) {
+            int next = -1;
+            long smallest = Long.MAX_VALUE;
+            for (int p = 0; p < heads.length; p++) {
+                Piece piece = pieces.get(p);
+                if (heads[p] < piece.sequences.size() && piece.sequences.get(heads[p]) < smallest) {
+                    smallest = piece.sequences.get(heads[p]);
+                    next = p;
+                }
+            }
+            if (next < 0) {
+                return withText;
+            }
+            String text = pieces.get(next).texts.get(heads[next]++);
+            if (text != null) {
+                consumer.accept(position, text);
+                withText++;
+            }
+            position++;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package st10485573;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hashes passwords with salted PBKDF2 from the JDK, so we never keep them as plain text.
+ * The work factor (number of iterations) is stored inside every hash, so hashes made
+ * with an older setting still verify after the setting is changed.
+ *
+ * Stored format: pbkdf2-sha512$iterations$salt$hash (salt and hash in Base64).
+ *
+ * @author Funiwe Ngobeni
+ */
+public class PasswordHasher {
+
+    // OWASP's current recommendation for PBKDF2-HMAC-SHA512
+    public static final int DEFAULT_ITERATIONS = 210_000;
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA512";
+    private static final String PREFIX = "pbkdf2-sha512";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+
+    private static final SecureRandom saltGenerator = new SecureRandom();
+
+    private final int iterations;
+    // Checked when the username doesn't exist so that a missing user takes as long
+    // to reject as a wrong password. It is random bytes in our hash format: verify()
+    // does the same work for it as for a real hash, but building it costs nothing at start-up
+    private final String dummyHash;
+
+    public PasswordHasher() {
+        this(DEFAULT_ITERATIONS);
+    }
+
+    public PasswordHasher(int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("Iterations must be positive, got " + iterations);
+        }
+        this.iterations = iterations;
+        byte[] salt = new byte[SALT_BYTES];
+        byte[] key = new byte[KEY_BITS / 8];
+        saltGenerator.nextBytes(salt);
+        saltGenerator.nextBytes(key);
+        this.dummyHash = format(iterations, salt, key);
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Hashes the password with a new random salt.
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        saltGenerator.nextBytes(salt);
+        return format(iterations, salt, deriveKey(password, salt, iterations));
+    }
+
+    private static String format(int iterations, byte[] salt, byte[] key) {
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + "$" + iterations + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(key);
+    }
+
+    /**
+     * Checks the password against a stored hash. The comparison takes the same
+     * time no matter where the bytes differ.
+     */
+    public boolean verify(String password, String storedHash) {
+        if (password == null || storedHash == null) return false;
+        String[] parts = storedHash.split("\\$");
+        if (parts.length != 4 || !PREFIX.equals(parts[0])) return false;
+        try {
+            int storedIterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] expected = Base64.getDecoder().decode(parts[3]);
+            byte[] actual = deriveKey(password, salt, storedIterations);
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false; // Not a number or not Base64, so not one of our hashes
+        }
+    }
+
+    /**
+     * Does the same amount of work as a real verify() and always returns false.
+     */
+    public boolean verifyAgainstDummy(String password) {
+        verify(password == null ? "" : password, dummyHash);
+        return false;
+    }
+
+    private static byte[] deriveKey(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            // Every Java 8+ runtime ships this algorithm, so this means the JDK is broken
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package st10485573;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps registered users on disk so they survive a restart.
+ * Users are appended to users.dat and never rewritten. Two memory-mapped
+ * indexes point from a username hash and from a packed cell number straight
+ * to the user's record, so opening the store doesn't read any users at all
+ * and a login reads exactly one record.
+ *
+ * If the app stops after writing a record but before indexing it, the indexes
+ * remember how far into users.dat they got and catch up the next time it opens.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class PersistentUserStore implements AutoCloseable {
+
+    private static final String DATA_FILE = "users.dat";
+    private static final String NAME_INDEX_FILE = "usernames.idx";
+    private static final String CELL_INDEX_FILE = "cells.idx";
+
+    private final FileChannel data;
+    private final MappedHashIndex nameIndex;
+    private final MappedHashIndex cellIndex;
+    private long dataLength;
+
+    private PersistentUserStore(FileChannel data, MappedHashIndex nameIndex, MappedHashIndex cellIndex) throws IOException {
+        this.data = data;
+        this.nameIndex = nameIndex;
+        this.cellIndex = cellIndex;
+        this.dataLength = data.size();
+    }
+
+    /**
+     * Opens the store in the given folder, creating it if needed.
+     */
+    public static PersistentUserStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel data = FileChannel.open(directory.resolve(DATA_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        PersistentUserStore store = new PersistentUserStore(data,
+                MappedHashIndex.open(directory.resolve(NAME_INDEX_FILE)),
+                MappedHashIndex.open(directory.resolve(CELL_INDEX_FILE)));
+        try {
+            store.catchUpIndexes();
+        } catch (IOException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Appends the user and indexes them. The caller makes sure the username and cell number are free.
+     */
+    public synchronized void append(UserAccount account) throws IOException {
+        byte[] record = encode(account);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + record.length);
+        buffer.putInt(record.length).put(record).flip();
+        long offset = dataLength;
+        while (buffer.hasRemaining()) {
+            data.write(buffer, offset + buffer.position());
+        }
+        dataLength += 4 + record.length;
+        index(account, offset, dataLength);
+    }
+
+    /**
+     * Finds a user by username, reading only their own record. Returns null if there is no such user.
+     */
+    public UserAccount find(String userName) {
+        if (userName == null) return null;
+        UserAccount[] found = new UserAccount[1];
+        nameIndex.find(hashUserName(userName), offset -> {
+            UserAccount account = read(offset);
+            if (account.getUserName().equals(userName)) {
+                found[0] = account;
+                return true;
+            }
+            return false; // Another username with the same hash
+        });
+        return found[0];
+    }
+
+    public boolean containsUserName(String userName) {
+        return find(userName) != null;
+    }
+
+    public boolean containsCellPhoneKey(long cellPhoneKey) {
+        return cellPhoneKey != PhoneNumber.NONE && cellIndex.find(cellPhoneKey, offset -> true) >= 0;
+    }
+
+    public long size() {
+        return nameIndex.size();
+    }
+
+    /**
+     * Makes sure everything written so far is on disk.
+     */
+    public synchronized void flush() throws IOException {
+        data.force(false);
+        nameIndex.flush();
+        cellIndex.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        nameIndex.close();
+        cellIndex.close();
+        data.close();
+    }
+
+    // Points both indexes at the record that starts at offset and ends at end
+    private void index(UserAccount account, long offset, long end) throws IOException {
+        nameIndex.put(hashUserName(account.getUserName()), offset);
+        if (account.getCellPhoneKey() != PhoneNumber.NONE) {
+            cellIndex.put(account.getCellPhoneKey(), offset);
+        }
+        nameIndex.setWatermark(end);
+        cellIndex.setWatermark(end);
+    }
+
+    // Indexes any records written after the indexes were last updated
+    private void catchUpIndexes() throws IOException {
+        long offset = Math.min(nameIndex.getWatermark(), cellIndex.getWatermark());
+        while (offset < dataLength) {
+            UserAccount account;
+            try {
+                account = read(offset);
+            } catch (UncheckedIOException e) {
+                if (!runsPastEnd(offset)) {
+                    // Cutting here would lose every user after it, so don't guess
+                    throw new IOException("The user record at " + offset + " in " + DATA_FILE + " is damaged", e.getCause());
+                }
+                // A half-written record at the very end; cut it off
+                data.truncate(offset);
+                dataLength = offset;
+                break;
+            }
+            if (nameIndex.getWatermark() <= offset) {
+                nameIndex.put(hashUserName(account.getUserName()), offset);
+            }
+            if (cellIndex.getWatermark() <= offset && account.getCellPhoneKey() != PhoneNumber.NONE) {
+                cellIndex.put(account.getCellPhoneKey(), offset);
+            }
+            offset += 4 + encode(account).length;
+            nameIndex.setWatermark(Math.max(nameIndex.getWatermark(), offset));
+            cellIndex.setWatermark(Math.max(cellIndex.getWatermark(), offset));
+        }
+    }
+
+    // True if the record at offset would end past the end of the file, which is what a
+    // write that was cut short leaves behind
+    private boolean runsPastEnd(long offset) throws IOException {
+        if (dataLength - offset < 4) {
+            return true;
+        }
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        readFully(lengthBuffer, offset);
+        int length = lengthBuffer.getInt(0);
+        return length > 0 && offset + 4 + length > dataLength;
+    }
+
+    private UserAccount read(long offset) {
+        try {
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+            readFully(lengthBuffer, offset);
+            int length = lengthBuffer.getInt(0);
+            if (length <= 0 || offset + 4 + length > data.size()) {
+                throw new EOFException("Incomplete user record at " + offset);
+            }
+            ByteBuffer recordBuffer = ByteBuffer.allocate(length);
+            readFully(recordBuffer, offset + 4);
+            return decode(recordBuffer.array());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (data.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of " + DATA_FILE);
+            }
+        }
+    }
+
+    private static byte[] encode(UserAccount account) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(account.getUserName());
+            out.writeUTF(account.getPasswordHash());
+            out.writeLong(account.getCellPhoneKey());
+            out.writeUTF(account.getFirstName());
+            out.writeUTF(account.getLastName());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Can't happen when writing to memory
+        }
+    }
+
+    private static UserAccount decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        String userName = in.readUTF();
+        String passwordHash = in.readUTF();
+        long cellPhoneKey = in.readLong();
+        String firstName = in.readUTF();
+        String lastName = in.readUTF();
+        return new UserAccount(userName, passwordHash, PhoneNumber.format(cellPhoneKey), firstName, lastName);
+    }
+
+    // A 64-bit FNV-1a hash, so usernames rarely share an index key. Never returns 0.
+    static long hashUserName(String userName) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < userName.length(); i++) {
+            hash ^= userName.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,133 @@
+package st10485573;
+
+/**
+ * A South African cell number packed into a single long.
+ * Registration only accepts +27 followed by 9 digits, so the whole number
+ * fits in a primitive and comparing two numbers is just comparing two longs.
+ * Common ways of typing a number (+27..., 0027..., 27..., 0..., with spaces
+ * or dashes) all end up as the same packed value.
+ *
+ * @author Funiwe Ngobeni
+ */
+public final class PhoneNumber {
+
+    // Used when a piece of text is not a South African cell number
+    public static final long NONE = 0L;
+
+    // +27 plus 9 digits becomes the number 27XXXXXXXXX
+    private static final long COUNTRY_PREFIX = 27_000_000_000L;
+    private static final int NATIONAL_DIGITS = 9;
+
+    private final long packed;
+
+    private PhoneNumber(long packed) {
+        this.packed = packed;
+    }
+
+    /**
+     * Turns the text into a PhoneNumber, or returns null if it is not a valid number.
+     */
+    public static PhoneNumber parse(String text) {
+        long packed = pack(text);
+        return packed == NONE ? null : new PhoneNumber(packed);
+    }
+
+    /**
+     * Wraps a value that came from pack().
+     */
+    public static PhoneNumber fromPacked(long packed) {
+        if (packed < COUNTRY_PREFIX || packed >= COUNTRY_PREFIX + 1_000_000_000L) {
+            throw new IllegalArgumentException("Not a packed South African number: " + packed);
+        }
+        return new PhoneNumber(packed);
+    }
+
+    /**
+     * Normalizes the text and packs it into a long, or returns NONE if it is not a valid number.
+     * This does not create any objects, so it is cheap to call for every message.
+     */
+    public static long pack(String text) {
+        if (text == null) return NONE;
+
+        // First pass: count the digits and make sure everything else is a separator
+        int digitCount = 0;
+        int start = 0;
+        int length = text.length();
+        while (start < length && text.charAt(start) == ' ') start++;
+        boolean plus = start < length && text.charAt(start) == '+';
+        if (plus) start++;
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digitCount++;
+            } else if (c != ' ' && c != '-' && c != '(' && c != ')') {
+                return NONE;
+            }
+        }
+
+        // Work out how many leading digits belong to the prefix (27, 0027 or 0)
+        int prefixDigits;
+        if (plus && digitCount == 11) {
+            prefixDigits = 2; // +27XXXXXXXXX
+        } else if (!plus && digitCount == 13) {
+            prefixDigits = 4; // 0027XXXXXXXXX
+        } else if (!plus && digitCount == 11) {
+            prefixDigits = 2; // 27XXXXXXXXX
+        } else if (!plus && digitCount == 10) {
+            prefixDigits = 1; // 0XXXXXXXXX
+        } else {
+            return NONE;
+        }
+
+        // Second pass: check the prefix and add up the national digits
+        long prefix = 0;
+        long national = 0;
+        int seen = 0;
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') continue;
+            if (seen < prefixDigits) {
+                prefix = prefix * 10 + (c - '0');
+            } else {
+                national = national * 10 + (c - '0');
+            }
+            seen++;
+        }
+        long expectedPrefix = prefixDigits == 1 ? 0 : 27;
+        if (prefix != expectedPrefix) return NONE;
+
+        return COUNTRY_PREFIX + national;
+    }
+
+    /**
+     * Writes a packed number back out in the +27XXXXXXXXX form.
+     */
+    public static String format(long packed) {
+        if (packed == NONE) return "";
+        return "+" + packed;
+    }
+
+    public long toLong() { return packed; }
+
+    /**
+     * Just the 9 digits after the country code.
+     */
+    public String nationalNumber() {
+        return String.format("%0" + NATIONAL_DIGITS + "d", packed - COUNTRY_PREFIX);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PhoneNumber && ((PhoneNumber) other).packed == packed;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(packed);
+    }
+
+    @Override
+    public String toString() {
+        return format(packed);
+    }
+}
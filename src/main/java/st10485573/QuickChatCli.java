@@ -0,0 +1,461 @@
+package st10485573;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Runs QuickChat without any windows, reading one command per line from stdin
+ * or a script file. This is for batch jobs, servers and load tests where there
+ * is no screen. It never touches Swing or AWT, so no GUI classes are loaded.
+ *
+ * Start it with: FuniweNgobeniApp --headless [--script file] [--data dir]
+ * [--in-memory] [--messages dir] [--hash-iterations n]
+ *
+ * Every command prints one line starting with OK or ERROR (reports print their
+ * text first), so scripts can check the results. Timing goes to stderr.
+ * Type "help" to see the commands.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class QuickChatCli {
+
+    public static final String HELP =
+            "register <username> <password> <cell> <first name> <last name>\n"
+            + "login <username> <password>\n"
+            + "logout\n"
+            + "send <recipient> <message>\n"
+            + "store <recipient> <message>\n"
+            + "disregard <recipient> <message>\n"
+            + "sendstored\n"
+            + "query sent | longest | count | report | id <id> | recipient <number> | prefix <start of number> | top [n] | estimate | recent [n] | last <minutes>\n"
+            + "inbox\n"
+            + "delete <hash>\n"
+            + "load\n"
+            + "import <users.csv> <rejects.csv>\n"
+            + "stats\n"
+            + "quit\n"
+            + "Put text with spaces in \"double quotes\". Lines starting with # are skipped.";
+
+    // The source the login throttle sees for attempts from here
+    public static final String CLI_SOURCE = "cli";
+
+    private final Registration registration;
+    private final Login login;
+    private final Report reportManager;
+    private final MessageJsonStore jsonStore;
+    private final PrintStream out;
+    // Who the login throttle thinks the attempts come from
+    private final String loginSource;
+
+    // Set once someone logs in
+    private MessagingService messaging;
+    // If set, sending and storing go through it (the server shares one between all its connections)
+    private SendPipeline sendPipeline;
+    // Where "query estimate" gets its rough counts. On its own the command line starts its own
+    // the first time; the server shares one between all its connections instead.
+    private Supplier<MessageStatistics> statisticsSource = this::ownStatistics;
+    private MessageStatistics ownStatistics;
+    // True when other users share the report, so queries must only show the logged-in user's messages
+    private boolean ownMessagesOnly;
+    private long commandCount;
+    private long errorCount;
+    private long busyNanos;
+    private boolean quitRequested;
+
+    public QuickChatCli(Registration registration, Login login, Report reportManager, MessageJsonStore jsonStore, PrintStream out) {
+        this(registration, login, reportManager, jsonStore, out, CLI_SOURCE);
+    }
+
+    public QuickChatCli(Registration registration, Login login, Report reportManager, MessageJsonStore jsonStore, PrintStream out,
+            String loginSource) {
+        this.registration = registration;
+        this.login = login;
+        this.reportManager = reportManager;
+        this.jsonStore = jsonStore;
+        this.out = out;
+        this.loginSource = loginSource;
+    }
+
+    /**
+     * Makes sending and storing go through this pipeline from the next login on.
+     * It should use the same Report and message store as this command line.
+     */
+    public void setSendPipeline(SendPipeline sendPipeline) {
+        this.sendPipeline = sendPipeline;
+    }
+
+    /**
+     * Makes "query estimate" use these statistics instead of starting its own.
+     * They should already be attached to the same Report as this command line.
+     */
+    public void setStatisticsSource(Supplier<MessageStatistics> statisticsSource) {
+        this.statisticsSource = statisticsSource;
+    }
+
+    /**
+     * Makes the queries that show messages (sent, longest, report, id, recipient, prefix, top and recent)
+     * only look at messages the logged-in user sent or that were sent to their cell number.
+     * The counts (count, last, estimate) still cover everyone. The server turns this on.
+     */
+    public void setOwnMessagesOnly(boolean ownMessagesOnly) {
+        this.ownMessagesOnly = ownMessagesOnly;
+    }
+
+    private MessageStatistics ownStatistics() {
+        if (ownStatistics == null) {
+            ownStatistics = new MessageStatistics().attachTo(reportManager);
+        }
+        return ownStatistics;
+    }
+
+    /**
+     * Starts the command line from FuniweNgobeniApp's arguments and returns the exit code:
+     * 0 if every command worked, 2 if any printed an ERROR, 1 if we couldn't start at all.
+     */
+    public static int launch(String[] args) {
+        Path script = null;
+        Path dataDirectory = Path.of("quickchat-data");
+        Path messageDirectory = Path.of(".");
+        boolean inMemory = false;
+        int hashIterations = PasswordHasher.DEFAULT_ITERATIONS;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--headless":
+                        break;
+                    case "--script":
+                        script = Path.of(args[++i]);
+                        break;
+                    case "--data":
+                        dataDirectory = Path.of(args[++i]);
+                        break;
+                    case "--messages":
+                        messageDirectory = Path.of(args[++i]);
+                        break;
+                    case "--in-memory":
+                        inMemory = true;
+                        break;
+                    case "--hash-iterations":
+                        hashIterations = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        System.err.println("Unknown option " + args[i]);
+                        return 1;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println("Missing or bad value for " + args[args.length - 1]);
+            return 1;
+        }
+
+        PersistentUserStore store = null;
+        try {
+            store = inMemory ? null : PersistentUserStore.open(dataDirectory);
+            Registration registration = new Registration(new UserDirectory(store), new PasswordHasher(hashIterations));
+            QuickChatCli cli = new QuickChatCli(registration, new Login(registration), new Report(),
+                    new MessageJsonStore(messageDirectory), System.out);
+            System.err.println("# Ready in " + StartupClock.millisSinceJvmStart() + " ms");
+            try (BufferedReader in = script != null
+                    ? Files.newBufferedReader(script, StandardCharsets.UTF_8)
+                    : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+                cli.run(in);
+            }
+            System.err.println("# " + cli.getStatistics());
+            return cli.getErrorCount() > 0 ? 2 : 0;
+        } catch (IOException e) {
+            System.err.println("QuickChat could not start: " + e.getMessage());
+            return 1;
+        } finally {
+            if (store != null) {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    System.err.println("Could not close the user store: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs commands until the input ends or a quit command.
+     */
+    public void run(BufferedReader in) throws IOException {
+        String line;
+        while (!quitRequested && (line = in.readLine()) != null) {
+            String result = execute(line);
+            if (result != null) {
+                out.println(result);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Runs one command and returns what it printed, or null for a blank line or comment.
+     */
+    public String execute(String line) {
+        List<String> words = tokenize(line);
+        if (words.isEmpty() || words.get(0).startsWith("#")) {
+            return null;
+        }
+        return execute(words);
+    }
+
+    /**
+     * Runs one command that has already been split into words, like the server receives them.
+     */
+    public String execute(List<String> words) {
+        if (words.isEmpty()) {
+            return "ERROR empty command";
+        }
+        long start = System.nanoTime();
+        String result;
+        try {
+            result = dispatch(words.get(0).toLowerCase(), words.subList(1, words.size()));
+        } catch (IOException | RuntimeException e) {
+            result = "ERROR " + e.getMessage();
+        }
+        busyNanos += System.nanoTime() - start;
+        commandCount++;
+        if (isError(result)) {
+            errorCount++;
+        }
+        return result;
+    }
+
+    // Every reply ends with an OK or ERROR line; a one-line reply starts with it
+    static boolean isError(String result) {
+        return result.startsWith("ERROR") || result.contains("\nERROR");
+    }
+
+    private String dispatch(String command, List<String> args) throws IOException {
+        switch (command) {
+            case "register":
+                requireArgs(args, 5, "register <username> <password> <cell> <first name> <last name>");
+                RegistrationResult result = registration.register(args.get(0), args.get(1), args.get(2), args.get(3), args.get(4));
+                if (result.isSuccessful()) {
+                    return "OK registered " + args.get(0);
+                }
+                List<String> failed = new ArrayList<>();
+                for (RegistrationRule rule : result.getFailedRules()) {
+                    failed.add(rule.name());
+                }
+                return "ERROR registration failed: " + String.join(",", failed);
+            case "login":
+                requireArgs(args, 2, "login <username> <password>");
+                if (login.loginUser(args.get(0), args.get(1), loginSource)) {
+                    messaging = sendPipeline != null ? new MessagingService(login.getUsername(), sendPipeline)
+                            : new MessagingService(login.getUsername(), reportManager, jsonStore);
+                    return "OK logged in as " + login.getUsername();
+                }
+                messaging = null;
+                return "ERROR " + login.returnLoginStatus();
+            case "logout":
+                login.logout();
+                messaging = null;
+                return "OK logged out";
+            case "send":
+                requireArgs(args, 2, "send <recipient> <message>");
+                return describe(loggedIn().send(loggedIn().createMessage(args.get(0), args.get(1))));
+            case "store":
+                requireArgs(args, 2, "store <recipient> <message>");
+                return describe(loggedIn().store(loggedIn().createMessage(args.get(0), args.get(1))));
+            case "disregard":
+                requireArgs(args, 2, "disregard <recipient> <message>");
+                return describe(loggedIn().disregard(loggedIn().createMessage(args.get(0), args.get(1))));
+            case "sendstored":
+                return "OK sent " + loggedIn().sendAllStored() + " stored messages";
+            case "query":
+                return query(args);
+            case "inbox":
+                MessagingService reader = loggedIn();
+                if (!args.isEmpty()) {
+                    return "ERROR you can only read your own inbox, so inbox takes no number";
+                }
+                // Always the number the user registered with, never one the client names
+                String ownCell = login.getCellPhoneNumber();
+                StringBuilder inbox = new StringBuilder();
+                for (Message msg : reader.receiveMessages(ownCell)) {
+                    inbox.append(msg.getMessageSender()).append(": ").append(msg.getMessagePayload()).append('\n');
+                }
+                return inbox.append("OK ").append(reader.getBroker().getQueueDepth(ownCell)).append(" still waiting").toString();
+            case "delete":
+                requireArgs(args, 1, "delete <hash>");
+                String deleted = loggedIn().deleteMessageByHash(args.get(0));
+                return (deleted.endsWith("successfully deleted.") ? "OK " : "ERROR ") + deleted;
+            case "load":
+                List<String> problems = new ArrayList<>();
+                int loaded = loggedIn().loadSavedMessages(problems);
+                return "OK loaded " + loaded + (problems.isEmpty() ? "" : ", skipped " + problems.size() + " unreadable file(s)");
+            case "import":
+                requireArgs(args, 2, "import <users.csv> <rejects.csv>");
+                BulkUserImporter.Summary summary = new BulkUserImporter(registration).importFile(Path.of(args.get(0)), Path.of(args.get(1)));
+                return "OK " + summary;
+            case "stats":
+                return "OK " + getStatistics();
+            case "help":
+                return HELP + "\nOK";
+            case "quit":
+            case "exit":
+                quitRequested = true;
+                return "OK bye";
+            default:
+                return "ERROR unknown command " + command + " (try help)";
+        }
+    }
+
+    private String query(List<String> args) {
+        requireArgs(args, 1, "query sent | longest | count | report | id <id> | recipient <number> | prefix <start of number> | top [n] | estimate | recent [n] | last <minutes>");
+        MessagingService session = loggedIn();
+        Report visible = reportManager;
+        if (ownMessagesOnly) {
+            // Everyone shares the report, so only look at what this user sent or received
+            visible = reportManager.copyForUser(login.getUsername(), login.getCellPhoneNumber());
+            session = new MessagingService(session.getLoggedInUser(), visible, jsonStore);
+        }
+        switch (args.get(0).toLowerCase()) {
+            case "sent":
+                return withStatus(session.sentMessageDetails(), true);
+            case "longest":
+                return withStatus(session.longestMessage(), true);
+            case "count":
+                return "OK " + reportManager.getMessageCount();
+            case "report":
+                return withStatus(session.fullReport(), true);
+            case "id":
+                requireArgs(args, 2, "query id <id>");
+                String found = session.findMessageById(args.get(1));
+                return withStatus(found, found.startsWith("Message Found!"));
+            case "recipient":
+                requireArgs(args, 2, "query recipient <number>");
+                String messages = session.findMessagesByRecipient(args.get(1));
+                return withStatus(messages, !messages.startsWith("No messages found"));
+            case "top":
+                int n = args.size() > 1 ? Integer.parseInt(args.get(1)) : 10;
+                ReportAnalytics.Summary summary = session.analytics();
+                StringBuilder top = new StringBuilder();
+                for (Map.Entry<String, Long> entry : summary.getTopRecipients(n)) {
+                    top.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+                }
+                top.append(String.format("Average length: Sent %.1f, Stored %.1f\n",
+                        summary.getAveragePayloadLength("Sent"), summary.getAveragePayloadLength("Stored")));
+                return withStatus(top.toString(), true);
+            case "estimate":
+                MessageStatistics statistics = statisticsSource.get();
+                StringBuilder estimate = new StringBuilder(String.format("About %d recipients and %d senders from %d messages\n",
+                        statistics.estimateDistinctRecipients(), statistics.estimateDistinctSenders(), statistics.getMessageCount()));
+                for (Map.Entry<String, Long> entry : statistics.getTopRecipients()) {
+                    estimate.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+                }
+                return withStatus(estimate.toString(), true);
+            case "recent":
+                int howMany = args.size() > 1 ? Integer.parseInt(args.get(1)) : 10;
+                StringBuilder recent = new StringBuilder();
+                for (Message msg : visible.getMostRecent(howMany)) {
+                    recent.append(Instant.ofEpochMilli(msg.getTimestampMillis())).append(' ')
+                            .append(msg.getMessageRecipient()).append(": ").append(msg.getMessagePayload()).append('\n');
+                }
+                return recent.length() > 0 ? withStatus(recent.toString(), true) : "ERROR no messages yet";
+            case "last":
+                requireArgs(args, 2, "query last <minutes>");
+                long now = System.currentTimeMillis();
+                long minutes = Long.parseLong(args.get(1));
+                return "OK " + reportManager.countMessagesBetween(now - minutes * 60_000, now + 1) + " in the last " + minutes + " minutes";
+            case "prefix":
+                requireArgs(args, 2, "query prefix <start of number>");
+                StringBuilder matches = new StringBuilder();
+                for (RecipientIndex.Match match : session.suggestRecipients(args.get(1))) {
+                    matches.append(match.getRecipient()).append(' ').append(match.getMessageCount()).append('\n');
+                }
+                return matches.length() > 0 ? withStatus(matches.toString(), true) : "ERROR no recipients start with " + args.get(1);
+            default:
+                return "ERROR unknown query " + args.get(0);
+        }
+    }
+
+    // The service for the logged-in user, as long as their session is still alive
+    private MessagingService loggedIn() {
+        if (messaging == null || login.validateSession(login.getSessionToken()) == null) {
+            messaging = null;
+            throw new IllegalStateException("please log in first");
+        }
+        return messaging;
+    }
+
+    // A report's text followed by the OK or ERROR line
+    private static String withStatus(String text, boolean ok) {
+        return text.stripTrailing() + (ok ? "\nOK" : "\nERROR not found");
+    }
+
+    private static String describe(Message msg) {
+        return "OK " + msg.getMessageStatus().toLowerCase() + " " + msg.getMessageID() + " " + msg.getMessageHash();
+    }
+
+    private static void requireArgs(List<String> args, int count, String usage) {
+        if (args.size() < count) {
+            throw new IllegalArgumentException("usage: " + usage);
+        }
+    }
+
+    public long getCommandCount() { return commandCount; }
+    public long getErrorCount() { return errorCount; }
+    public boolean isQuitRequested() { return quitRequested; }
+
+    /**
+     * How many commands ran and how fast, counting only the time spent running them.
+     */
+    public String getStatistics() {
+        double seconds = busyNanos / 1e9;
+        return String.format("%d commands (%d errors) in %.3f s, %.0f commands/s",
+                commandCount, errorCount, seconds, seconds > 0 ? commandCount / seconds : 0.0);
+    }
+
+    /**
+     * Splits a command line into words. Text in double quotes is one word, and "" inside quotes is a quote.
+     */
+    public static List<String> tokenize(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inQuotes = false;
+        boolean hasWord = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    word.append('"');
+                    i++;
+                } else if (c == '"') {
+                    inQuotes = false;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+                hasWord = true;
+            } else if (Character.isWhitespace(c)) {
+                if (hasWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    hasWord = false;
+                }
+            } else {
+                word.append(c);
+                hasWord = true;
+            }
+        }
+        if (hasWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+}
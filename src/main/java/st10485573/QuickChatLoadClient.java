@@ -0,0 +1,179 @@
+package st10485573;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A load test for QuickChatServer. It opens many connections at once (one virtual
+ * thread each), logs every one of them in, and has each send a number of messages,
+ * waiting for every reply before sending the next, like a real client would.
+ * It measures how many messages per second got through and how long each
+ * request took from sending it to getting the reply.
+ *
+ * Run it with: QuickChatLoadClient [--host h] [--port n] [--connections n]
+ * [--messages n per connection] [--user name] [--password p] [--register]
+ *
+ * @author Funiwe Ngobeni
+ */
+public class QuickChatLoadClient {
+
+    /**
+     * What one load test run measured.
+     */
+    public static final class Result {
+        private final int connections;
+        private final long messagesSent;
+        private final long errors;
+        private final double seconds;
+        private final LatencyHistogram latency;
+
+        Result(int connections, long messagesSent, long errors, double seconds, LatencyHistogram latency) {
+            this.connections = connections;
+            this.messagesSent = messagesSent;
+            this.errors = errors;
+            this.seconds = seconds;
+            this.latency = latency;
+        }
+
+        public int getConnections() { return connections; }
+        public long getMessagesSent() { return messagesSent; }
+        public long getErrors() { return errors; }
+        public double getSeconds() { return seconds; }
+        public double getMessagesPerSecond() { return seconds > 0 ? messagesSent / seconds : 0; }
+        public LatencyHistogram getLatency() { return latency; }
+
+        @Override
+        public String toString() {
+            return String.format("%d connections, %,d messages (%d errors) in %.2f s, %,.0f messages/s; latency %s",
+                    connections, messagesSent, errors, seconds, getMessagesPerSecond(), latency);
+        }
+    }
+
+    private final String host;
+    private final int port;
+
+    public QuickChatLoadClient(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Opens the connections, logs them all in, then times every one sending its messages at once.
+     * Sending starts only when every connection is logged in, so the slow password checks aren't timed.
+     */
+    public Result run(int connectionCount, int messagesPerConnection, String userName, String password) throws Exception {
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder sent = new LongAdder();
+        LongAdder errors = new LongAdder();
+        CountDownLatch loggedIn = new CountDownLatch(connectionCount);
+        CountDownLatch go = new CountDownLatch(1);
+
+        List<Future<?>> clients = new ArrayList<>();
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < connectionCount; c++) {
+                int client = c;
+                clients.add(threads.submit(() -> {
+                    boolean counted = false;
+                    try (Socket socket = new Socket(host, port)) {
+                        socket.setTcpNoDelay(true);
+                        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                        QuickChatProtocol.Frame reply = request(in, out, QuickChatProtocol.LOGIN, userName, password);
+                        loggedIn.countDown();
+                        counted = true;
+                        if (reply.getCode() != QuickChatProtocol.OK) {
+                            throw new IOException("Login failed: " + reply.getText());
+                        }
+                        go.await();
+                        for (int i = 0; i < messagesPerConnection; i++) {
+                            String recipient = String.format("+2783%07d", (client * 7919 + i) % 10_000_000);
+                            long start = System.nanoTime();
+                            reply = request(in, out, QuickChatProtocol.SEND, recipient, "Load test message " + i + " from client " + client);
+                            latency.record(System.nanoTime() - start);
+                            sent.increment();
+                            if (reply.getCode() != QuickChatProtocol.OK) {
+                                errors.increment();
+                            }
+                        }
+                        request(in, out, QuickChatProtocol.QUIT);
+                    } finally {
+                        if (!counted) {
+                            loggedIn.countDown(); // Failed before logging in, so don't keep the others waiting
+                        }
+                    }
+                    return null;
+                }));
+            }
+            loggedIn.await();
+            long start = System.nanoTime();
+            go.countDown();
+            for (Future<?> client : clients) {
+                client.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            return new Result(connectionCount, sent.sum(), errors.sum(), seconds, latency);
+        }
+    }
+
+    private static QuickChatProtocol.Frame request(DataInputStream in, DataOutputStream out, byte code, String... fields) throws IOException {
+        QuickChatProtocol.writeFrame(out, code, fields);
+        out.flush();
+        QuickChatProtocol.Frame reply = QuickChatProtocol.readFrame(in);
+        if (reply == null) {
+            throw new IOException("The server hung up");
+        }
+        return reply;
+    }
+
+    /**
+     * Registers the load test user, ignoring the error if they already exist.
+     */
+    public void register(String userName, String password, String cellNumber) throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            request(in, out, QuickChatProtocol.REGISTER, userName, password, cellNumber, "Load", "Test");
+            request(in, out, QuickChatProtocol.QUIT);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "127.0.0.1";
+        int port = QuickChatServer.DEFAULT_PORT;
+        int connections = 100;
+        int messages = 1000;
+        String user = "load_1";
+        String password = "Passw0rd!";
+        boolean register = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host": host = args[++i]; break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--connections": connections = Integer.parseInt(args[++i]); break;
+                case "--messages": messages = Integer.parseInt(args[++i]); break;
+                case "--user": user = args[++i]; break;
+                case "--password": password = args[++i]; break;
+                case "--register": register = true; break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+        QuickChatLoadClient client = new QuickChatLoadClient(host, port);
+        if (register) {
+            client.register(user, password, "+27838968976");
+        }
+        System.out.println(client.run(connections, messages, user, password));
+    }
+}
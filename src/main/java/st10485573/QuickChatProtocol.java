@@ -0,0 +1,144 @@
+package st10485573;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary protocol QuickChatServer speaks over TCP.
+ *
+ * Every request and reply is one frame: a 4-byte length (big-endian, not
+ * counting itself), then a 1-byte code, then any number of fields. Each field
+ * is a 4-byte length followed by that many bytes of UTF-8 text.
+ *
+ * A request's code says what to do (LOGIN, SEND ...) and its fields are the
+ * same arguments the command line takes, e.g. SEND "+27838884567" "Hi there".
+ * A reply's code is OK or ERROR and it has one field: the text the command
+ * line would have printed.
+ *
+ * @author Funiwe Ngobeni
+ */
+public final class QuickChatProtocol {
+
+    // Request codes
+    public static final byte REGISTER = 1;
+    public static final byte LOGIN = 2;
+    public static final byte LOGOUT = 3;
+    public static final byte SEND = 4;
+    public static final byte STORE = 5;
+    public static final byte QUERY = 6;
+    public static final byte INBOX = 7;
+    public static final byte QUIT = 8;
+
+    // Reply codes
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;
+
+    // Nothing we send comes close; anything bigger is a broken or hostile client
+    public static final int MAX_FRAME_BYTES = 1 << 20;
+
+    // The command line word for each request code, indexed by the code
+    private static final String[] COMMANDS = {
+        null, "register", "login", "logout", "send", "store", "query", "inbox", "quit"
+    };
+
+    private QuickChatProtocol() {
+    }
+
+    /**
+     * One request or reply: its code and its text fields.
+     */
+    public static final class Frame {
+        private final byte code;
+        private final List<String> fields;
+
+        public Frame(byte code, List<String> fields) {
+            this.code = code;
+            this.fields = fields;
+        }
+
+        public byte getCode() { return code; }
+        public List<String> getFields() { return fields; }
+
+        /**
+         * A reply's text.
+         */
+        public String getText() {
+            return fields.isEmpty() ? "" : fields.get(0);
+        }
+    }
+
+    /**
+     * Writes one frame. The caller flushes when it has written everything it wants to send.
+     */
+    public static void writeFrame(DataOutputStream out, byte code, String... fields) throws IOException {
+        byte[][] encoded = new byte[fields.length][];
+        int length = 1;
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i] = fields[i].getBytes(StandardCharsets.UTF_8);
+            length += 4 + encoded[i].length;
+        }
+        if (length > MAX_FRAME_BYTES) {
+            throw new IOException("Frame of " + length + " bytes is bigger than " + MAX_FRAME_BYTES);
+        }
+        out.writeInt(length);
+        out.writeByte(code);
+        for (byte[] field : encoded) {
+            out.writeInt(field.length);
+            out.write(field);
+        }
+    }
+
+    /**
+     * Reads one frame, or returns null if the other side closed the connection between frames.
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 1 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Bad frame length " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+
+        List<String> fields = new ArrayList<>();
+        int position = 1;
+        while (position < length) {
+            if (position + 4 > length) {
+                throw new IOException("Frame ends in the middle of a field length");
+            }
+            int fieldLength = (body[position] & 0xff) << 24 | (body[position + 1] & 0xff) << 16
+                    | (body[position + 2] & 0xff) << 8 | (body[position + 3] & 0xff);
+            position += 4;
+            if (fieldLength < 0 || fieldLength > length - position) {
+                throw new IOException("Bad field length " + fieldLength);
+            }
+            fields.add(new String(body, position, fieldLength, StandardCharsets.UTF_8));
+            position += fieldLength;
+        }
+        return new Frame(body[0], fields);
+    }
+
+    /**
+     * The command line words for a request, e.g. SEND "+2783..." "Hi" becomes [send, +2783..., Hi].
+     * Returns null for a code we don't know.
+     */
+    public static List<String> toCommand(Frame request) {
+        int code = request.getCode();
+        if (code <= 0 || code >= COMMANDS.length) {
+            return null;
+        }
+        List<String> words = new ArrayList<>(request.getFields().size() + 1);
+        words.add(COMMANDS[code]);
+        words.addAll(request.getFields());
+        return words;
+    }
+}
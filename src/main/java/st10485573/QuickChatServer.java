@@ -0,0 +1,329 @@
+package st10485573;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets many clients use one QuickChat over TCP, speaking QuickChatProtocol.
+ *
+ * Every connection gets its own virtual thread, so a connection can simply
+ * block while it waits for the next request, and thousands of idle
+ * connections cost only a little memory each. Each connection has its own
+ * QuickChatCli session (so the same commands and the same checks as the
+ * command line), but they all share one Registration, Report, message store
+ * and MessageBroker, so a message sent on one connection can be read on another.
+ *
+ * Messages sent or stored on any connection go through one shared SendPipeline,
+ * so a burst from many clients queues up in front of the disk instead of all
+ * writing at once. Its queue size, batch size and what to do when it is full
+ * (block, drop or fail) can be set on the command line.
+ *
+ * Start it with: FuniweNgobeniApp --server [--port n] [--bind address] [--data dir]
+ * [--in-memory] [--messages dir] [--hash-iterations n] [--no-login-throttle] [--replicate-port n]
+ * [--replicate-bind address] [--send-queue n] [--send-batch n] [--overflow block|drop|fail]
+ * (--no-login-throttle lets a load test log hundreds of connections in from one address,
+ * and --replicate-port lets a ReplicationFollower keep a copy of the messages).
+ * It only listens on this computer unless --bind says otherwise, because nothing
+ * on the connection is encrypted, passwords included. The same goes for replication,
+ * which has no login at all, so it has its own --replicate-bind and ignores --bind.
+ *
+ * A connection can only read the inbox of the user logged in on it.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class QuickChatServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 5121;
+
+    private final Registration registration;
+    private final Report reportManager;
+    private final MessageJsonStore jsonStore;
+    // Shared by every connection's Login, so the throttle and sessions see all of them
+    private final CredentialVerifier credentialVerifier;
+    private final SessionManager sessionManager = new SessionManager();
+    private final LoginThrottle loginThrottle;
+    private final SendPipeline sendPipeline;
+    // Every connection's "query estimate" reads this one; started by the first, stopped by close()
+    private MessageStatistics statistics;
+
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final LongAdder acceptedCount = new LongAdder();
+    private final LongAdder requestCount = new LongAdder();
+    private ServerSocket serverSocket;
+
+    public QuickChatServer(Registration registration, Report reportManager, MessageJsonStore jsonStore) {
+        this(registration, reportManager, jsonStore, new LoginThrottle());
+    }
+
+    public QuickChatServer(Registration registration, Report reportManager, MessageJsonStore jsonStore, LoginThrottle loginThrottle) {
+        this(registration, reportManager, jsonStore, loginThrottle,
+                new SendPipeline(reportManager, jsonStore, MessageBroker.getDefault()));
+    }
+
+    /**
+     * The pipeline should use the same report and message store; the server closes it when it closes.
+     */
+    public QuickChatServer(Registration registration, Report reportManager, MessageJsonStore jsonStore, LoginThrottle loginThrottle,
+            SendPipeline sendPipeline) {
+        this.registration = registration;
+        this.reportManager = reportManager;
+        this.jsonStore = jsonStore;
+        this.loginThrottle = loginThrottle;
+        this.sendPipeline = sendPipeline;
+        this.credentialVerifier = new CredentialVerifier(registration.getUserDirectory(), registration.getPasswordHasher());
+    }
+
+    /**
+     * Starts listening and returns straight away. Use port 0 to get any free port (see getPort).
+     */
+    public synchronized void start(InetAddress bindAddress, int port) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("The server is already running");
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(bindAddress, port), 1024);
+        ServerSocket listening = serverSocket;
+        connections.execute(() -> acceptLoop(listening));
+    }
+
+    public synchronized int getPort() {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop(ServerSocket listening) {
+        while (!listening.isClosed()) {
+            try {
+                Socket socket = listening.accept();
+                acceptedCount.increment();
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!listening.isClosed()) {
+                    System.err.println("Could not accept a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers one client's requests until it hangs up or sends QUIT.
+     */
+    private void serve(Socket socket) {
+        openSockets.add(socket);
+        Login login = new Login(registration, credentialVerifier, sessionManager, loginThrottle);
+        String source = socket.getInetAddress().getHostAddress();
+        QuickChatCli session = new QuickChatCli(registration, login, reportManager, jsonStore,
+                new PrintStream(new ByteArrayOutputStream()), source);
+        session.setSendPipeline(sendPipeline);
+        session.setStatisticsSource(this::getStatistics);
+        session.setOwnMessagesOnly(true); // Every connection shares the report
+        try (socket) {
+            socket.setTcpNoDelay(true); // Replies are small and the client is waiting for each one
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            QuickChatProtocol.Frame request;
+            while ((request = QuickChatProtocol.readFrame(in)) != null) {
+                requestCount.increment();
+                List<String> command = QuickChatProtocol.toCommand(request);
+                String result = command == null ? "ERROR unknown request code " + request.getCode() : session.execute(command);
+                QuickChatProtocol.writeFrame(out, QuickChatCli.isError(result) ? QuickChatProtocol.ERROR : QuickChatProtocol.OK, result);
+                out.flush();
+                if (session.isQuitRequested()) {
+                    break;
+                }
+            }
+        } catch (SocketException e) {
+            // The client hung up in the middle of a frame, or we are shutting down
+        } catch (IOException e) {
+            System.err.println("Dropped connection from " + source + ": " + e.getMessage());
+        } finally {
+            login.logout();
+            openSockets.remove(socket);
+        }
+    }
+
+    public long getAcceptedCount() { return acceptedCount.sum(); }
+    public long getRequestCount() { return requestCount.sum(); }
+    public int getOpenConnectionCount() { return openSockets.size(); }
+    public SendPipeline getSendPipeline() { return sendPipeline; }
+
+    /**
+     * The rough message counts shared by every connection, attached to the report the first time anyone asks.
+     */
+    public synchronized MessageStatistics getStatistics() {
+        if (statistics == null) {
+            statistics = new MessageStatistics().attachTo(reportManager);
+        }
+        return statistics;
+    }
+
+    /**
+     * Stops listening, hangs up on every client, and lets the messages already in the pipeline finish.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Socket socket : openSockets) {
+            socket.close();
+        }
+        connections.shutdown();
+        sendPipeline.close();
+        if (statistics != null) {
+            statistics.detachFrom(reportManager);
+        }
+        credentialVerifier.shutdown();
+        sessionManager.stop();
+    }
+
+    private static SendPipeline.OverflowPolicy parseOverflow(String name) {
+        switch (name) {
+            case "block":
+                return SendPipeline.OverflowPolicy.BLOCK;
+            case "drop":
+                return SendPipeline.OverflowPolicy.DROP_NEWEST;
+            case "fail":
+                return SendPipeline.OverflowPolicy.FAIL_FAST;
+            default:
+                throw new IllegalArgumentException("Unknown overflow policy " + name);
+        }
+    }
+
+    /**
+     * A throttle that never says no, for load tests.
+     */
+    public static LoginThrottle unlimitedThrottle() {
+        return new LoginThrottle(Integer.MAX_VALUE, 1e6, Integer.MAX_VALUE, 1e6,
+                LoginThrottle.DEFAULT_STRIPES, LoginThrottle.DEFAULT_ENTRIES_PER_STRIPE, System::nanoTime);
+    }
+
+    /**
+     * Runs the server from FuniweNgobeniApp's arguments until the process is stopped.
+     * Returns 1 if it couldn't start.
+     */
+    public static int launch(String[] args) {
+        int port = DEFAULT_PORT;
+        // Only this computer by default: logins and messages cross the connection as plain text
+        String bind = InetAddress.getLoopbackAddress().getHostAddress();
+        Path dataDirectory = Path.of("quickchat-data");
+        Path messageDirectory = Path.of(".");
+        boolean inMemory = false;
+        int hashIterations = PasswordHasher.DEFAULT_ITERATIONS;
+        boolean throttleLogins = true;
+        int replicatePort = -1;
+        // Anyone who can reach the replication port gets every message, so this stays local unless asked
+        String replicateBind = InetAddress.getLoopbackAddress().getHostAddress();
+        int sendQueue = SendPipeline.DEFAULT_QUEUE_CAPACITY;
+        int sendBatch = SendPipeline.DEFAULT_BATCH_SIZE;
+        SendPipeline.OverflowPolicy overflow = SendPipeline.OverflowPolicy.BLOCK;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--server":
+                        break;
+                    case "--no-login-throttle":
+                        throttleLogins = false;
+                        break;
+                    case "--port":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "--bind":
+                        bind = args[++i];
+                        break;
+                    case "--data":
+                        dataDirectory = Path.of(args[++i]);
+                        break;
+                    case "--messages":
+                        messageDirectory = Path.of(args[++i]);
+                        break;
+                    case "--in-memory":
+                        inMemory = true;
+                        break;
+                    case "--hash-iterations":
+                        hashIterations = Integer.parseInt(args[++i]);
+                        break;
+                    case "--replicate-port":
+                        replicatePort = Integer.parseInt(args[++i]);
+                        break;
+                    case "--replicate-bind":
+                        replicateBind = args[++i];
+                        break;
+                    case "--send-queue":
+                        sendQueue = Integer.parseInt(args[++i]);
+                        break;
+                    case "--send-batch":
+                        sendBatch = Integer.parseInt(args[++i]);
+                        break;
+                    case "--overflow":
+                        overflow = parseOverflow(args[++i]);
+                        break;
+                    default:
+                        System.err.println("Unknown option " + args[i]);
+                        return 1;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Missing or bad value for " + args[args.length - 1]);
+            return 1;
+        }
+
+        try {
+            PersistentUserStore store = inMemory ? null : PersistentUserStore.open(dataDirectory);
+            Registration registration = new Registration(new UserDirectory(store), new PasswordHasher(hashIterations));
+            Report report = new Report();
+            MessageJsonStore jsonStore = new MessageJsonStore(messageDirectory);
+            QuickChatServer server = new QuickChatServer(registration, report, jsonStore,
+                    throttleLogins ? new LoginThrottle() : unlimitedThrottle(),
+                    new SendPipeline(report, jsonStore, MessageBroker.getDefault(), sendQueue, sendBatch, overflow));
+            server.start(InetAddress.getByName(bind), port);
+            ReplicationPrimary primary = replicatePort < 0 ? null : new ReplicationPrimary(report);
+            if (primary != null) {
+                primary.start(InetAddress.getByName(replicateBind), replicatePort);
+                System.err.println("# Followers can replicate from " + replicateBind + ":" + primary.getPort());
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                    if (primary != null) {
+                        primary.close();
+                    }
+                    if (store != null) {
+                        store.close();
+                    }
+                } catch (IOException e) {
+                    System.err.println("Could not shut down cleanly: " + e.getMessage());
+                }
+            }));
+            System.err.println("# QuickChat server listening on " + bind + ":" + server.getPort()
+                    + ", ready in " + StartupClock.millisSinceJvmStart() + " ms");
+            new CountDownLatch(1).await(); // Until Ctrl+C
+            return 0;
+        } catch (IOException e) {
+            System.err.println("QuickChat server could not start: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package st10485573;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps every recipient in sorted order with how many messages they have, so
+ * search-as-you-type can find the recipients starting with what was typed
+ * without going through every message.
+ *
+ * Cell numbers are kept in the +27XXXXXXXXX form, so "083", "+2783" and
+ * "0027 83" all find the same numbers. Anything that isn't a cell number is
+ * kept as it was typed.
+ *
+ * A lookup walks straight to the first match in the sorted map (O(log n) plus
+ * the length of the prefix) and then reads only the matches it returns.
+ * Report keeps one up to date as messages are added and deleted; it is not
+ * thread-safe on its own.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class RecipientIndex {
+
+    /**
+     * One recipient found by a prefix search, and how many messages they have.
+     */
+    public static final class Match {
+        private final String recipient;
+        private final int messageCount;
+
+        public Match(String recipient, int messageCount) {
+            this.recipient = recipient;
+            this.messageCount = messageCount;
+        }
+
+        public String getRecipient() { return recipient; }
+        public int getMessageCount() { return messageCount; }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Match && ((Match) other).recipient.equals(recipient)
+                    && ((Match) other).messageCount == messageCount;
+        }
+
+        @Override
+        public int hashCode() {
+            return recipient.hashCode() * 31 + messageCount;
+        }
+
+        @Override
+        public String toString() {
+            return recipient + " (" + messageCount + (messageCount == 1 ? " message)" : " messages)");
+        }
+    }
+
+    // Recipient -> how many Sent and Stored messages they have. Sorted, so a prefix is one range of keys.
+    private final TreeMap<String, Integer> counts = new TreeMap<>();
+
+    public void add(String recipient, long recipientKey) {
+        counts.merge(keyFor(recipient, recipientKey), 1, Integer::sum);
+    }
+
+    public void remove(String recipient, long recipientKey) {
+        // Returning null from merge takes the recipient out once their last message is gone
+        counts.merge(keyFor(recipient, recipientKey), -1, (count, minusOne) -> count + minusOne == 0 ? null : count + minusOne);
+    }
+
+    /**
+     * How many different recipients there are.
+     */
+    public int size() {
+        return counts.size();
+    }
+
+    /**
+     * Returns up to limit recipients starting with the prefix, in number order.
+     * A blank prefix matches nothing, so an empty search box shows no suggestions.
+     */
+    public List<Match> findByPrefix(String prefix, int limit) {
+        List<Match> matches = new ArrayList<>();
+        String normalized = normalizePrefix(prefix);
+        if (normalized.isEmpty() || limit <= 0) {
+            return matches;
+        }
+        // Every key starting with the prefix sorts between the prefix itself and prefix + the highest char
+        for (Map.Entry<String, Integer> entry : counts.subMap(normalized, true, normalized + Character.MAX_VALUE, false).entrySet()) {
+            matches.add(new Match(entry.getKey(), entry.getValue()));
+            if (matches.size() == limit) {
+                break;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Turns the start of a cell number into the start of its +27XXXXXXXXX form:
+     * "083" becomes "+2783", "0027 8" becomes "+278" and "27" becomes "+27".
+     * Text that isn't digits (with spaces, dashes or brackets) is only trimmed.
+     */
+    public static String normalizePrefix(String typed) {
+        if (typed == null) return "";
+        String text = typed.trim();
+        boolean plus = text.startsWith("+");
+        StringBuilder digits = new StringBuilder();
+        for (int i = plus ? 1 : 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (c != ' ' && c != '-' && c != '(' && c != ')') {
+                return text; // Not a number, e.g. a name from an old JSON file
+            }
+        }
+        if (digits.length() == 0) {
+            return text;
+        }
+        if (plus) {
+            return "+" + digits;
+        }
+        if (digits.length() >= 2 && digits.charAt(0) == '0' && digits.charAt(1) == '0') {
+            return "+" + digits.substring(2); // 0027...
+        }
+        if (digits.charAt(0) == '0') {
+            return "+27" + digits.substring(1); // 083...
+        }
+        return "+" + digits; // 2783...
+    }
+
+    // The same form normalizePrefix gives, so a full number typed any way finds itself
+    private static String keyFor(String recipient, long recipientKey) {
+        if (recipientKey != PhoneNumber.NONE) {
+            return PhoneNumber.format(recipientKey);
+        }
+        return recipient == null ? "" : recipient.trim();
+    }
+}
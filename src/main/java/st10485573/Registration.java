@@ -28,132 +28,92 @@ package st10485573;
  * @author Funiwe Ngobeni
  */
 
-import java.util.regex.Pattern;
+import java.util.EnumSet;
 
 public class Registration {
-    private String storedUserName, storedPassword, storedCellPhoneNumber, storedFirstName, storedLastName;
-
-    // Registers a user by checking all fields first, then setting them if valid
-    public String registerUser(String newUserName, String newPassword, String newCellPhoneNumber, String newFirstName, String newLastName) {
-        String feedback = ""; // Build our feedback string here
-        boolean isValid = true; // Assume success until proven otherwise
-
-        // Check each field and build feedback
-        if (checkUserName(newUserName)) {
-            feedback += "Username successfully captured\n";
-        } else {
-            feedback += "Username is not correctly formatted, please ensure that your username contains an underscore and is no more than five characters in length.\n";
-            isValid = false;
-        }
-
-        if (checkPasswordComplexity(newPassword)) {
-            feedback += "Password successfully captured\n";
-        } else {
-            feedback += "Password is not correctly formatted, please ensure that the password contains at least eight characters, a capital letter, a number, and a special character.\n";
-            isValid = false;
-        }
-
-        if (checkCellPhoneNumber(newCellPhoneNumber)) {
-            feedback += "Cellphone number successfully captured\n";
-        } else {
-            feedback += "Cellphone number is incorrectly formatted or does not contain an international code, please correct the number and try again.\n";
-            isValid = false;
-        }
-
-        if (isNameValid(newFirstName)) { // Creative: new helper for names
-            feedback += "First name successfully captured\n";
-        } else {
-            feedback += "First name is invalid, please ensure it is not empty.\n";
-            isValid = false;
-        }
-
-        if (isNameValid(newLastName)) {
-            feedback += "Last name successfully captured\n";
-        } else {
-            feedback += "Last name is invalid, please ensure it is not empty.\n";
-            isValid = false;
-        }
-
-        // If all checks passed, set the values
-        if (isValid) {
-            setUserName(newUserName);
-            setPassword(newPassword);
-            setCellPhoneNumber(newCellPhoneNumber);
-            setFirstName(newFirstName);
-            setLastName(newLastName);
-            feedback += "Registration successful";
-        } else {
-            feedback += "Registration aborted";
-        }
-
-        return feedback;
-    }
-
-    // Getter methods - no changes needed
-    public String getUserName() {
-        return storedUserName;
+    // Every registered user lives in here, not just the last one
+    private final UserDirectory userDirectory;
+    // Passwords are hashed before they are stored
+    private final PasswordHasher passwordHasher;
+    // The most recent successful registration, so the GUI can greet them
+    private volatile UserAccount lastRegistered;
+
+    public Registration() {
+        this(new UserDirectory());
     }
 
-    public String getPassword() {
-        return storedPassword;
+    // Lets several Registration objects (or the bulk importer) share one set of users
+    public Registration(UserDirectory userDirectory) {
+        this(userDirectory, new PasswordHasher());
     }
 
-    public String getCellPhoneNumber() {
-        return storedCellPhoneNumber;
+    // Lets callers pick the hashing cost, e.g. a cheaper one for tests
+    public Registration(UserDirectory userDirectory, PasswordHasher passwordHasher) {
+        this.userDirectory = userDirectory;
+        this.passwordHasher = passwordHasher;
     }
 
-    public String getFirstName() {
-        return storedFirstName;
+    // Registers a user and returns the feedback text, kept for callers that just show it
+    public String registerUser(String newUserName, String newPassword, String newCellPhoneNumber, String newFirstName, String newLastName) {
+        return register(newUserName, newPassword, newCellPhoneNumber, newFirstName, newLastName).getFeedback();
     }
 
-    public String getLastName() {
-        return storedLastName;
-    }
+    // Registers a user by checking all fields first, then adding them to the directory if valid.
+    // The result only turns into text if someone calls getFeedback() on it.
+    public RegistrationResult register(String newUserName, String newPassword, String newCellPhoneNumber, String newFirstName, String newLastName) {
+        // Check every field in one go; each bit that is set is a rule that failed
+        int failedBits = RegistrationValidator.validate(newUserName, newPassword, newCellPhoneNumber, newFirstName, newLastName);
+        if (failedBits != 0) {
+            return RegistrationResult.of(RegistrationRule.fromMask(failedBits));
+        }
 
-    // Setter methods - just store the values, no validation here
-    public boolean setUserName(String userName) {
-        storedUserName = userName;
-        return true; // Always true since validation is done earlier
-    }
+        // Skip the slow hash if we can already see the username is taken
+        if (userDirectory.find(newUserName) != null) {
+            return RegistrationResult.of(EnumSet.of(RegistrationRule.USERNAME_TAKEN));
+        }
 
-    public boolean setPassword(String password) {
-        storedPassword = password;
-        return true;
+        // All the fields are fine, so try to add the user. Someone else may already have the name or number.
+        String passwordHash = passwordHasher.hash(newPassword);
+        UserAccount account = new UserAccount(newUserName, passwordHash, newCellPhoneNumber, newFirstName, newLastName);
+        switch (userDirectory.register(account)) {
+            case ADDED:
+                lastRegistered = account;
+                return RegistrationResult.SUCCESS;
+            case USERNAME_TAKEN:
+                return RegistrationResult.of(EnumSet.of(RegistrationRule.USERNAME_TAKEN));
+            case CELL_NUMBER_TAKEN:
+            default:
+                return RegistrationResult.of(EnumSet.of(RegistrationRule.CELL_PHONE_TAKEN));
+        }
     }
 
-    public boolean setCellPhoneNumber(String cellPhoneNumber) {
-        storedCellPhoneNumber = cellPhoneNumber;
-        return true;
+    public UserDirectory getUserDirectory() {
+        return userDirectory;
     }
 
-    public boolean setFirstName(String firstName) {
-        storedFirstName = firstName;
-        return true;
+    public PasswordHasher getPasswordHasher() {
+        return passwordHasher;
     }
 
-    public boolean setLastName(String lastName) {
-        storedLastName = lastName;
-        return true;
+    // Getter methods - these describe the most recently registered user
+    public String getUserName() {
+        return lastRegistered == null ? null : lastRegistered.getUserName();
     }
 
-    // Checker methods - moved validation logic here
-    private boolean checkUserName(String userName) {
-        return userName != null && userName.length() <= 5 && userName.contains("_");
+    // Only the hash is kept, never the password itself
+    public String getPasswordHash() {
+        return lastRegistered == null ? null : lastRegistered.getPasswordHash();
     }
 
-    private boolean checkPasswordComplexity(String password) {
-        if (password == null || password.length() < 8) return false;
-        return password.matches(".*[A-Z].*") && // Has capital
-               password.matches(".*[0-9].*") && // Has digit
-               password.matches(".*[!@#$%^&*()].*"); // Has special char
+    public String getCellPhoneNumber() {
+        return lastRegistered == null ? null : lastRegistered.getCellPhoneNumber();
     }
 
-    private boolean checkCellPhoneNumber(String cellPhoneNumber) {
-        return cellPhoneNumber != null && Pattern.matches("^\\+27[0-9]{9}$", cellPhoneNumber);
+    public String getFirstName() {
+        return lastRegistered == null ? null : lastRegistered.getFirstName();
     }
 
-    // Creative twist: a helper method for both first and last name validation
-    private boolean isNameValid(String name) {
-        return name != null && !name.trim().isEmpty() && name.matches("^[a-zA-Z]+$");
+    public String getLastName() {
+        return lastRegistered == null ? null : lastRegistered.getLastName();
     }
 }
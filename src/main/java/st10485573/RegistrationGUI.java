@@ -23,6 +23,7 @@
  */
 package st10485573;
 
+import java.util.function.Supplier;
 import javax.swing.JOptionPane;
 
 /**
@@ -33,16 +34,25 @@ public class RegistrationGUI extends javax.swing.JFrame
 {
     // Gotta have these to talk to the validation classes
     private Registration registration;
-    private Login login;
+    // Makes the Login the first time someone registers, so it isn't built before we need it
+    private Supplier<Login> loginFactory;
 
     /**
      * Creates new form RegistrationGUI with our core objects
      */
     public RegistrationGUI(Registration reg, Login login) 
     {
-        this.registration = reg; // Hook up registration
-        this.login = login;      // Hook up login for later
-        initComponents();        // Build the form
+        this(reg, () -> login);
+    }
+
+    /**
+     * Creates the form with a factory that makes the Login only when registration succeeds.
+     */
+    public RegistrationGUI(Registration reg, Supplier<Login> loginFactory) 
+    {
+        this.registration = reg;          // Hook up registration
+        this.loginFactory = loginFactory; // Hook up login for later
+        initComponents();                 // Build the form
     }
 
     /**
@@ -237,7 +247,7 @@ public class RegistrationGUI extends javax.swing.JFrame
         gridBagConstraints.anchor = java.awt.GridBagConstraints.NORTHWEST;
         jPanel2.add(jLabel1, gridBagConstraints);
 
-        logo.setIcon(new javax.swing.ImageIcon(getClass().getResource("/logo.png"))); // NOI18N
+        logo.setIcon(AppImages.getLogo());
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 1;
         gridBagConstraints.gridy = 0;
@@ -287,20 +297,33 @@ public class RegistrationGUI extends javax.swing.JFrame
                 String firstName = firstnameField.getText();
                 String lastName = lastnameField.getText();
 
-                // Try registering the user
-                String result = registration.registerUser(username, password, cellPhone, firstName, lastName);
+                // Registering hashes the password and saves the user to disk, so it runs in the background.
+                // The button is switched off until we have an answer.
+                registerButton.setEnabled(false);
+                BackgroundTasks.run(() -> registration.register(username, password, cellPhone, firstName, lastName),
+                        this::showRegistrationResult,
+                        error -> {
+                            registerButton.setEnabled(true);
+                            JOptionPane.showMessageDialog(this, "Could not register right now: " + error.getMessage(),
+                                    "Registration", JOptionPane.ERROR_MESSAGE);
+                        });
+    }//GEN-LAST:event_registerButtonActionPerformed
 
-                // Show the feedback in a popup
-                JOptionPane.showMessageDialog(RegistrationGUI.this, result);
+    // Runs back on the Swing thread once the background registration is done
+    private void showRegistrationResult(RegistrationResult result) {
+        registerButton.setEnabled(true);
 
-                // If it worked, move to login
-                if (result.contains("Registration successful")) {
-                    LoginGUI loginGUI = new LoginGUI(login);
-                    loginGUI.setVisible(true);
-                    loginGUI.setLocationRelativeTo(null); // Center it on screen
-                    dispose(); // Close this form
-                }
-    }//GEN-LAST:event_registerButtonActionPerformed
+        // Show the feedback in a popup
+        JOptionPane.showMessageDialog(this, result.getFeedback());
+
+        // If it worked, move to login
+        if (result.isSuccessful()) {
+            LoginGUI loginGUI = new LoginGUI(loginFactory.get());
+            loginGUI.setVisible(true);
+            loginGUI.setLocationRelativeTo(null); // Center it on screen
+            dispose(); // Close this form
+        }
+    }
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JTextField cellphoneField;
@@ -0,0 +1,69 @@
+package st10485573;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The outcome of a registration: whether it worked and which rules failed.
+ * The feedback text is only built when someone asks for it, so callers that
+ * just need to know if it worked (like the bulk importer) never build Strings.
+ *
+ * @author Funiwe Ngobeni
+ */
+public final class RegistrationResult {
+
+    // Every successful registration looks the same, so they can all share this one
+    public static final RegistrationResult SUCCESS = new RegistrationResult(EnumSet.noneOf(RegistrationRule.class));
+
+    private final Set<RegistrationRule> failedRules;
+    // Built the first time getFeedback() is called
+    private String feedback;
+
+    private RegistrationResult(EnumSet<RegistrationRule> failedRules) {
+        this.failedRules = Collections.unmodifiableSet(failedRules);
+    }
+
+    /**
+     * Creates a result for the given failed rules, or SUCCESS if none failed.
+     */
+    public static RegistrationResult of(EnumSet<RegistrationRule> failedRules) {
+        return failedRules.isEmpty() ? SUCCESS : new RegistrationResult(failedRules);
+    }
+
+    public boolean isSuccessful() {
+        return failedRules.isEmpty();
+    }
+
+    public Set<RegistrationRule> getFailedRules() {
+        return failedRules;
+    }
+
+    public boolean hasFailed(RegistrationRule rule) {
+        return failedRules.contains(rule);
+    }
+
+    /**
+     * The message shown to the user: one line per field, then the overall result.
+     */
+    public String getFeedback() {
+        if (feedback == null) {
+            StringBuilder text = new StringBuilder(256);
+            for (RegistrationRule rule : RegistrationRule.values()) {
+                if (rule.isFieldRule()) {
+                    text.append(failedRules.contains(rule) ? rule.getFailureMessage() : rule.getSuccessMessage()).append('\n');
+                } else if (failedRules.contains(rule)) {
+                    text.append(rule.getFailureMessage()).append('\n');
+                }
+            }
+            text.append(isSuccessful() ? "Registration successful" : "Registration aborted");
+            feedback = text.toString();
+        }
+        return feedback;
+    }
+
+    @Override
+    public String toString() {
+        return getFeedback();
+    }
+}
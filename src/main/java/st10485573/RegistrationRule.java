@@ -0,0 +1,63 @@
+package st10485573;
+
+import java.util.EnumSet;
+
+/**
+ * The rules a registration has to pass, with the feedback shown for each one.
+ * The first five match the bits returned by RegistrationValidator; the last two
+ * are checked against the users who are already registered.
+ *
+ * @author Funiwe Ngobeni
+ */
+public enum RegistrationRule {
+    USERNAME(RegistrationValidator.USERNAME,
+            "Username successfully captured",
+            "Username is not correctly formatted, please ensure that your username contains an underscore and is no more than five characters in length."),
+    PASSWORD(RegistrationValidator.PASSWORD,
+            "Password successfully captured",
+            "Password is not correctly formatted, please ensure that the password contains at least eight characters, a capital letter, a number, and a special character."),
+    CELL_PHONE(RegistrationValidator.CELL_PHONE,
+            "Cellphone number successfully captured",
+            "Cellphone number is incorrectly formatted or does not contain an international code, please correct the number and try again."),
+    FIRST_NAME(RegistrationValidator.FIRST_NAME,
+            "First name successfully captured",
+            "First name is invalid, please ensure it is not empty."),
+    LAST_NAME(RegistrationValidator.LAST_NAME,
+            "Last name successfully captured",
+            "Last name is invalid, please ensure it is not empty."),
+    USERNAME_TAKEN(0, null,
+            "Username is already taken, please choose another one."),
+    CELL_PHONE_TAKEN(0, null,
+            "Cellphone number is already registered to another user.");
+
+    // The RegistrationValidator bit for this rule, or 0 if the validator doesn't check it
+    private final int validatorBit;
+    private final String successMessage;
+    private final String failureMessage;
+
+    RegistrationRule(int validatorBit, String successMessage, String failureMessage) {
+        this.validatorBit = validatorBit;
+        this.successMessage = successMessage;
+        this.failureMessage = failureMessage;
+    }
+
+    public int getValidatorBit() { return validatorBit; }
+    public String getSuccessMessage() { return successMessage; }
+    public String getFailureMessage() { return failureMessage; }
+
+    // True for the rules that are about a single field's format
+    public boolean isFieldRule() { return validatorBit != 0; }
+
+    /**
+     * Turns a RegistrationValidator bitmask into the matching set of rules.
+     */
+    public static EnumSet<RegistrationRule> fromMask(int failedBits) {
+        EnumSet<RegistrationRule> rules = EnumSet.noneOf(RegistrationRule.class);
+        for (RegistrationRule rule : values()) {
+            if ((failedBits & rule.validatorBit) != 0) {
+                rules.add(rule);
+            }
+        }
+        return rules;
+    }
+}
@@ -0,0 +1,88 @@
+package st10485573;
+
+/**
+ * Checks the registration fields without using regular expressions.
+ * Each field is looked at in a single pass over its characters, and the
+ * result is a bitmask with one bit set for every rule that failed,
+ * so 0 means everything is valid.
+ *
+ * @author Funiwe Ngobeni
+ */
+public final class RegistrationValidator {
+
+    // One bit per rule
+    public static final int USERNAME = 1;
+    public static final int PASSWORD = 1 << 1;
+    public static final int CELL_PHONE = 1 << 2;
+    public static final int FIRST_NAME = 1 << 3;
+    public static final int LAST_NAME = 1 << 4;
+
+    private static final int MAX_USERNAME_LENGTH = 5;
+    private static final int MIN_PASSWORD_LENGTH = 8;
+    private static final String CELL_PREFIX = "+27";
+    private static final int CELL_DIGITS = 9;
+    private static final String SPECIAL_CHARACTERS = "!@#$%^&*()";
+
+    private RegistrationValidator() {
+        // Only static helpers in here
+    }
+
+    /**
+     * Checks all five fields and returns the bits of the rules that failed.
+     */
+    public static int validate(String userName, String password, String cellPhoneNumber, String firstName, String lastName) {
+        int failed = 0;
+        if (!isUserNameValid(userName)) failed |= USERNAME;
+        if (!isPasswordValid(password)) failed |= PASSWORD;
+        if (!isCellPhoneNumberValid(cellPhoneNumber)) failed |= CELL_PHONE;
+        if (!isNameValid(firstName)) failed |= FIRST_NAME;
+        if (!isNameValid(lastName)) failed |= LAST_NAME;
+        return failed;
+    }
+
+    // No more than five characters, and one of them must be an underscore
+    public static boolean isUserNameValid(String userName) {
+        return userName != null && userName.length() <= MAX_USERNAME_LENGTH && userName.indexOf('_') >= 0;
+    }
+
+    // At least eight characters with a capital letter, a digit and a special character
+    public static boolean isPasswordValid(String password) {
+        if (password == null || password.length() < MIN_PASSWORD_LENGTH) return false;
+        boolean hasCapital = false, hasDigit = false, hasSpecial = false;
+        for (int i = 0; i < password.length(); i++) {
+            char c = password.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                hasCapital = true;
+            } else if (c >= '0' && c <= '9') {
+                hasDigit = true;
+            } else if (SPECIAL_CHARACTERS.indexOf(c) >= 0) {
+                hasSpecial = true;
+            }
+        }
+        return hasCapital && hasDigit && hasSpecial;
+    }
+
+    // +27 followed by exactly nine digits
+    public static boolean isCellPhoneNumberValid(String cellPhoneNumber) {
+        if (cellPhoneNumber == null
+                || cellPhoneNumber.length() != CELL_PREFIX.length() + CELL_DIGITS
+                || !cellPhoneNumber.startsWith(CELL_PREFIX)) {
+            return false;
+        }
+        for (int i = CELL_PREFIX.length(); i < cellPhoneNumber.length(); i++) {
+            char c = cellPhoneNumber.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    // Not empty and only the letters a-z or A-Z
+    public static boolean isNameValid(String name) {
+        if (name == null || name.isEmpty()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c < 'a' || c > 'z') && (c < 'A' || c > 'Z')) return false;
+        }
+        return true;
+    }
+}
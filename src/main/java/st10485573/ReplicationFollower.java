@@ -0,0 +1,368 @@
+package st10485573;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A read-only copy of a primary's Report, kept up to date by ReplicationPrimary.
+ *
+ * Every record the primary sends is written to replica.log in the follower's folder,
+ * forced to disk, and applied to an in-memory Report. Only then does the follower
+ * ack it, so an acked change survives the follower crashing. It forces and acks
+ * whenever it has caught up, and every 512 records or 50 ms while it hasn't. When the follower
+ * starts again it replays replica.log (cutting off a half-written last record, if
+ * the crash happened mid-write) and asks the primary for the records after that,
+ * instead of starting over.
+ *
+ * The log starts with the epoch of the primary it came from. If the primary
+ * restarted (new epoch), the old offsets don't line up any more, so the follower
+ * throws its copy away and catches up from offset 0.
+ *
+ * If the connection drops, it keeps trying to reconnect, waiting a little longer
+ * each time (up to MAX_RETRY_MILLIS).
+ *
+ * Start it with: FuniweNgobeniApp --follower --primary host:port [--data dir]
+ *
+ * @author Funiwe Ngobeni
+ */
+public class ReplicationFollower implements Closeable {
+
+    public static final String LOG_FILE = "replica.log";
+    private static final long FIRST_RETRY_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 5_000;
+    // While records keep streaming in, still force the log and ack at least this often
+    private static final int ACK_EVERY_RECORDS = 512;
+    private static final long ACK_EVERY_NANOS = 50_000_000L; // 50 ms
+
+    private final Path logPath;
+    private FileChannel logChannel;
+    private DataOutputStream logOut;
+    private volatile long epoch;
+
+    // Swapped for a fresh one when the primary's epoch changes, so queries always see a whole copy
+    private volatile Report report = new Report();
+    private volatile long appliedOffset;
+    private volatile long lastRecordMillis;
+    private volatile long delayMillis;
+    private volatile long receivedRecords;
+    private final long startNanos = System.nanoTime();
+
+    private Thread syncThread;
+    private volatile Socket socket;
+    private volatile boolean closed;
+
+    /**
+     * Opens (or creates) the follower's folder and replays whatever it already has.
+     */
+    public ReplicationFollower(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        logPath = directory.resolve(LOG_FILE);
+        replay();
+    }
+
+    // Reads replica.log back into the report, and cuts off anything after the last whole record
+    private void replay() throws IOException {
+        long goodLength = 0;
+        if (Files.exists(logPath) && Files.size(logPath) >= Long.BYTES) {
+            byte[] bytes = Files.readAllBytes(logPath);
+            ByteArrayInputStream buffer = new ByteArrayInputStream(bytes);
+            DataInputStream in = new DataInputStream(buffer);
+            epoch = in.readLong();
+            goodLength = Long.BYTES;
+            try {
+                ReplicationRecord record;
+                while ((record = ReplicationRecord.readFrom(in)) != null && record.getOffset() == appliedOffset) {
+                    record.applyTo(report);
+                    appliedOffset++;
+                    lastRecordMillis = record.getTimestampMillis();
+                    goodLength = bytes.length - buffer.available();
+                }
+            } catch (IOException e) {
+                // A half-written record from a crash; everything before it is fine
+            }
+        }
+        logChannel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (goodLength == 0) {
+            startLog(0);
+        } else {
+            logChannel.truncate(goodLength);
+            logChannel.position(goodLength);
+            logOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(logChannel)));
+        }
+    }
+
+    // Empties the log and the report, ready to copy a primary with this epoch from the start
+    private void startLog(long newEpoch) throws IOException {
+        logChannel.truncate(0);
+        logChannel.position(0);
+        logOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(logChannel)));
+        logOut.writeLong(newEpoch);
+        logOut.flush();
+        logChannel.force(false);
+        epoch = newEpoch;
+        report = new Report();
+        appliedOffset = 0;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Starts following the primary in the background. Returns straight away.
+     */
+    public synchronized void connect(String host, int port) {
+        if (syncThread != null) {
+            throw new IllegalStateException("Already following a primary");
+        }
+        syncThread = Thread.ofVirtual().name("replication-follower").start(() -> follow(host, port));
+    }
+
+    private void follow(String host, int port) {
+        long retryMillis = FIRST_RETRY_MILLIS;
+        while (!closed) {
+            try (Socket connection = new Socket(host, port)) {
+                socket = connection;
+                if (closed) {
+                    break; // close() ran before we had a socket for it to close
+                }
+                connection.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+                long primaryEpoch = in.readLong();
+                if (primaryEpoch != epoch) {
+                    startLog(primaryEpoch);
+                }
+                out.writeLong(appliedOffset);
+                out.flush();
+                retryMillis = FIRST_RETRY_MILLIS;
+                receive(in, out);
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Lost the primary at " + host + ":" + port + " (" + e.getMessage()
+                            + "), trying again in " + retryMillis + " ms");
+                }
+            }
+            // Waiting on the monitor rather than sleeping lets close() wake us without an interrupt,
+            // which would close the log's FileChannel if it landed in the middle of a write
+            synchronized (this) {
+                if (closed) {
+                    break;
+                }
+                try {
+                    wait(retryMillis);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+        }
+    }
+
+    private void receive(DataInputStream in, DataOutputStream out) throws IOException {
+        ReplicationRecord record;
+        int unacked = 0;
+        long lastAckNanos = System.nanoTime();
+        while ((record = ReplicationRecord.readFrom(in)) != null) {
+            if (record.getOffset() != appliedOffset) {
+                throw new IOException("Expected offset " + appliedOffset + " but got " + record.getOffset());
+            }
+            // Logged before it is applied, and nothing is acked until the log has been forced to disk
+            record.writeTo(logOut);
+            record.applyTo(report);
+            appliedOffset++;
+            receivedRecords++;
+            lastRecordMillis = record.getTimestampMillis();
+            delayMillis = System.currentTimeMillis() - lastRecordMillis;
+            unacked++;
+            // Once we've caught up with what has arrived, make it durable and tell the primary in one go.
+            // A primary that never pauses would leave nothing acked, so also do it every so many records or ms.
+            if (in.available() == 0 || unacked >= ACK_EVERY_RECORDS || System.nanoTime() - lastAckNanos >= ACK_EVERY_NANOS) {
+                unacked = 0;
+                lastAckNanos = System.nanoTime();
+                logOut.flush();
+                logChannel.force(false);
+                out.writeLong(appliedOffset);
+                out.flush();
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the follower is copying the primary with this epoch and has applied
+     * everything before the given offset. Returns false if that didn't happen in time.
+     */
+    public synchronized boolean awaitOffset(long primaryEpoch, long offset, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (epoch != primaryEpoch || appliedOffset < offset) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return true;
+    }
+
+    // --- Read-only queries, answered from the copy ---
+
+    public int getMessageCount() { return report.getMessageCount(); }
+    public String findMessageById(String id) { return report.findMessageById(id); }
+    public String findMessagesByRecipient(String recipient) { return report.findMessagesByRecipient(recipient); }
+    public List<RecipientIndex.Match> findRecipientsByPrefix(String prefix, int limit) { return report.findRecipientsByPrefix(prefix, limit); }
+    public String getLongestMessage() { return report.getLongestMessage(); }
+    public String displaySentMessageDetails() { return report.displaySentMessageDetails(); }
+    public String generateFullReport() { return report.generateFullReport(); }
+
+    // --- How far behind we are ---
+
+    public long getEpoch() { return epoch; }
+
+    /**
+     * The offset of the next record we need, which is also how many we've applied.
+     */
+    public long getAppliedOffset() { return appliedOffset; }
+
+    /**
+     * How long the last record took from the primary's change to being applied here, in milliseconds.
+     */
+    public long getDelayMillis() { return delayMillis; }
+
+    /**
+     * How long ago (on the primary's clock) the newest change we have was made.
+     * This grows while the primary is quiet, so compare it with the primary's last change.
+     */
+    public long getMillisSinceLastRecord() {
+        return lastRecordMillis == 0 ? -1 : System.currentTimeMillis() - lastRecordMillis;
+    }
+
+    public String getStatistics() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return String.format("applied up to offset %,d, %,d received (%,.0f records/s), last record took %d ms, %d messages",
+                appliedOffset, receivedRecords, receivedRecords / seconds, delayMillis, getMessageCount());
+    }
+
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            thread = syncThread;
+            notifyAll();
+        }
+        Socket connection = socket;
+        if (connection != null) {
+            connection.close();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Only now is nobody else writing to the log
+        logOut.flush();
+        logChannel.force(false);
+        logChannel.close();
+    }
+
+    /**
+     * Runs a follower from FuniweNgobeniApp's arguments, answering read-only commands
+     * typed on standard input until "quit" or the end of input. Returns 1 if it couldn't start.
+     */
+    public static int launch(String[] args) {
+        String primary = null;
+        Path directory = Path.of("quickchat-replica");
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--follower":
+                        break;
+                    case "--primary":
+                        primary = args[++i];
+                        break;
+                    case "--data":
+                        directory = Path.of(args[++i]);
+                        break;
+                    default:
+                        System.err.println("Unknown option " + args[i]);
+                        return 1;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.err.println("Missing value for " + args[args.length - 1]);
+            return 1;
+        }
+        int colon = primary == null ? -1 : primary.lastIndexOf(':');
+        if (colon <= 0) {
+            System.err.println("Give the primary as --primary host:port");
+            return 1;
+        }
+
+        try (ReplicationFollower follower = new ReplicationFollower(directory)) {
+            follower.connect(primary.substring(0, colon), Integer.parseInt(primary.substring(colon + 1)));
+            System.err.println("# Following " + primary + " from offset " + follower.getAppliedOffset()
+                    + ". Commands: count, report, sent, longest, id <id>, recipient <number>, status, quit");
+            BufferedReader input = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = input.readLine()) != null) {
+                String[] words = line.trim().split("\\s+", 2);
+                String argument = words.length > 1 ? words[1] : "";
+                switch (words[0]) {
+                    case "":
+                        break;
+                    case "quit":
+                        return 0;
+                    case "count":
+                        System.out.println(follower.getMessageCount());
+                        break;
+                    case "report":
+                        System.out.println(follower.generateFullReport());
+                        break;
+                    case "sent":
+                        System.out.println(follower.displaySentMessageDetails());
+                        break;
+                    case "longest":
+                        System.out.println(follower.getLongestMessage());
+                        break;
+                    case "id":
+                        System.out.println(follower.findMessageById(argument));
+                        break;
+                    case "recipient":
+                        System.out.println(follower.findMessagesByRecipient(argument));
+                        break;
+                    case "status":
+                        System.out.println(follower.getStatistics());
+                        break;
+                    default:
+                        System.out.println("ERROR unknown command " + words[0]);
+                }
+            }
+            return 0;
+        } catch (NumberFormatException e) {
+            System.err.println("Bad port in " + primary);
+            return 1;
+        } catch (IOException e) {
+            System.err.println("Follower could not start: " + e.getMessage());
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package st10485573;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The primary side of replication. It listens to every change made to a Report,
+ * keeps them as an ordered log, and streams that log over TCP to any
+ * ReplicationFollower that connects, so the follower can keep a warm copy.
+ *
+ * When a follower connects we first send our epoch (a random number picked when
+ * this primary started), then the follower tells us which offset it wants next.
+ * A follower that last saw a different epoch starts again from 0, because our
+ * offsets don't mean the same thing as the old primary's. Followers send back
+ * the offset they have applied, which is how we know how far behind they are.
+ *
+ * The log is kept in memory and starts with the messages the report already had,
+ * so a follower can always catch up from nothing. That means it grows by one record
+ * for every add, delete and status change for as long as the primary runs (about the
+ * size of the message again for each add), and nothing is ever dropped from it.
+ * Restarting the primary starts a new, smaller log; followers see the new epoch and
+ * copy everything again.
+ *
+ * Anyone who can connect gets every message, since followers don't log in, so only
+ * start it on an address that untrusted computers can't reach (QuickChatServer uses
+ * this computer's loopback address unless told otherwise).
+ *
+ * @author Funiwe Ngobeni
+ */
+public class ReplicationPrimary implements Report.ChangeListener, Closeable {
+
+    // How many records we send before flushing, when a follower is catching up
+    private static final int MAX_BATCH = 512;
+
+    private final Report report;
+    private final long epoch = new SecureRandom().nextLong();
+    // Every change so far; a record's offset is its position here. Guarded by itself.
+    private final List<ReplicationRecord> log = new ArrayList<>();
+
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong ackedOffset = new AtomicLong();
+    private final LongAdder sentRecords = new LongAdder();
+    private final long startNanos = System.nanoTime();
+    private ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    /**
+     * Starts logging the report's changes, beginning with the messages it already has.
+     */
+    public ReplicationPrimary(Report report) {
+        this.report = report;
+        // Holding the report's lock means no change can slip in between copying and listening
+        synchronized (report) {
+            report.forEachMessage((seq, id, sender, recipient, payload, hash, status, timestamp) ->
+                    append(ReplicationRecord.ADD, id, sender, recipient, payload, status, Long.toString(timestamp)));
+            report.addChangeListener(this);
+        }
+    }
+
+    // --- Report.ChangeListener: called with the report locked, so records go in the order the changes happened ---
+
+    @Override
+    public void messageAdded(Message msg) {
+        append(ReplicationRecord.ADD, msg.getMessageID(), msg.getMessageSender(), msg.getMessageRecipient(),
+                msg.getMessagePayload(), msg.getMessageStatus(), Long.toString(msg.getTimestampMillis()));
+    }
+
+    @Override
+    public void messageDeleted(String hash) {
+        append(ReplicationRecord.DELETE, hash);
+    }
+
+    @Override
+    public void statusChanged(String id, String status) {
+        append(ReplicationRecord.STATUS, id, status);
+    }
+
+    private void append(byte type, String... fields) {
+        synchronized (log) {
+            log.add(new ReplicationRecord(log.size(), System.currentTimeMillis(), type, fields));
+            log.notifyAll(); // Wake the followers' sender threads
+        }
+    }
+
+    /**
+     * Starts accepting followers. Use port 0 for any free port (see getPort).
+     */
+    public synchronized void start(InetAddress bindAddress, int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(bindAddress, port));
+        ServerSocket listening = serverSocket;
+        connections.execute(() -> {
+            while (!listening.isClosed()) {
+                try {
+                    Socket socket = listening.accept();
+                    connections.execute(() -> serve(socket));
+                } catch (IOException e) {
+                    if (!listening.isClosed()) {
+                        System.err.println("Could not accept a follower: " + e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    public synchronized int getPort() {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    private void serve(Socket socket) {
+        followers.add(socket);
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeLong(epoch);
+            out.flush();
+            long next = in.readLong();
+            if (next < 0 || next > getLatestOffset()) {
+                throw new IOException("Follower asked for offset " + next + " but the log only has " + getLatestOffset());
+            }
+            // Acks come back on their own thread while this one keeps sending
+            connections.execute(() -> readAcks(in));
+
+            List<ReplicationRecord> batch = new ArrayList<>(MAX_BATCH);
+            while (!closed) {
+                batch.clear();
+                synchronized (log) {
+                    while (next >= log.size() && !closed) {
+                        log.wait();
+                    }
+                    batch.addAll(log.subList((int) next, (int) Math.min(log.size(), next + MAX_BATCH)));
+                }
+                for (ReplicationRecord record : batch) {
+                    record.writeTo(out);
+                }
+                out.flush();
+                next += batch.size();
+                sentRecords.add(batch.size());
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Follower " + socket.getRemoteSocketAddress() + " disconnected: " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    private void readAcks(DataInputStream in) {
+        try {
+            while (true) {
+                long applied = in.readLong();
+                ackedOffset.accumulateAndGet(applied, Math::max);
+            }
+        } catch (IOException e) {
+            // The follower went away; serve() notices when it next writes
+        }
+    }
+
+    // --- How replication is doing ---
+
+    public long getEpoch() { return epoch; }
+
+    /**
+     * The offset the next change will get, which is also how many records there are.
+     */
+    public long getLatestOffset() {
+        synchronized (log) {
+            return log.size();
+        }
+    }
+
+    /**
+     * The furthest any follower has told us it has applied.
+     */
+    public long getAckedOffset() { return ackedOffset.get(); }
+
+    /**
+     * How many records the furthest follower still has to apply.
+     */
+    public long getLagRecords() { return Math.max(0, getLatestOffset() - getAckedOffset()); }
+
+    public int getFollowerCount() { return followers.size(); }
+
+    public String getStatistics() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return String.format("%,d records logged, %,d sent (%,.0f records/s), follower acked %,d, lag %,d records, %d follower(s)",
+                getLatestOffset(), sentRecords.sum(), sentRecords.sum() / seconds, getAckedOffset(), getLagRecords(), getFollowerCount());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        report.removeChangeListener(this);
+        synchronized (log) {
+            log.notifyAll();
+        }
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Socket socket : followers) {
+            socket.close();
+        }
+        connections.shutdown();
+    }
+}
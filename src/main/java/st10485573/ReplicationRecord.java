@@ -0,0 +1,99 @@
+package st10485573;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * One change to a Report, as it travels from the primary to a follower and sits in the follower's log.
+ *
+ * On the wire (and on disk) it is: the offset (8 bytes), the primary's clock when
+ * it happened (8 bytes), the type (1 byte), then its text fields written with
+ * writeUTF. The offset is the record's position in the primary's log, starting at 0,
+ * so a follower that has applied n records asks for offset n next.
+ *
+ * @author Funiwe Ngobeni
+ */
+public final class ReplicationRecord {
+
+    // A Sent or Stored message was added: id, sender, recipient, payload, status, timestamp (as text)
+    public static final byte ADD = 1;
+    // A message was deleted: hash
+    public static final byte DELETE = 2;
+    // A message changed between Sent and Stored: id, status
+    public static final byte STATUS = 3;
+
+    private final long offset;
+    private final long timestampMillis;
+    private final byte type;
+    private final String[] fields;
+
+    public ReplicationRecord(long offset, long timestampMillis, byte type, String... fields) {
+        this.offset = offset;
+        this.timestampMillis = timestampMillis;
+        this.type = type;
+        this.fields = fields;
+    }
+
+    public long getOffset() { return offset; }
+    public long getTimestampMillis() { return timestampMillis; }
+    public byte getType() { return type; }
+
+    /**
+     * Makes the same change to the follower's report.
+     */
+    public void applyTo(Report report) {
+        switch (type) {
+            case ADD:
+                report.addMessage(new Message(fields[0], fields[1], fields[2], fields[3], fields[4], Long.parseLong(fields[5])));
+                break;
+            case DELETE:
+                report.deleteMessageByHash(fields[0]);
+                break;
+            case STATUS:
+                report.updateMessageStatus(fields[0], fields[1]);
+                break;
+            default:
+                throw new IllegalStateException("Unknown replication record type " + type);
+        }
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(offset);
+        out.writeLong(timestampMillis);
+        out.writeByte(type);
+        for (String field : fields) {
+            out.writeUTF(field == null ? "" : field);
+        }
+    }
+
+    /**
+     * Reads the next record, or returns null if the stream ends cleanly before one starts.
+     * A stream that ends part of the way through a record throws EOFException.
+     */
+    public static ReplicationRecord readFrom(DataInputStream in) throws IOException {
+        long offset;
+        try {
+            offset = in.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+        long timestampMillis = in.readLong();
+        byte type = in.readByte();
+        String[] fields = new String[fieldCount(type)];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = in.readUTF();
+        }
+        return new ReplicationRecord(offset, timestampMillis, type, fields);
+    }
+
+    private static int fieldCount(byte type) throws IOException {
+        switch (type) {
+            case ADD: return 6;
+            case DELETE: return 1;
+            case STATUS: return 2;
+            default: throw new IOException("Unknown replication record type " + type);
+        }
+    }
+}
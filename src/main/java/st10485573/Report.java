@@ -1,15 +1,33 @@
 package st10485573;
 
-import java.io.FileReader;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Handles all the reporting and data management for messages.
  * This class uses arrays to store message details and provides
  * methods to search, delete, and report on them.
  *
+ * Every method is synchronized, because the GUI builds reports on a background
+ * thread (see BackgroundTasks) while new messages may be coming in. The methods
+ * that go through every message also check that they are not on the Swing thread.
+ *
  * @author Funiwe Ngobeni
  */
 public class Report {
@@ -18,30 +36,156 @@ public class Report {
     // These are our parallel arrays to hold all the message data.
     private final ArrayList<String> allIDs = new ArrayList<>();
     private final ArrayList<String> allSenders = new ArrayList<>();
-    private final ArrayList<String> allRecipients = new ArrayList<>();
     private final ArrayList<String> allPayloads = new ArrayList<>();
     private final ArrayList<String> allHashes = new ArrayList<>();
-    private final ArrayList<String> allStatuses = new ArrayList<>(); // "Sent", "Stored", "Disregarded"
+    private final ArrayList<String> allStatuses = new ArrayList<>(); // "Sent" or "Stored"
+    // The recipient packed into a long (see PhoneNumber), so searching compares numbers, not Strings.
+    // Recipients that are not valid cell numbers get PhoneNumber.NONE.
+    private final LongList allRecipientKeys = new LongList();
+    // The recipient as it was typed, by sequence number, but only when the packed number written
+    // out (+27...) isn't the same text, e.g. "0838884567" or a name. Most rows need no String at all.
+    private final HashMap<Long, String> typedRecipients = new HashMap<>();
+    // Reads like the other columns, but builds each recipient from the two above
+    private final List<String> allRecipients = new AbstractList<>() {
+        @Override
+        public String get(int row) {
+            String typed = typedRecipients.get(allSequences.get(row));
+            if (typed != null) {
+                return typed;
+            }
+            long key = allRecipientKeys.get(row);
+            return key == PhoneNumber.NONE ? null : PhoneNumber.format(key);
+        }
+
+        @Override
+        public int size() {
+            return allSequences.size();
+        }
+    };
+    // Every recipient in sorted order with their message count, for search-as-you-type
+    private final RecipientIndex recipientIndex = new RecipientIndex();
+    // The order each message was added in. A PartitionedReport shares one counter between
+    // its partitions, so these numbers put all their messages back in one order.
+    private final LongList allSequences = new LongList();
+    private final AtomicLong sequence;
+    // When each message was written (see Message.getTimestampMillis)
+    private final LongList allTimestamps = new LongList();
+    // The messages in each minute, by the minute's start time. Each bucket holds its messages'
+    // sequence numbers in the order they were added; allSequences is sorted, so a binary search
+    // turns one into its row. Messages usually arrive in time order, so a bucket's rows are
+    // normally one unbroken range, but a late one (e.g. loaded from a file) is fine too.
+    private final TreeMap<Long, LongList> timeBuckets = new TreeMap<>();
+    // How many kept messages are Sent and how many Stored, kept up to date as they change
+    private int sentCount;
+    private int storedCount;
+    // Told about every change, e.g. to replicate it (see ReplicationPrimary)
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Hears about every change to the Sent and Stored messages, in the order they happen.
+     * The methods are called while the report is locked, so they must be quick and must not call back into it.
+     */
+    public interface ChangeListener {
+        void messageAdded(Message msg);
+
+        void messageDeleted(String hash);
+
+        default void statusChanged(String id, String status) {
+        }
+    }
+
+    // Disregarded and New drafts only live here for a short while so they can be recovered.
+    // They never go into the lists above, so the reports don't have to skip over them.
+    private final MessageRingBuffer recentDrafts;
+
+    // How many drafts we keep when nobody asks for a different size
+    public static final int DEFAULT_DRAFT_CAPACITY = 50;
+    // How much time each bucket of the time index covers
+    public static final long TIME_BUCKET_MILLIS = 60_000;
+
+    /**
+     * Creates a report manager with the default draft buffer size.
+     */
+    public Report() {
+        this(DEFAULT_DRAFT_CAPACITY);
+    }
+
+    /**
+     * Creates a report manager that keeps up to draftCapacity Disregarded or New messages.
+     */
+    public Report(int draftCapacity) {
+        this(draftCapacity, new AtomicLong());
+    }
+
+    /**
+     * Creates a report manager that numbers its messages from a counter it may share with other reports.
+     */
+    public Report(int draftCapacity, AtomicLong sequence) {
+        this.recentDrafts = new MessageRingBuffer(draftCapacity);
+        this.sequence = sequence;
+    }
 
     /**
      * Adds a message's details to all our lists for tracking.
+     * Disregarded and New messages go to the draft buffer instead.
      */
-    public void addMessage(Message msg) {
+    public synchronized void addMessage(Message msg) {
         // We need to create the hash before adding it
         msg.setMessageHash(msg.createMessageHash());
 
+        if (!"Sent".equals(msg.getMessageStatus()) && !"Stored".equals(msg.getMessageStatus())) {
+            recentDrafts.add(msg);
+            return;
+        }
+
         allIDs.add(msg.getMessageID());
         allSenders.add(msg.getMessageSender());
-        allRecipients.add(msg.getMessageRecipient());
+        allRecipientKeys.add(msg.getRecipientKey());
         allPayloads.add(msg.getMessagePayload());
         allHashes.add(msg.getMessageHash());
         allStatuses.add(msg.getMessageStatus());
+        long seq = sequence.getAndIncrement();
+        allSequences.add(seq);
+        String recipient = msg.getMessageRecipient();
+        if (recipient != null && !recipient.equals(PhoneNumber.format(msg.getRecipientKey()))) {
+            typedRecipients.put(seq, recipient);
+        }
+        allTimestamps.add(msg.getTimestampMillis());
+        timeBuckets.computeIfAbsent(bucketStart(msg.getTimestampMillis(), TIME_BUCKET_MILLIS), start -> new LongList()).add(seq);
+        recipientIndex.add(msg.getMessageRecipient(), msg.getRecipientKey());
+        countStatus(msg.getMessageStatus(), 1);
+        for (ChangeListener listener : listeners) {
+            listener.messageAdded(msg);
+        }
+    }
+
+    /**
+     * Adds several messages while holding the lock once, which is quicker than one at a time
+     * when lots of messages arrive together (see SendPipeline).
+     */
+    public synchronized void addMessages(List<Message> messages) {
+        for (Message msg : messages) {
+            addMessage(msg);
+        }
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public int getChangeListenerCount() {
+        return listeners.size();
     }
 
     /**
      * Shows the sender and recipient for all messages that were successfully sent.
      */
-    public String displaySentMessageDetails() {
+    public synchronized String displaySentMessageDetails() {
+        EdtMonitor.checkOffEdt("Sent message report");
         StringBuilder report = new StringBuilder("--- Sent Message Details ---\n");
         boolean found = false;
         for (int i = 0; i < allStatuses.size(); i++) {
@@ -58,11 +202,34 @@ public class Report {
     }
 
     /**
-     * Finds the longest message payload among all messages.
+     * Returns the Disregarded and New messages still in the draft buffer, oldest first.
+     */
+    public synchronized List<Message> getRecentDrafts() {
+        return recentDrafts.toList();
+    }
+
+    /**
+     * Takes a draft back out of the buffer so it can be sent or stored after all.
+     * Returns null if the draft has already been overwritten.
+     */
+    public synchronized Message recoverDraft(String id) {
+        return recentDrafts.remove(id);
+    }
+
+    /**
+     * How many drafts were dropped because the draft buffer was full.
+     */
+    public synchronized long getOverwrittenDraftCount() {
+        return recentDrafts.getOverwrittenCount();
+    }
+
+    /**
+     * Finds the longest message payload among the Sent and Stored messages.
      * Note: The POE asks for the longest "sent" message, but the expected test output
      * corresponds to the longest message regardless of status. This method matches the test case.
      */
-    public String getLongestMessage() {
+    public synchronized String getLongestMessage() {
+        EdtMonitor.checkOffEdt("Longest message search");
         String longestMessage = null;
         if (allPayloads.isEmpty()) {
             return "No messages to compare.";
@@ -79,7 +246,8 @@ public class Report {
     /**
      * Searches for a message by its unique ID.
      */
-    public String findMessageById(String id) {
+    public synchronized String findMessageById(String id) {
+        EdtMonitor.checkOffEdt("Message ID search");
         int index = allIDs.indexOf(id);
         if (index != -1) {
             return "Message Found!\n" +
@@ -89,14 +257,25 @@ public class Report {
         return "Message with ID [" + id + "] not found.";
     }
 
+    /**
+     * Checks whether a Sent or Stored message with this ID is already in the reports.
+     */
+    public synchronized boolean containsMessageId(String id) {
+        EdtMonitor.checkOffEdt("Message ID check");
+        return allIDs.contains(id);
+    }
+
     /**
      * Finds all messages sent to a specific recipient.
+     * The number is normalized first, so "+27838884567" and "083 888 4567" find the same messages.
      */
-    public String findMessagesByRecipient(String recipient) {
+    public synchronized String findMessagesByRecipient(String recipient) {
+        EdtMonitor.checkOffEdt("Recipient search");
         StringBuilder messages = new StringBuilder("--- Messages for " + recipient + " ---\n");
         boolean found = false;
+        long key = PhoneNumber.pack(recipient);
         for (int i = 0; i < allRecipients.size(); i++) {
-            if (recipient.equals(allRecipients.get(i)) && ("Sent".equals(allStatuses.get(i)) || "Stored".equals(allStatuses.get(i)))) {
+            if (isSameRecipient(i, key, recipient) && ("Sent".equals(allStatuses.get(i)) || "Stored".equals(allStatuses.get(i)))) {
                 messages.append("- ").append(allPayloads.get(i)).append("\n");
                 found = true;
             }
@@ -107,30 +286,146 @@ public class Report {
         return messages.toString();
     }
 
+    /**
+     * Finds up to limit recipients whose number starts with what was typed so far, with their message counts.
+     * This only looks at the matching recipients, not every message, so it is quick enough for every keystroke.
+     */
+    public synchronized List<RecipientIndex.Match> findRecipientsByPrefix(String prefix, int limit) {
+        return recipientIndex.findByPrefix(prefix, limit);
+    }
+
+    // Compares packed numbers when we have one; otherwise it's not a cell number, so fall back to the text
+    private boolean isSameRecipient(int index, long key, String recipient) {
+        return key != PhoneNumber.NONE ? key == allRecipientKeys.get(index) : recipient.equals(allRecipients.get(index));
+    }
+
     /**
      * Deletes a message from all lists using its hash.
      */
-    public String deleteMessageByHash(String hash) {
+    public synchronized String deleteMessageByHash(String hash) {
+        EdtMonitor.checkOffEdt("Delete by hash");
         int index = allHashes.indexOf(hash);
         if (index != -1) {
             String deletedPayload = allPayloads.get(index);
+            recipientIndex.remove(allRecipients.get(index), allRecipientKeys.get(index));
+            countStatus(allStatuses.get(index), -1);
+            removeFromTimeBucket(allTimestamps.get(index), allSequences.get(index));
 
             allIDs.remove(index);
             allSenders.remove(index);
-            allRecipients.remove(index);
+            typedRecipients.remove(allSequences.get(index));
+            allRecipientKeys.remove(index);
             allPayloads.remove(index);
             allHashes.remove(index);
             allStatuses.remove(index);
+            allSequences.remove(index);
+            allTimestamps.remove(index);
+            for (ChangeListener listener : listeners) {
+                listener.messageDeleted(hash);
+            }
 
             return "Message \"" + deletedPayload + "\" successfully deleted.";
         }
         return "Message with hash [" + hash + "] not found for deletion.";
     }
 
+    /**
+     * Changes a kept message between Sent and Stored, e.g. when a stored message is sent later.
+     * Returns false if there is no message with that ID.
+     */
+    public synchronized boolean updateMessageStatus(String id, String status) {
+        if (!"Sent".equals(status) && !"Stored".equals(status)) {
+            throw new IllegalArgumentException("Only Sent and Stored messages are kept in the reports, not " + status);
+        }
+        EdtMonitor.checkOffEdt("Status update");
+        int index = allIDs.indexOf(id);
+        if (index == -1) {
+            return false;
+        }
+        setStatus(index, status);
+        return true;
+    }
+
+    /**
+     * Sends every message this sender has stored, going through the messages once.
+     * Returns the messages that changed (now Sent), oldest first, so they can be delivered and saved.
+     */
+    public synchronized List<Message> sendAllStored(String sender) {
+        return changeStatusForSender(sender, "Stored", "Sent");
+    }
+
+    /**
+     * Moves every message from this sender with status "from" to status "to" in one pass.
+     * Returns the messages that changed, with their new status, oldest first.
+     */
+    public synchronized List<Message> changeStatusForSender(String sender, String from, String to) {
+        if (!"Sent".equals(to) && !"Stored".equals(to)) {
+            throw new IllegalArgumentException("Only Sent and Stored messages are kept in the reports, not " + to);
+        }
+        EdtMonitor.checkOffEdt("Bulk status update");
+        List<Message> changed = new ArrayList<>();
+        if (from.equals(to) || getStatusCount(from) == 0) {
+            return changed; // Nothing to do, and no need to look
+        }
+        for (int i = 0; i < allIDs.size(); i++) {
+            if (from.equals(allStatuses.get(i)) && Objects.equals(sender, allSenders.get(i))) {
+                setStatus(i, to);
+                changed.add(messageAt(i));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * How many kept messages have this status ("Sent" or "Stored"). Doesn't need to look through them.
+     */
+    public synchronized int getStatusCount(String status) {
+        if ("Sent".equals(status)) {
+            return sentCount;
+        }
+        return "Stored".equals(status) ? storedCount : 0;
+    }
+
+    // Changes one row's status, keeping the counts right and telling the listeners
+    private void setStatus(int index, String status) {
+        String old = allStatuses.set(index, status);
+        if (old.equals(status)) {
+            return;
+        }
+        countStatus(old, -1);
+        countStatus(status, 1);
+        for (ChangeListener listener : listeners) {
+            listener.statusChanged(allIDs.get(index), status);
+        }
+    }
+
+    private void countStatus(String status, int change) {
+        if ("Sent".equals(status)) {
+            sentCount += change;
+        } else if ("Stored".equals(status)) {
+            storedCount += change;
+        }
+    }
+
+    /**
+     * Counts per recipient and per sender, the busiest recipients and the average payload
+     * length by status, worked out in parallel on the common ForkJoinPool (see ReportAnalytics).
+     */
+    public ReportAnalytics.Summary summarize() {
+        return summarize(ForkJoinPool.commonPool());
+    }
+
+    public synchronized ReportAnalytics.Summary summarize(ForkJoinPool pool) {
+        EdtMonitor.checkOffEdt("Message analytics");
+        // The lock stops the columns changing while the pool's threads read them
+        return ReportAnalytics.summarize(allSenders, allRecipients, allRecipientKeys, allPayloads, allStatuses, pool);
+    }
+
     /**
      * Generates a full report of all messages that were sent.
      */
-    public String generateFullReport() {
+    public synchronized String generateFullReport() {
+        EdtMonitor.checkOffEdt("Full report");
         StringBuilder report = new StringBuilder("--- Full Message Report ---\n\n");
         boolean found = false;
         for (int i = 0; i < allStatuses.size(); i++) {
@@ -148,27 +443,298 @@ public class Report {
         return report.toString();
     }
 
+    /**
+     * Looks at one Sent or Stored message for forEachMessage.
+     */
+    public interface MessageVisitor {
+        void visit(long sequence, String id, String sender, String recipient, String payload, String hash, String status,
+                long timestampMillis);
+    }
+
+    /**
+     * Shows every Sent and Stored message to the visitor, in the order they were added,
+     * holding the lock the whole time so the visitor sees one consistent set.
+     * PartitionedReport uses this to build its reports from all partitions at once.
+     */
+    public synchronized void forEachMessage(MessageVisitor visitor) {
+        EdtMonitor.checkOffEdt("Visiting every message");
+        for (int i = 0; i < allIDs.size(); i++) {
+            visitor.visit(allSequences.get(i), allIDs.get(i), allSenders.get(i), allRecipients.get(i), allPayloads.get(i),
+                    allHashes.get(i), allStatuses.get(i), allTimestamps.get(i));
+        }
+    }
+
+    /**
+     * A new Report holding only the messages this user sent, or that were sent to their cell number,
+     * in the same order. The server answers a user's queries from this, so one user can't read
+     * another's messages through the shared report.
+     */
+    public synchronized Report copyForUser(String userName, String cellNumber) {
+        EdtMonitor.checkOffEdt("Copying a user's messages");
+        long ownKey = PhoneNumber.pack(cellNumber);
+        Report own = new Report();
+        for (int i = 0; i < allIDs.size(); i++) {
+            boolean toThem = ownKey != PhoneNumber.NONE && allRecipientKeys.get(i) == ownKey;
+            if (toThem || Objects.equals(userName, allSenders.get(i))) {
+                own.addMessage(messageAt(i));
+            }
+        }
+        return own;
+    }
+
+    // --- Questions about time. These only look at the buckets the time range touches. ---
+
+    /**
+     * The messages written from fromMillis (included) up to toMillis (not included), oldest first.
+     */
+    public synchronized List<Message> findMessagesBetween(long fromMillis, long toMillis) {
+        EdtMonitor.checkOffEdt("Time range search");
+        List<Integer> rows = new ArrayList<>();
+        for (Map.Entry<Long, LongList> entry : bucketEntriesBetween(fromMillis, toMillis)) {
+            LongList bucket = entry.getValue();
+            for (int i = 0; i < bucket.size(); i++) {
+                int row = rowOfSequence(bucket.get(i));
+                long time = allTimestamps.get(row);
+                if (time >= fromMillis && time < toMillis) {
+                    rows.add(row);
+                }
+            }
+        }
+        return messagesByTime(rows, true);
+    }
+
+    /**
+     * How many messages were written from fromMillis (included) up to toMillis (not included).
+     * Buckets that are completely inside the range are counted without looking at their messages.
+     */
+    public synchronized int countMessagesBetween(long fromMillis, long toMillis) {
+        int count = 0;
+        for (Map.Entry<Long, LongList> entry : bucketEntriesBetween(fromMillis, toMillis)) {
+            long start = entry.getKey();
+            LongList bucket = entry.getValue();
+            if (start >= fromMillis && start + TIME_BUCKET_MILLIS <= toMillis) {
+                count += bucket.size();
+                continue;
+            }
+            for (int i = 0; i < bucket.size(); i++) {
+                long time = allTimestamps.get(rowOfSequence(bucket.get(i)));
+                if (time >= fromMillis && time < toMillis) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * How many messages there are in each period of bucketMillis (a whole number of minutes, e.g. an hour)
+     * from fromMillis up to toMillis, by the start of each period. Periods with no messages are left out.
+     * Only the buckets' sizes are read, so the ends of the range are rounded out to whole minutes.
+     */
+    public synchronized SortedMap<Long, Integer> countMessagesPer(long bucketMillis, long fromMillis, long toMillis) {
+        if (bucketMillis <= 0 || bucketMillis % TIME_BUCKET_MILLIS != 0) {
+            throw new IllegalArgumentException("Periods must be a whole number of minutes, got " + bucketMillis + " ms");
+        }
+        SortedMap<Long, Integer> counts = new TreeMap<>();
+        for (Map.Entry<Long, LongList> entry : bucketEntriesBetween(fromMillis, toMillis)) {
+            counts.merge(bucketStart(entry.getKey(), bucketMillis), entry.getValue().size(), Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * The newest n messages, newest first. Starts at the newest bucket and stops once it has enough.
+     */
+    public synchronized List<Message> getMostRecent(int n) {
+        EdtMonitor.checkOffEdt("Most recent messages");
+        List<Integer> rows = new ArrayList<>();
+        for (LongList bucket : timeBuckets.descendingMap().values()) {
+            // Every message in an older bucket is older than all of these, so this bucket is the last one we need
+            if (rows.size() >= n) {
+                break;
+            }
+            for (int i = 0; i < bucket.size(); i++) {
+                rows.add(rowOfSequence(bucket.get(i)));
+            }
+        }
+        List<Message> newest = messagesByTime(rows, false);
+        return newest.size() > n ? new ArrayList<>(newest.subList(0, n)) : newest;
+    }
+
+    private Collection<Map.Entry<Long, LongList>> bucketEntriesBetween(long fromMillis, long toMillis) {
+        if (fromMillis >= toMillis) {
+            return new ArrayList<>();
+        }
+        // The bucket holding fromMillis may start before it, so start from that bucket's start
+        return timeBuckets.subMap(bucketStart(fromMillis, TIME_BUCKET_MILLIS), true, toMillis, false).entrySet();
+    }
+
+    // Rows in time order (ties in the order they were added), turned into messages
+    private List<Message> messagesByTime(List<Integer> rows, boolean oldestFirst) {
+        Comparator<Integer> order = Comparator.<Integer>comparingLong(allTimestamps::get).thenComparingLong(allSequences::get);
+        rows.sort(oldestFirst ? order : order.reversed());
+        List<Message> messages = new ArrayList<>(rows.size());
+        for (int row : rows) {
+            messages.add(messageAt(row));
+        }
+        return messages;
+    }
+
+    private void removeFromTimeBucket(long timestampMillis, long seq) {
+        long start = bucketStart(timestampMillis, TIME_BUCKET_MILLIS);
+        LongList bucket = timeBuckets.get(start);
+        bucket.remove(bucket.indexOf(seq));
+        if (bucket.isEmpty()) {
+            timeBuckets.remove(start);
+        }
+    }
+
+    // allSequences only ever grows in order (deleting keeps it sorted), so this is a binary search
+    private int rowOfSequence(long seq) {
+        int row = findRowOfSequence(seq);
+        if (row < 0) {
+            throw new IllegalStateException("The time index has a message that isn't in the report: " + seq);
+        }
+        return row;
+    }
+
+    // The row holding this sequence number, or -1 if that message has been deleted
+    private int findRowOfSequence(long seq) {
+        int low = 0;
+        int high = allSequences.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long found = allSequences.get(middle);
+            if (found < seq) {
+                low = middle + 1;
+            } else if (found > seq) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private static long bucketStart(long timestampMillis, long bucketMillis) {
+        return Math.floorDiv(timestampMillis, bucketMillis) * bucketMillis;
+    }
+
+    private Message messageAt(int row) {
+        return new Message(allIDs.get(row), allSenders.get(row), allRecipients.get(row), allPayloads.get(row),
+                allStatuses.get(row), allTimestamps.get(row));
+    }
+
+    /**
+     * How many Sent and Stored messages there are.
+     */
+    public synchronized int getMessageCount() {
+        return allIDs.size();
+    }
+
+    /**
+     * Finds the messages the message browser should show, in the order it should show them,
+     * as their sequence numbers (these stay the same when other messages are deleted).
+     * A null or blank status or recipient means "any". A null sortBy keeps the order the messages were added in.
+     * The browser then fetches only the rows on screen with getRows.
+     */
+    public synchronized long[] findRows(String status, String recipient, MessageColumn sortBy, boolean ascending) {
+        EdtMonitor.checkOffEdt("Message browser query");
+        boolean anyStatus = status == null || status.isBlank();
+        boolean anyRecipient = recipient == null || recipient.isBlank();
+        long key = anyRecipient ? PhoneNumber.NONE : PhoneNumber.pack(recipient);
+        String recipientText = anyRecipient ? null : recipient.trim();
+
+        int[] rows = new int[allIDs.size()];
+        int count = 0;
+        for (int i = 0; i < allIDs.size(); i++) {
+            if ((anyStatus || status.equals(allStatuses.get(i))) && (anyRecipient || isSameRecipient(i, key, recipientText))) {
+                rows[count++] = i;
+            }
+        }
+        rows = Arrays.copyOf(rows, count);
+        if (sortBy != null) {
+            sortRows(rows, sortBy, ascending);
+        }
+        long[] sequences = new long[count];
+        for (int i = 0; i < count; i++) {
+            sequences[i] = allSequences.get(rows[i]);
+        }
+        return sequences;
+    }
+
+    /**
+     * Returns the values (in MessageColumn order) for the messages sequences[from] up to sequences[to - 1].
+     * A message that has been deleted since findRows comes back as null.
+     */
+    public synchronized String[][] getRows(long[] sequences, int from, int to) {
+        String[][] values = new String[to - from][];
+        for (int i = from; i < to; i++) {
+            int index = findRowOfSequence(sequences[i]);
+            if (index >= 0) {
+                values[i - from] = new String[] {
+                    allIDs.get(index), allSenders.get(index), allRecipients.get(index),
+                    allPayloads.get(index), allHashes.get(index), allStatuses.get(index),
+                    TIME_FORMAT.format(Instant.ofEpochMilli(allTimestamps.get(index)))
+                };
+            }
+        }
+        return values;
+    }
+
+    // How the browser shows a message's time, in this computer's time zone
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    // Messages loaded from JSON files might be missing a field
+    private static final Comparator<String> TEXT_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    // Sorts the row numbers by a column. The sort is stable, so equal rows keep the order they were added in.
+    private void sortRows(int[] rows, MessageColumn sortBy, boolean ascending) {
+        Comparator<Integer> order;
+        if (sortBy == MessageColumn.TIME) {
+            // Oldest first, and messages from the same millisecond in the order they were added
+            order = Comparator.<Integer>comparingLong(allTimestamps::get).thenComparingLong(allSequences::get);
+        } else if (sortBy == MessageColumn.RECIPIENT) {
+            // Packed numbers first, so "+27838884567" and "0838884567" sort together
+            order = Comparator.<Integer>comparingLong(allRecipientKeys::get).thenComparing(allRecipients::get, TEXT_ORDER);
+        } else {
+            List<String> column = columnFor(sortBy);
+            order = Comparator.comparing(column::get, TEXT_ORDER);
+        }
+        if (!ascending) {
+            order = order.reversed();
+        }
+        Integer[] boxed = new Integer[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            boxed[i] = rows[i];
+        }
+        Arrays.sort(boxed, order);
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = boxed[i];
+        }
+    }
+
+    private List<String> columnFor(MessageColumn column) {
+        switch (column) {
+            case ID: return allIDs;
+            case SENDER: return allSenders;
+            case RECIPIENT: return allRecipients;
+            case MESSAGE: return allPayloads;
+            case HASH: return allHashes;
+            default: return allStatuses;
+        }
+    }
+
     /**
      * This method reads a JSON file and adds it to our lists.
      * Reference: This method was generated with assistance from an AI tool (ChatGPT).
+     * The file is read before taking the lock, so other threads can use the report meanwhile;
+     * only addMessage holds it.
      */
     public String readStoredMessageFromJSON(String fileName) {
-        JSONParser parser = new JSONParser();
-        try (FileReader reader = new FileReader(fileName)) {
-            Object obj = parser.parse(reader);
-            JSONObject jsonObject = (JSONObject) obj;
-
-            String id = (String) jsonObject.get("MESSAGE_ID");
-            String sender = (String) jsonObject.get("MESSAGE_SENDER");
-            String recipient = (String) jsonObject.get("MESSAGE_RECIPIENT");
-            String payload = (String) jsonObject.get("MESSAGE_PAYLOAD");
-            String status = (String) jsonObject.get("MESSAGE_STATUS");
-
-            Message msg = new Message(id, sender, recipient, payload, status);
-            addMessage(msg);
-            
+        EdtMonitor.checkOffEdt("Reading " + fileName);
+        try {
+            addMessage(new MessageJsonStore().load(Path.of(fileName)));
             return "Successfully loaded message from " + fileName;
-
         } catch (Exception e) {
             return "Error reading file " + fileName + ": " + e.getMessage();
         }
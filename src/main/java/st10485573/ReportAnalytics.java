@@ -0,0 +1,350 @@
+package st10485573;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts over all of a Report's kept messages: messages per recipient, per sender,
+ * the busiest recipients, and the average payload length for each status.
+ *
+ * It goes through the Report's columns as a fork/join job. The rows are split in
+ * halves until a piece is small enough (LEAF_ROWS), each piece is counted into its
+ * own maps with no locking at all, and the maps are merged on the way back up.
+ * Valid cell numbers are counted by their packed long in a small open-addressing
+ * table, so the inner loop doesn't hash any Strings for them.
+ *
+ * Use Report.summarize() (or PartitionedReport.summarize()) rather than this class directly.
+ *
+ * @author Funiwe Ngobeni
+ */
+public final class ReportAnalytics {
+
+    // Below this many rows a piece is counted in one go instead of being split again
+    static final int LEAF_ROWS = 1 << 16;
+
+    private ReportAnalytics() {
+    }
+
+    /**
+     * Counts the given columns. The caller must stop them changing until this returns
+     * (Report does it by holding its lock).
+     */
+    static Summary summarize(List<String> senders, List<String> recipients, LongList recipientKeys,
+            List<String> payloads, List<String> statuses, ForkJoinPool pool) {
+        Columns columns = new Columns(senders, recipients, recipientKeys, payloads, statuses);
+        int rows = senders.size();
+        Partial total = rows <= LEAF_ROWS ? columns.count(0, rows) : pool.invoke(new CountTask(columns, 0, rows));
+        return total.toSummary();
+    }
+
+    // The columns being counted, kept together so the tasks only carry one reference
+    private static final class Columns {
+        final List<String> senders;
+        final List<String> recipients;
+        final LongList recipientKeys;
+        final List<String> payloads;
+        final List<String> statuses;
+
+        Columns(List<String> senders, List<String> recipients, LongList recipientKeys, List<String> payloads, List<String> statuses) {
+            this.senders = senders;
+            this.recipients = recipients;
+            this.recipientKeys = recipientKeys;
+            this.payloads = payloads;
+            this.statuses = statuses;
+        }
+
+        Partial count(int from, int to) {
+            Partial partial = new Partial();
+            for (int i = from; i < to; i++) {
+                long key = recipientKeys.get(i);
+                if (key != PhoneNumber.NONE) {
+                    partial.numberCounts.add(key, 1);
+                } else {
+                    String recipient = recipients.get(i);
+                    increment(partial.otherRecipients, recipient == null ? "" : recipient.trim(), 1);
+                }
+                String sender = senders.get(i);
+                // A message loaded without a sender counts under "", so the sorted map below can hold it
+                increment(partial.senders, sender == null ? "" : sender, 1);
+                int length = payloads.get(i) == null ? 0 : payloads.get(i).length();
+                if ("Sent".equals(statuses.get(i))) {
+                    partial.sentCount++;
+                    partial.sentLength += length;
+                } else {
+                    partial.storedCount++;
+                    partial.storedLength += length;
+                }
+            }
+            return partial;
+        }
+    }
+
+    // Counts in a long[1] rather than a Long, so counting a row doesn't box a new Long each time
+    private static void increment(Map<String, long[]> counts, String key, long by) {
+        long[] count = counts.get(key);
+        if (count == null) {
+            counts.put(key, new long[] {by});
+        } else {
+            count[0] += by;
+        }
+    }
+
+    private static final class CountTask extends RecursiveTask<Partial> {
+        private final Columns columns;
+        private final int from;
+        private final int to;
+
+        CountTask(Columns columns, int from, int to) {
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= LEAF_ROWS) {
+                return columns.count(from, to);
+            }
+            int middle = (from + to) >>> 1;
+            CountTask left = new CountTask(columns, from, middle);
+            left.fork();
+            Partial right = new CountTask(columns, middle, to).compute();
+            return left.join().mergeWith(right);
+        }
+    }
+
+    // One piece's counts. Only one thread touches it until it is merged.
+    private static final class Partial {
+        final LongCounts numberCounts = new LongCounts();
+        final Map<String, long[]> otherRecipients = new HashMap<>();
+        final Map<String, long[]> senders = new HashMap<>();
+        long sentCount;
+        long sentLength;
+        long storedCount;
+        long storedLength;
+
+        // Merges the smaller maps into the bigger ones, to move as few entries as possible
+        Partial mergeWith(Partial other) {
+            Partial into = numberCounts.size() >= other.numberCounts.size() ? this : other;
+            Partial from = into == this ? other : this;
+            into.numberCounts.addAll(from.numberCounts);
+            from.otherRecipients.forEach((recipient, count) -> increment(into.otherRecipients, recipient, count[0]));
+            from.senders.forEach((sender, count) -> increment(into.senders, sender, count[0]));
+            into.sentCount += from.sentCount;
+            into.sentLength += from.sentLength;
+            into.storedCount += from.storedCount;
+            into.storedLength += from.storedLength;
+            return into;
+        }
+
+        Summary toSummary() {
+            Map<String, Long> perRecipient = new HashMap<>();
+            otherRecipients.forEach((recipient, count) -> perRecipient.put(recipient, count[0]));
+            numberCounts.forEach((key, count) -> perRecipient.merge(PhoneNumber.format(key), count, Long::sum));
+            Map<String, Long> perSender = new HashMap<>();
+            senders.forEach((sender, count) -> perSender.put(sender, count[0]));
+            return new Summary(perRecipient, perSender, sentCount, sentLength, storedCount, storedLength);
+        }
+    }
+
+    /**
+     * A count per packed cell number, as an open-addressing table of longs (0 is PhoneNumber.NONE,
+     * so it can mark an empty slot).
+     */
+    private static final class LongCounts {
+        private long[] keys = new long[64];
+        private long[] counts = new long[64];
+        private int size;
+
+        int size() { return size; }
+
+        void add(long key, long count) {
+            int mask = keys.length - 1;
+            int slot = spread(key) & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            counts[slot] += count;
+            if (keys[slot] == 0) {
+                keys[slot] = key;
+                // Kept at most half full, so the probes stay short
+                if (++size * 2 > keys.length) {
+                    grow();
+                }
+            }
+        }
+
+        void addAll(LongCounts other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] != 0) {
+                    add(other.keys[i], other.counts[i]);
+                }
+            }
+        }
+
+        interface Visitor {
+            void visit(long key, long count);
+        }
+
+        void forEach(Visitor visitor) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    visitor.visit(keys[i], counts[i]);
+                }
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new long[oldCounts.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = spread(oldKeys[i]) & mask;
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private static int spread(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /**
+     * The answers. Valid cell numbers are shown as +27..., however they were typed.
+     */
+    public static final class Summary {
+        // Fewer messages first, and on a tie the later recipient first
+        private static final Comparator<Map.Entry<String, Long>> WEAKEST_FIRST = (a, b) -> {
+            int byCount = Long.compare(a.getValue(), b.getValue());
+            return byCount != 0 ? byCount : b.getKey().compareTo(a.getKey());
+        };
+
+        private final Map<String, Long> perRecipient;
+        private final Map<String, Long> perSender;
+        private final long sentCount;
+        private final long sentLength;
+        private final long storedCount;
+        private final long storedLength;
+
+        Summary(Map<String, Long> perRecipient, Map<String, Long> perSender,
+                long sentCount, long sentLength, long storedCount, long storedLength) {
+            this.perRecipient = perRecipient;
+            this.perSender = perSender;
+            this.sentCount = sentCount;
+            this.sentLength = sentLength;
+            this.storedCount = storedCount;
+            this.storedLength = storedLength;
+        }
+
+        /**
+         * Adds several summaries together, e.g. one from each partition of a PartitionedReport.
+         */
+        public static Summary combine(List<Summary> summaries) {
+            Map<String, Long> perRecipient = new HashMap<>();
+            Map<String, Long> perSender = new HashMap<>();
+            long sent = 0, sentLength = 0, stored = 0, storedLength = 0;
+            for (Summary summary : summaries) {
+                summary.perRecipient.forEach((recipient, count) -> perRecipient.merge(recipient, count, Long::sum));
+                summary.perSender.forEach((sender, count) -> perSender.merge(sender, count, Long::sum));
+                sent += summary.sentCount;
+                sentLength += summary.sentLength;
+                stored += summary.storedCount;
+                storedLength += summary.storedLength;
+            }
+            return new Summary(perRecipient, perSender, sent, sentLength, stored, storedLength);
+        }
+
+        public long getMessageCount() { return sentCount + storedCount; }
+
+        /**
+         * Messages per recipient, sorted by recipient.
+         */
+        public Map<String, Long> getMessagesPerRecipient() {
+            return Collections.unmodifiableMap(new TreeMap<>(perRecipient));
+        }
+
+        /**
+         * Messages per sender, sorted by sender.
+         */
+        public Map<String, Long> getMessagesPerSender() {
+            return Collections.unmodifiableMap(new TreeMap<>(perSender));
+        }
+
+        public long getMessagesTo(String recipient) {
+            long key = PhoneNumber.pack(recipient);
+            Long count = perRecipient.get(key != PhoneNumber.NONE ? PhoneNumber.format(key) : recipient.trim());
+            return count == null ? 0 : count;
+        }
+
+        public long getMessagesFrom(String sender) {
+            return perSender.getOrDefault(sender == null ? "" : sender, 0L);
+        }
+
+        /**
+         * The n recipients with the most messages, most first (ties in recipient order).
+         * Keeps only n at a time in a heap instead of sorting every recipient.
+         */
+        public List<Map.Entry<String, Long>> getTopRecipients(int n) {
+            if (n <= 0) {
+                return new ArrayList<>();
+            }
+            // The weakest of the current top n sits at the head, ready to be pushed out
+            PriorityQueue<Map.Entry<String, Long>> top = new PriorityQueue<>(n + 1, WEAKEST_FIRST);
+            for (Map.Entry<String, Long> entry : perRecipient.entrySet()) {
+                top.add(Map.entry(entry.getKey(), entry.getValue()));
+                if (top.size() > n) {
+                    top.poll();
+                }
+            }
+            List<Map.Entry<String, Long>> best = new ArrayList<>(top);
+            best.sort(WEAKEST_FIRST.reversed());
+            return best;
+        }
+
+        /**
+         * The average payload length of the Sent or Stored messages, or 0 if there are none.
+         */
+        public double getAveragePayloadLength(String status) {
+            if ("Sent".equals(status)) {
+                return sentCount == 0 ? 0 : (double) sentLength / sentCount;
+            }
+            if ("Stored".equals(status)) {
+                return storedCount == 0 ? 0 : (double) storedLength / storedCount;
+            }
+            return 0;
+        }
+
+        public long getStatusCount(String status) {
+            return "Sent".equals(status) ? sentCount : "Stored".equals(status) ? storedCount : 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(String.format(
+                    "%,d messages (%,d Sent, avg %.1f characters; %,d Stored, avg %.1f characters), %,d recipients, %,d senders",
+                    getMessageCount(), sentCount, getAveragePayloadLength("Sent"), storedCount,
+                    getAveragePayloadLength("Stored"), perRecipient.size(), perSender.size()));
+            for (Map.Entry<String, Long> entry : getTopRecipients(5)) {
+                text.append(String.format("%n  %s: %,d", entry.getKey(), entry.getValue()));
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package st10485573;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Sends and stores messages in four stages, each on its own virtual thread:
+ *
+ *   validate -> hash -> index (add to the Report and deliver) -> persist (save the JSON)
+ *
+ * The stages are joined by bounded queues, so a burst of messages can't pile up
+ * without limit in front of a slow disk. When a queue between two stages is full,
+ * the stage before it simply waits, which slows everything in front of it down
+ * until the queue at the very start fills up. What happens then is the
+ * OverflowPolicy: BLOCK makes the caller wait, DROP_NEWEST turns the new message
+ * away with a failed future, and FAIL_FAST throws straight away.
+ *
+ * Each stage takes up to batchSize messages at a time, so the index stage adds a
+ * whole batch to the Report under one lock, for example.
+ *
+ * Every message gets a CompletableFuture that finishes once it has been saved (or fails
+ * with the reason it couldn't be: IllegalArgumentException from validation, or the
+ * IOException from saving, in which case the message is already in the reports, like
+ * MessagingService.send). If a stage throws on a batch, that batch's messages fail
+ * with the exception and the stage carries on with the next batch.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class SendPipeline implements Closeable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    public static final int DEFAULT_BATCH_SIZE = 32;
+
+    /**
+     * What submit does when the first queue is full.
+     */
+    public enum OverflowPolicy { BLOCK, DROP_NEWEST, FAIL_FAST }
+
+    private final Report reportManager;
+    private final MessageJsonStore jsonStore;
+    private final MessageBroker broker;
+    private final OverflowPolicy policy;
+
+    private final Stage validate;
+    private final Stage hash;
+    private final Stage index;
+    private final Stage persist;
+    private final Stage[] stages;
+
+    private final LongAdder submittedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private volatile boolean closed;
+    // submit holds the read lock while it queues, and close takes the write lock to set closed,
+    // so nothing can be queued behind the end marker, even by a submit that was blocked on a full queue
+    private final ReadWriteLock closing = new ReentrantReadWriteLock();
+
+    public SendPipeline(Report reportManager, MessageJsonStore jsonStore, MessageBroker broker) {
+        this(reportManager, jsonStore, broker, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE, OverflowPolicy.BLOCK);
+    }
+
+    public SendPipeline(Report reportManager, MessageJsonStore jsonStore, MessageBroker broker,
+            int queueCapacity, int batchSize, OverflowPolicy policy) {
+        if (queueCapacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Queue capacity and batch size must be positive, got "
+                    + queueCapacity + " and " + batchSize);
+        }
+        this.reportManager = reportManager;
+        this.jsonStore = jsonStore;
+        this.broker = broker;
+        this.policy = policy;
+        // Built back to front, because each stage needs to know the one after it
+        persist = new Stage("persist", queueCapacity, batchSize, null, this::persistBatch, failedCount);
+        index = new Stage("index", queueCapacity, batchSize, persist, this::indexBatch, failedCount);
+        hash = new Stage("hash", queueCapacity, batchSize, index, this::hashBatch, failedCount);
+        validate = new Stage("validate", queueCapacity, batchSize, hash, this::validateBatch, failedCount);
+        stages = new Stage[] {validate, hash, index, persist};
+        for (Stage stage : stages) {
+            stage.start();
+        }
+    }
+
+    public Report getReport() { return reportManager; }
+    public MessageJsonStore getJsonStore() { return jsonStore; }
+    public MessageBroker getBroker() { return broker; }
+    public OverflowPolicy getPolicy() { return policy; }
+
+    /**
+     * Puts the message into the pipeline to be marked with this status ("Sent" or "Stored").
+     * The future finishes with the message once it has been saved.
+     *
+     * @throws RejectedExecutionException with FAIL_FAST when the pipeline is full, or when it has been closed.
+     */
+    public CompletableFuture<Message> submit(Message msg, String status) {
+        closing.readLock().lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("The send pipeline has been closed");
+            }
+            return enqueue(new Item(msg, status));
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    private CompletableFuture<Message> enqueue(Item item) {
+        Message msg = item.msg;
+        switch (policy) {
+            case BLOCK:
+                try {
+                    validate.queue.put(item);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    item.result.completeExceptionally(e);
+                    return item.result;
+                }
+                break;
+            case DROP_NEWEST:
+                if (!validate.queue.offer(item)) {
+                    droppedCount.increment();
+                    item.result.completeExceptionally(new RejectedExecutionException(
+                            "Too many messages waiting, message " + msg.getMessageID() + " was dropped"));
+                    return item.result;
+                }
+                break;
+            default:
+                if (!validate.queue.offer(item)) {
+                    rejectedCount.increment();
+                    throw new RejectedExecutionException("Too many messages waiting (" + validate.queue.size() + "), try again later");
+                }
+                break;
+        }
+        submittedCount.increment();
+        return item.result;
+    }
+
+    /**
+     * Saves messages that are already in the report, e.g. the ones Report.sendAllStored just
+     * marked Sent, by handing them straight to the persist stage. There's nothing left to
+     * check or add, so they skip the other stages, and they wait for room whatever the
+     * policy, because the change has already happened and only the save is left.
+     * Returns one future per message, in the same order.
+     *
+     * @throws RejectedExecutionException when the pipeline has been closed.
+     */
+    public List<CompletableFuture<Message>> saveChanged(List<Message> messages) {
+        closing.readLock().lock();
+        try {
+            if (closed) {
+                throw new RejectedExecutionException("The send pipeline has been closed");
+            }
+            List<CompletableFuture<Message>> results = new ArrayList<>(messages.size());
+            for (Message msg : messages) {
+                Item item = new Item(msg, msg.getMessageStatus());
+                try {
+                    persist.queue.put(item);
+                    submittedCount.increment();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    item.result.completeExceptionally(e);
+                }
+                results.add(item.result);
+            }
+            return results;
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    // --- The four stages. Each gets a batch and returns the items to pass on. ---
+
+    private List<Item> validateBatch(List<Item> batch) {
+        List<Item> valid = new ArrayList<>(batch.size());
+        for (Item item : batch) {
+            String problem = problemWith(item);
+            if (problem == null) {
+                valid.add(item);
+            } else {
+                failedCount.increment();
+                item.result.completeExceptionally(new IllegalArgumentException(problem));
+            }
+        }
+        return valid;
+    }
+
+    private static String problemWith(Item item) {
+        if (!"Sent".equals(item.status) && !"Stored".equals(item.status)) {
+            return "Only Sent or Stored messages go through the pipeline, not " + item.status;
+        }
+        return MessagingService.problemWith(item.msg);
+    }
+
+    private List<Item> hashBatch(List<Item> batch) {
+        for (Item item : batch) {
+            item.msg.setMessageStatus(item.status);
+            item.msg.setMessageHash(item.msg.createMessageHash());
+        }
+        return batch;
+    }
+
+    private List<Item> indexBatch(List<Item> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (Item item : batch) {
+            messages.add(item.msg);
+        }
+        reportManager.addMessages(messages);
+        for (Message msg : messages) {
+            if ("Sent".equals(msg.getMessageStatus())) {
+                broker.deliver(msg);
+            }
+        }
+        return batch;
+    }
+
+    private List<Item> persistBatch(List<Item> batch) {
+        if (batch.size() == 1) {
+            save(batch.get(0));
+            return batch;
+        }
+        // Each message is its own file, so the files in a batch can be written at the same time.
+        // The batch size is what limits how many writes hit the disk at once.
+        try (ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Item item : batch) {
+                writers.execute(() -> save(item));
+            }
+        }
+        return batch;
+    }
+
+    private void save(Item item) {
+        try {
+            jsonStore.save(item.msg);
+            item.result.complete(item.msg);
+        } catch (IOException | RuntimeException e) {
+            failedCount.increment();
+            item.result.completeExceptionally(e);
+        }
+    }
+
+    // --- How the pipeline is doing ---
+
+    public long getSubmittedCount() { return submittedCount.sum(); }
+    public long getDroppedCount() { return droppedCount.sum(); }
+    public long getRejectedCount() { return rejectedCount.sum(); }
+    public long getFailedCount() { return failedCount.sum(); }
+
+    /**
+     * How many messages are waiting in front of each stage, in order: validate, hash, index, persist.
+     */
+    public int[] getQueueDepths() {
+        int[] depths = new int[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            depths[i] = stages[i].queue.size();
+        }
+        return depths;
+    }
+
+    /**
+     * How many messages have made it all the way through (saved or failed while saving).
+     */
+    public long getCompletedCount() { return persist.processed.sum(); }
+
+    public String getStatistics() {
+        StringBuilder text = new StringBuilder(String.format(
+                "Send pipeline (%s): %,d submitted, %,d dropped, %,d rejected, %,d failed",
+                policy, getSubmittedCount(), getDroppedCount(), getRejectedCount(), getFailedCount()));
+        for (Stage stage : stages) {
+            text.append('\n').append(stage);
+        }
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getStatistics();
+    }
+
+    /**
+     * Stops taking new messages, lets the ones already in the pipeline finish, and waits for them.
+     * A submit that was waiting for room when this was called still gets its message in first.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closing.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closing.writeLock().unlock();
+        }
+        try {
+            // The end marker goes in behind everything already queued, and each stage passes it on
+            validate.queue.put(Item.END);
+            for (Stage stage : stages) {
+                stage.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // One message on its way through
+    private static final class Item {
+        static final Item END = new Item(null, null);
+
+        final Message msg;
+        final String status;
+        final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        Item(Message msg, String status) {
+            this.msg = msg;
+            this.status = status;
+        }
+    }
+
+    private interface BatchWork {
+        List<Item> process(List<Item> batch);
+    }
+
+    // One stage: its input queue, the thread that works through it, and its counters
+    private static final class Stage {
+        final String name;
+        final BlockingQueue<Item> queue;
+        final int batchSize;
+        final Stage next;
+        final BatchWork work;
+        final LongAdder processed = new LongAdder();
+        final LongAdder batches = new LongAdder();
+        final LongAdder busyNanos = new LongAdder();
+        final LongAdder failedCount;
+        volatile int maxDepth;
+        Thread thread;
+
+        Stage(String name, int capacity, int batchSize, Stage next, BatchWork work, LongAdder failedCount) {
+            this.name = name;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.batchSize = batchSize;
+            this.next = next;
+            this.work = work;
+            this.failedCount = failedCount;
+        }
+
+        void start() {
+            thread = Thread.ofVirtual().name("send-pipeline-" + name).start(this::run);
+        }
+
+        private void run() {
+            List<Item> batch = new ArrayList<>(batchSize);
+            boolean ended = false;
+            while (!ended) {
+                batch.clear();
+                int depth = queue.size();
+                if (depth > maxDepth) {
+                    maxDepth = depth;
+                }
+                try {
+                    // Wait for one, then take whatever else is already there, up to a batch
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.drainTo(batch, batchSize - 1);
+                // The end marker is always last in the queue, so it can only be last in the batch
+                if (batch.get(batch.size() - 1) == Item.END) {
+                    batch.remove(batch.size() - 1);
+                    ended = true;
+                }
+                if (!batch.isEmpty()) {
+                    long start = System.nanoTime();
+                    List<Item> done;
+                    try {
+                        done = work.process(batch);
+                    } catch (RuntimeException e) {
+                        // Only this batch is lost; the stage keeps going for the messages behind it
+                        for (Item item : batch) {
+                            if (item.result.completeExceptionally(e)) {
+                                failedCount.increment();
+                            }
+                        }
+                        done = List.of();
+                    }
+                    busyNanos.add(System.nanoTime() - start);
+                    processed.add(batch.size());
+                    batches.increment();
+                    if (next != null && !handOn(done)) {
+                        return;
+                    }
+                }
+            }
+            // Nothing should be behind the end marker, but if anything is it won't be looked at, so say so
+            Item late;
+            while ((late = queue.poll()) != null) {
+                if (late != Item.END) {
+                    late.result.completeExceptionally(new RejectedExecutionException("The send pipeline has been closed"));
+                }
+            }
+            if (next != null) {
+                handOn(List.of(Item.END));
+            }
+        }
+
+        // Waits for room in the next stage's queue; this is what pushes back on the stages in front
+        private boolean handOn(List<Item> items) {
+            try {
+                for (Item item : items) {
+                    next.queue.put(item);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public String toString() {
+            long count = processed.sum();
+            long batchCount = batches.sum();
+            double busySeconds = busyNanos.sum() / 1e9;
+            return String.format("  %-8s %,d processed in %,d batches (avg %.1f), %,.0f/s while busy, queue %d/%d (max %d)",
+                    name, count, batchCount, batchCount == 0 ? 0.0 : (double) count / batchCount,
+                    busySeconds == 0 ? 0.0 : count / busySeconds, queue.size(), queue.size() + queue.remainingCapacity(), maxDepth);
+        }
+    }
+}
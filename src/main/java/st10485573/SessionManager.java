@@ -0,0 +1,190 @@
+package st10485573;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of logged-in sessions using opaque random tokens.
+ * Once someone has logged in, their token is checked with one map lookup,
+ * so we don't have to check the (slow) password hash again for every action.
+ *
+ * Idle sessions are expired with a timer wheel: every session sits in the
+ * bucket for the tick it would expire in, and each sweep only looks at the
+ * bucket for the current tick instead of going through every session.
+ * A session that was used since it was bucketed is simply moved to its new bucket.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class SessionManager {
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    public static final long DEFAULT_TICK_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    private static final int TOKEN_BYTES = 16;
+    private static final SecureRandom tokenGenerator = new SecureRandom();
+
+    // One background thread sweeps for every SessionManager in the app
+    private static final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "session-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The details we keep for one session
+    private static final class Session {
+        final String userName;
+        volatile long lastAccessMillis;
+
+        Session(String userName, long now) {
+            this.userName = userName;
+            this.lastAccessMillis = now;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String>[] wheel;
+    private final long idleTimeoutMillis;
+    private final long tickMillis;
+    private final LongSupplier clock;
+
+    // The last tick whose bucket has been swept
+    private long lastSweptTick;
+    private ScheduledFuture<?> sweepTask;
+
+    public SessionManager() {
+        this(DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_TICK_MILLIS, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a session manager. The clock is in milliseconds and can be replaced in tests.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SessionManager(long idleTimeoutMillis, long tickMillis, LongSupplier clock) {
+        if (idleTimeoutMillis <= 0 || tickMillis <= 0) {
+            throw new IllegalArgumentException("Timeout and tick must be positive");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.tickMillis = tickMillis;
+        this.clock = clock;
+
+        // Enough buckets that a session's expiry is never a full turn of the wheel away
+        int buckets = (int) Math.min(Integer.MAX_VALUE - 8, (idleTimeoutMillis + tickMillis - 1) / tickMillis + 1);
+        this.wheel = new ConcurrentLinkedQueue[buckets];
+        for (int i = 0; i < buckets; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.lastSweptTick = clock.getAsLong() / tickMillis;
+    }
+
+    /**
+     * Starts a new session for the user and returns its token.
+     */
+    public String createSession(String userName) {
+        byte[] random = new byte[TOKEN_BYTES];
+        tokenGenerator.nextBytes(random);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+
+        long now = clock.getAsLong();
+        sessions.put(token, new Session(userName, now));
+        bucketFor(expiryTick(now)).add(token);
+        return token;
+    }
+
+    /**
+     * Returns the username for a live session and marks it as used,
+     * or returns null if the token is unknown or the session has expired.
+     */
+    public String validate(String token) {
+        if (token == null) return null;
+        Session session = sessions.get(token);
+        if (session == null) return null;
+
+        long now = clock.getAsLong();
+        if (now - session.lastAccessMillis > idleTimeoutMillis) {
+            sessions.remove(token, session); // Expired but not swept yet
+            return null;
+        }
+        session.lastAccessMillis = now;
+        return session.userName;
+    }
+
+    /**
+     * Ends a session straight away, e.g. when the user logs out.
+     */
+    public void invalidate(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    /**
+     * Expires idle sessions in the buckets for every tick since the last sweep.
+     * Returns how many sessions were removed.
+     */
+    public synchronized int sweep() {
+        long currentTick = clock.getAsLong() / tickMillis;
+        // If we fell a whole turn behind, each bucket only needs one visit
+        long firstTick = Math.max(lastSweptTick + 1, currentTick - wheel.length + 1);
+        int removed = 0;
+        for (long tick = firstTick; tick <= currentTick; tick++) {
+            removed += sweepBucket(bucketFor(tick), currentTick);
+        }
+        lastSweptTick = Math.max(lastSweptTick, currentTick);
+        return removed;
+    }
+
+    private int sweepBucket(ConcurrentLinkedQueue<String> bucket, long currentTick) {
+        int removed = 0;
+        // Only look at what was in the bucket when we started; moved tokens go to other buckets
+        for (int pending = bucket.size(); pending > 0; pending--) {
+            String token = bucket.poll();
+            if (token == null) break;
+            Session session = sessions.get(token);
+            if (session == null) continue; // Already logged out or expired
+
+            long expiresAt = expiryTick(session.lastAccessMillis);
+            if (expiresAt <= currentTick) {
+                if (sessions.remove(token, session)) removed++;
+            } else {
+                bucketFor(expiresAt).add(token); // Used recently, so check again later
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Sweeps automatically once per tick on a shared background thread.
+     */
+    public synchronized void start() {
+        if (sweepTask == null) {
+            sweepTask = sweeper.scheduleAtFixedRate(this::sweep, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (sweepTask != null) {
+            sweepTask.cancel(false);
+            sweepTask = null;
+        }
+    }
+
+    public int getActiveSessionCount() {
+        return sessions.size();
+    }
+
+    // The first tick at which a session last used at the given time counts as idle
+    private long expiryTick(long lastAccessMillis) {
+        return (lastAccessMillis + idleTimeoutMillis) / tickMillis + 1;
+    }
+
+    private ConcurrentLinkedQueue<String> bucketFor(long tick) {
+        return wheel[(int) (tick % wheel.length)];
+    }
+}
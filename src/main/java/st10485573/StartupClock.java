@@ -0,0 +1,32 @@
+package st10485573;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Measures how long the app took to start, counting from when the JVM process began.
+ * Set -Dquickchat.startup.timing=true to have the GUI print its time to first frame.
+ * This needs a real screen, because the first frame is only counted once the window opens.
+ * To see what the appcds profile buys, build it and start the jar a few times with and
+ * without -XX:SharedArchiveFile=target/quickchat.jsa, comparing the printed times.
+ *
+ * @author Funiwe Ngobeni
+ */
+public final class StartupClock {
+
+    private StartupClock() {
+    }
+
+    /**
+     * How many milliseconds ago the JVM started, or -1 if the operating system won't tell us.
+     */
+    public static long millisSinceJvmStart() {
+        return ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis())
+                .orElse(-1L);
+    }
+
+    public static boolean isTimingEnabled() {
+        return Boolean.getBoolean("quickchat.startup.timing");
+    }
+}
@@ -0,0 +1,32 @@
+package st10485573;
+
+/**
+ * One registered user of QuickChat.
+ * Accounts are created once by Registration and never change afterwards,
+ * so they can be shared between threads without any locking.
+ *
+ * @author Funiwe Ngobeni
+ */
+public final class UserAccount {
+
+    private final String userName;
+    private final String passwordHash; // Made by PasswordHasher, never the plain password
+    private final long cellPhoneKey; // Packed with PhoneNumber.pack
+    private final String firstName;
+    private final String lastName;
+
+    public UserAccount(String userName, String passwordHash, String cellPhoneNumber, String firstName, String lastName) {
+        this.userName = userName;
+        this.passwordHash = passwordHash;
+        this.cellPhoneKey = PhoneNumber.pack(cellPhoneNumber);
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+
+    public String getUserName() { return userName; }
+    public String getPasswordHash() { return passwordHash; }
+    public long getCellPhoneKey() { return cellPhoneKey; }
+    public String getCellPhoneNumber() { return PhoneNumber.format(cellPhoneKey); }
+    public String getFirstName() { return firstName; }
+    public String getLastName() { return lastName; }
+}
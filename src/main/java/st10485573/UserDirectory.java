@@ -0,0 +1,108 @@
+package st10485573;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps every registered user, looked up by username.
+ * Both maps are ConcurrentHashMaps, which already lock per bin rather than
+ * per map, so many threads can register and log in at the same time.
+ * No two users can share a username or a cell number.
+ *
+ * With a PersistentUserStore behind it, every new user is also written to disk
+ * and users from earlier runs are looked up in the store's mapped index. The
+ * maps then only hold users registered since the app started.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class UserDirectory {
+
+    /**
+     * What happened when we tried to add a user.
+     */
+    public enum Outcome { ADDED, USERNAME_TAKEN, CELL_NUMBER_TAKEN }
+
+    private final ConcurrentHashMap<String, UserAccount> usersByName = new ConcurrentHashMap<>();
+    // Which username owns each packed cell number
+    private final ConcurrentHashMap<Long, String> namesByCell = new ConcurrentHashMap<>();
+    // Users from earlier runs, or null if we only keep users in memory
+    private final PersistentUserStore store;
+
+    public UserDirectory() {
+        this(null);
+    }
+
+    public UserDirectory(PersistentUserStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Adds the account if both its username and cell number are still free.
+     * Both are checked before either is claimed, so a taken username is reported
+     * as USERNAME_TAKEN even when the cell number is taken too. The cell number is
+     * then claimed first and given back if another thread got the username in the
+     * meantime, so a half-added user is never visible to a login.
+     */
+    public Outcome register(UserAccount account) {
+        Long cell = account.getCellPhoneKey();
+        String userName = account.getUserName();
+        if (usersByName.containsKey(userName) || (store != null && store.containsUserName(userName))) {
+            return Outcome.USERNAME_TAKEN;
+        }
+        if (namesByCell.putIfAbsent(cell, userName) != null) {
+            return Outcome.CELL_NUMBER_TAKEN;
+        }
+        if (usersByName.putIfAbsent(userName, account) != null) {
+            namesByCell.remove(cell, userName);
+            return Outcome.USERNAME_TAKEN;
+        }
+        if (store != null) {
+            return saveToStore(account);
+        }
+        return Outcome.ADDED;
+    }
+
+    // Writes a user we have just claimed in memory to disk, unless an earlier run already has the number.
+    // Only one thread can get here for a given username or cell number because of the maps above.
+    private Outcome saveToStore(UserAccount account) {
+        if (store.containsCellPhoneKey(account.getCellPhoneKey())) {
+            forget(account);
+            return Outcome.CELL_NUMBER_TAKEN;
+        }
+        try {
+            store.append(account);
+            return Outcome.ADDED;
+        } catch (IOException e) {
+            forget(account);
+            throw new UncheckedIOException("Could not save user " + account.getUserName(), e);
+        }
+    }
+
+    // Gives back the username and cell number claimed for an account that wasn't added after all
+    private void forget(UserAccount account) {
+        usersByName.remove(account.getUserName(), account);
+        namesByCell.remove(account.getCellPhoneKey(), account.getUserName());
+    }
+
+    /**
+     * Finds a user by username, or returns null if nobody has that name.
+     */
+    public UserAccount find(String userName) {
+        if (userName == null) return null;
+        UserAccount account = usersByName.get(userName);
+        if (account == null && store != null) {
+            account = store.find(userName);
+        }
+        return account;
+    }
+
+    public boolean isCellPhoneNumberTaken(String cellPhoneNumber) {
+        long cell = PhoneNumber.pack(cellPhoneNumber);
+        return namesByCell.containsKey(cell) || (store != null && store.containsCellPhoneKey(cell));
+    }
+
+    public long size() {
+        return store != null ? store.size() : usersByName.size();
+    }
+}
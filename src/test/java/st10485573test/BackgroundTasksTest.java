@@ -0,0 +1,127 @@
+package st10485573test;
+
+import st10485573.BackgroundTasks;
+import st10485573.EdtMonitor;
+import st10485573.Message;
+import st10485573.MessageJsonStore;
+import st10485573.Report;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.awt.EventQueue;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.SwingUtilities;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests that check saving, loading and reports stay off the Swing
+ * Event Dispatch Thread, using the EdtMonitor. These run without a screen.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class BackgroundTasksTest {
+
+    @TempDir
+    Path folder;
+
+    private Report report;
+
+    @BeforeAll
+    public static void installMonitor() {
+        EdtMonitor.install(EdtMonitor.DEFAULT_THRESHOLD_MILLIS);
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        SwingUtilities.invokeAndWait(() -> { }); // Make sure the monitor has seen the EDT
+        EdtMonitor.reset();
+        report = new Report();
+        report.addMessage(new Message("1234567890", "Funiwe", "+27838884567", "Did you get the cake?", "Sent"));
+    }
+
+    @Test
+    public void testReportOnTheEdtIsFlagged() throws Exception {
+        SwingUtilities.invokeAndWait(() -> report.generateFullReport());
+        assertEquals(1, EdtMonitor.getOffEdtViolationCount());
+        assertEquals("Full report", EdtMonitor.getLastViolation());
+    }
+
+    @Test
+    public void testSlowEventIsFlagged() throws Exception {
+        AtomicLong busyNanos = new AtomicLong();
+        SwingUtilities.invokeAndWait(() -> {
+            long start = System.nanoTime();
+            sleep(250);
+            busyNanos.set(System.nanoTime() - start);
+        });
+        // invokeAndWait returns just before the monitor records the event; once the next event has run, it has
+        SwingUtilities.invokeAndWait(() -> { });
+        assertTrue(EdtMonitor.getSlowEventCount() >= 1);
+        // The monitor's stretch starts before our event and ends after it, so it can't be shorter
+        assertTrue(EdtMonitor.getLongestDispatchMillis() >= busyNanos.get() / 1_000_000L);
+    }
+
+    @Test
+    public void testRunCallsBackOnTheEdt() throws Exception {
+        CountDownLatch done = new CountDownLatch(2);
+        AtomicBoolean workOnEdt = new AtomicBoolean(true);
+        AtomicBoolean callbackOnEdt = new AtomicBoolean(false);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        BackgroundTasks.run(() -> {
+            workOnEdt.set(EventQueue.isDispatchThread());
+            return report.displaySentMessageDetails();
+        }, result -> {
+            callbackOnEdt.set(EventQueue.isDispatchThread());
+            done.countDown();
+        }, failure::set);
+        BackgroundTasks.run(() -> {
+            throw new java.io.IOException("Disk full");
+        }, result -> { }, error -> {
+            failure.set(error);
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(workOnEdt.get());
+        assertTrue(callbackOnEdt.get());
+        assertEquals("Disk full", failure.get().getMessage());
+    }
+
+    @Test
+    public void testJsonStoreRoundTrip() throws Exception {
+        MessageJsonStore store = new MessageJsonStore(folder);
+        Message original = new Message("1111111111", "Funiwe", "+27834557896", "Did you get the cake?", "Stored");
+        Path file = store.save(original);
+        Files.writeString(folder.resolve("message_broken.json"), "{not json");
+
+        Message loaded = store.load(file);
+        assertEquals(original.getMessagePayload(), loaded.getMessagePayload());
+        assertEquals(original.getMessageHash(), loaded.getMessageHash());
+
+        List<String> problems = new ArrayList<>();
+        List<Message> all = store.loadAll(problems);
+        assertEquals(1, all.size(), "The broken file is skipped");
+        assertEquals(1, problems.size());
+        assertTrue(problems.get(0).contains("message_broken.json"), problems.get(0));
+        assertTrue(report.readStoredMessageFromJSON(file.toString()).startsWith("Successfully loaded"));
+        assertTrue(report.containsMessageId("1111111111"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package st10485573test;
+
+import st10485573.BulkUserImporter;
+import st10485573.PasswordHasher;
+import st10485573.Registration;
+import st10485573.UserDirectory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the BulkUserImporter.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class BulkUserImporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final PasswordHasher cheapHasher = new PasswordHasher(1);
+    private UserDirectory directory;
+    private BulkUserImporter importer;
+
+    @BeforeEach
+    public void setUp() {
+        directory = new UserDirectory();
+        importer = new BulkUserImporter(new Registration(directory, cheapHasher), 100);
+    }
+
+    @Test
+    public void testImportsValidRowsAndRejectsTheRest() throws Exception {
+        Path csv = tempDir.resolve("users.csv");
+        Files.write(csv, List.of(
+                "username,password,cell,first,last",
+                "kyl_1,Passw0rd!,+27123456789,John,Doe",
+                "kyle,Passw0rd!,+27123456780,John,Doe",          // username has no underscore
+                "jan_1,\"Pa,ssw0rd!\",+27123456781,Jane,Doe",    // quoted field with a comma is fine
+                "kyl_1,Passw0rd!,+27123456782,John,Doe",         // username already taken
+                "too,few,fields",
+                "bad_1,password,12345,Bad,Row1"));
+        Path rejects = tempDir.resolve("rejects.csv");
+
+        BulkUserImporter.Summary summary = importer.importFile(csv, rejects);
+
+        assertEquals(6, summary.getRowsRead());
+        assertEquals(2, summary.getAccepted());
+        assertEquals(4, summary.getRejected());
+        assertNotNull(directory.find("kyl_1"));
+        assertTrue(cheapHasher.verify("Pa,ssw0rd!", directory.find("jan_1").getPasswordHash()));
+
+        // Rows in a chunk are registered in parallel, so either kyl_1 row may be the one that wins
+        List<String> rejectLines = Files.readAllLines(rejects);
+        assertEquals(5, rejectLines.size());
+        assertEquals("line,reasons,row", rejectLines.get(0));
+        assertTrue(rejectLines.contains("3,USERNAME,\"kyle,Passw0rd!,+27123456780,John,Doe\""));
+        assertTrue(rejectLines.contains("2,USERNAME_TAKEN,\"kyl_1,Passw0rd!,+27123456789,John,Doe\"")
+                || rejectLines.contains("5,USERNAME_TAKEN,\"kyl_1,Passw0rd!,+27123456782,John,Doe\""));
+        assertEquals("6,MALFORMED_ROW,\"too,few,fields\"", rejectLines.get(3));
+        assertEquals("7,PASSWORD;CELL_PHONE;LAST_NAME,\"bad_1,password,12345,Bad,Row1\"", rejectLines.get(4));
+    }
+
+    @Test
+    public void testLargeImportAcrossManyChunks() throws Exception {
+        // Usernames can only be five characters, so we use "u_" plus three base-36 characters
+        int rows = 30_000;
+        Path csv = tempDir.resolve("many.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            for (int i = 0; i < rows; i++) {
+                String name = "u_" + Integer.toString(i % 46_656, 36);
+                writer.write(name + ",Passw0rd!,+27" + (100_000_000 + i) + ",First,Last");
+                writer.newLine();
+            }
+        }
+
+        BulkUserImporter.Summary summary = new BulkUserImporter(new Registration(directory, cheapHasher)).importFile(csv, tempDir.resolve("many-rejects.csv"));
+
+        assertEquals(rows, summary.getRowsRead());
+        assertEquals(rows, summary.getAccepted());
+        assertEquals(rows, directory.size());
+    }
+}
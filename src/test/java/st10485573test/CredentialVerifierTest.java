@@ -0,0 +1,117 @@
+package st10485573test;
+
+import st10485573.CredentialVerifier;
+import st10485573.PasswordHasher;
+import st10485573.UserAccount;
+import st10485573.UserDirectory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for PasswordHasher and CredentialVerifier, plus a small benchmark
+ * of logins per second at different hashing costs.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class CredentialVerifierTest {
+
+    @Test
+    public void testHashIsSaltedAndVerifies() {
+        PasswordHasher hasher = new PasswordHasher(1000);
+        String first = hasher.hash("Passw0rd!");
+        String second = hasher.hash("Passw0rd!");
+
+        assertNotEquals(first, second, "Each hash should get its own salt");
+        assertFalse(first.contains("Passw0rd!"));
+        assertTrue(first.startsWith("pbkdf2-sha512$1000$"));
+        assertTrue(hasher.verify("Passw0rd!", first));
+        assertTrue(hasher.verify("Passw0rd!", second));
+        assertFalse(hasher.verify("passw0rd!", first));
+        assertFalse(hasher.verify("Passw0rd!", "not a hash"));
+        assertFalse(hasher.verify(null, first));
+    }
+
+    @Test
+    public void testHashesKeepWorkingWhenTheCostChanges() {
+        String oldHash = new PasswordHasher(1000).hash("Passw0rd!");
+        assertTrue(new PasswordHasher(5000).verify("Passw0rd!", oldHash));
+    }
+
+    @Test
+    public void testDefaultCostIsUsedAndVerifies() {
+        PasswordHasher hasher = new PasswordHasher();
+        assertEquals(PasswordHasher.DEFAULT_ITERATIONS, hasher.getIterations());
+        String hash = hasher.hash("Passw0rd!");
+        assertTrue(hash.startsWith("pbkdf2-sha512$" + PasswordHasher.DEFAULT_ITERATIONS + "$"));
+        assertTrue(hasher.verify("Passw0rd!", hash));
+        assertFalse(hasher.verify("Passw0rd?", hash));
+    }
+
+    @Test
+    public void testVerifyAsyncCompletesWithTheAccount() throws Exception {
+        CredentialVerifier verifier = verifierWithUsers(new PasswordHasher(1000), 1, 2, 16);
+
+        assertEquals("u_0", verifier.verifyAsync("u_0", "Passw0rd!").get().getUserName());
+        assertNull(verifier.verifyAsync("u_0", "wrong").get());
+        assertNull(verifier.verifyAsync("nobody", "Passw0rd!").get());
+        verifier.shutdown();
+    }
+
+    @Test
+    public void testFullQueueFailsTheFuture() {
+        // One worker and a queue of one, so most of these can't even be queued
+        CredentialVerifier verifier = verifierWithUsers(new PasswordHasher(50_000), 1, 1, 1);
+        List<CompletableFuture<UserAccount>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(verifier.verifyAsync("u_0", "Passw0rd!"));
+        }
+
+        int rejected = 0;
+        for (CompletableFuture<UserAccount> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException | InterruptedException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+                rejected++;
+            }
+        }
+        assertTrue(rejected > 0);
+        verifier.shutdown();
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testLoginsPerSecondAtDifferentCosts() throws Exception {
+        // Prints how the work factor trades security for login throughput on this machine
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int iterations : new int[] {1_000, 10_000, 30_000}) {
+            CredentialVerifier verifier = verifierWithUsers(new PasswordHasher(iterations), 8, threads, 1024);
+            int logins = 24;
+            long start = System.nanoTime();
+            List<CompletableFuture<UserAccount>> futures = new ArrayList<>();
+            for (int i = 0; i < logins; i++) {
+                futures.add(verifier.verifyAsync("u_" + (i % 8), "Passw0rd!"));
+            }
+            for (CompletableFuture<UserAccount> future : futures) {
+                assertNotNull(future.get());
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("PBKDF2 %,d iterations: %.0f logins/sec on %d threads%n", iterations, logins / seconds, threads);
+            verifier.shutdown();
+        }
+    }
+
+    private static CredentialVerifier verifierWithUsers(PasswordHasher hasher, int users, int threads, int queueCapacity) {
+        UserDirectory directory = new UserDirectory();
+        for (int i = 0; i < users; i++) {
+            directory.register(new UserAccount("u_" + i, hasher.hash("Passw0rd!"), "+27" + (100_000_000 + i), "First", "Last"));
+        }
+        return new CredentialVerifier(directory, hasher, threads, queueCapacity);
+    }
+}
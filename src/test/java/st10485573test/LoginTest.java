@@ -49,7 +49,7 @@ public class LoginTest {
 
     @BeforeEach
     public void setUp() {
-        registration = new Registration();
+        registration = new Registration(new UserDirectory(), new PasswordHasher(1000));
         registration.registerUser(VALID_USERNAME, VALID_PASSWORD, "+27123456789", "John", "Doe");
         login = new Login(registration);
     }
@@ -60,6 +60,30 @@ public class LoginTest {
         assertEquals(SUCCESS_MESSAGE, login.returnLoginStatus());
     }
 
+    @Test
+    public void testEachRegisteredUserCanLogIn() {
+        registration.registerUser("jan_2", "S3cret!!x", "+27987654321", "Jane", "Smith");
+
+        assertTrue(login.loginUser("jan_2", "S3cret!!x"));
+        assertEquals("Welcome Jane Smith,\nit is great to see you.", login.returnLoginStatus());
+        assertTrue(login.loginUser(VALID_USERNAME, VALID_PASSWORD));
+        assertEquals(SUCCESS_MESSAGE, login.returnLoginStatus());
+        assertFalse(login.loginUser("jan_2", VALID_PASSWORD));
+    }
+
+    @Test
+    public void testLoginStartsASession() {
+        assertNull(login.getSessionToken());
+        assertTrue(login.loginUser(VALID_USERNAME, VALID_PASSWORD));
+        String token = login.getSessionToken();
+        assertNotNull(token);
+        assertEquals(VALID_USERNAME, login.validateSession(token));
+
+        login.logout();
+        assertNull(login.validateSession(token));
+        assertNull(login.getUsername());
+    }
+
     @Test
     public void testInvalidLogin() {
         assertFalse(login.loginUser(INVALID_USERNAME, INVALID_PASSWORD));
@@ -0,0 +1,109 @@
+package st10485573test;
+
+import st10485573.CredentialVerifier;
+import st10485573.Login;
+import st10485573.LoginThrottle;
+import st10485573.PasswordHasher;
+import st10485573.Registration;
+import st10485573.SessionManager;
+import st10485573.UserDirectory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the LoginThrottle on its own and in front of Login.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class LoginThrottleTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private AtomicLong clock;
+
+    @BeforeEach
+    public void setUp() {
+        clock = new AtomicLong(0);
+    }
+
+    @Test
+    public void testBurstThenRefill() {
+        // 3 tries per user, refilling one per second
+        LoginThrottle throttle = new LoginThrottle(3, 1.0, 100, 100.0, 4, 100, clock::get);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(throttle.tryAcquire("kyl_1", "10.0.0.1"));
+        }
+        assertFalse(throttle.tryAcquire("kyl_1", "10.0.0.1"));
+        assertTrue(throttle.tryAcquire("jan_1", "10.0.0.1"), "Other usernames have their own bucket");
+
+        clock.addAndGet(SECOND);
+        assertTrue(throttle.tryAcquire("kyl_1", "10.0.0.1"));
+        assertFalse(throttle.tryAcquire("kyl_1", "10.0.0.1"));
+        assertEquals(2, throttle.getThrottledCount());
+    }
+
+    @Test
+    public void testSourceBucketLimitsManyUsernames() {
+        // A credential-stuffing source tries a different username every time
+        LoginThrottle throttle = new LoginThrottle(5, 1.0, 10, 0.0, 4, 100, clock::get);
+        int allowed = 0;
+        for (int i = 0; i < 100; i++) {
+            if (throttle.tryAcquire("user" + i, "10.0.0.66")) allowed++;
+        }
+        assertEquals(10, allowed);
+        assertTrue(throttle.tryAcquire("user0", "10.0.0.7"), "Another source is not affected");
+    }
+
+    @Test
+    public void testIdleEntriesAreEvicted() {
+        LoginThrottle throttle = new LoginThrottle(5, 1.0, 5, 1.0, 4, 8, clock::get);
+        for (int i = 0; i < 10_000; i++) {
+            throttle.tryAcquire("user" + i, "source" + i);
+        }
+        // 4 stripes of at most 8 entries, for usernames and for sources
+        assertTrue(throttle.getTrackedKeyCount() <= 2 * 4 * 8);
+    }
+
+    @Test
+    public void testLoginShowsThrottledMessage() {
+        UserDirectory directory = new UserDirectory();
+        PasswordHasher hasher = new PasswordHasher(1000);
+        Registration registration = new Registration(directory, hasher);
+        registration.registerUser("kyl_1", "Passw0rd!", "+27123456789", "John", "Doe");
+        LoginThrottle throttle = new LoginThrottle(2, 0.0, 100, 0.0, 4, 100, clock::get);
+        Login login = new Login(registration, new CredentialVerifier(directory, hasher), new SessionManager(), throttle);
+
+        assertFalse(login.loginUser("kyl_1", "wrong"));
+        assertTrue(login.loginUser("kyl_1", "Passw0rd!"));
+        assertFalse(login.loginUser("kyl_1", "Passw0rd!"));
+        assertEquals("Too many login attempts, please wait a moment and try again.", login.returnLoginStatus());
+        assertNull(login.getSessionToken());
+
+        assertEquals(1, throttle.getAcceptedCount());
+        assertEquals(1, throttle.getRejectedCount());
+        assertEquals(1, throttle.getThrottledCount());
+    }
+
+    @Test
+    public void testFloodNeverReachesThePasswordHash() {
+        // 20 000 guesses at one account should cost a handful of hashes, not 20 000
+        UserDirectory directory = new UserDirectory();
+        PasswordHasher hasher = new PasswordHasher(20_000);
+        Registration registration = new Registration(directory, hasher);
+        registration.registerUser("kyl_1", "Passw0rd!", "+27123456789", "John", "Doe");
+        CredentialVerifier verifier = new CredentialVerifier(directory, hasher);
+        LoginThrottle throttle = new LoginThrottle(5, 0.0, 50, 0.0, 16, 4096, clock::get);
+        Login login = new Login(registration, verifier, new SessionManager(), throttle);
+
+        int attempts = 20_000;
+        for (int i = 0; i < attempts; i++) {
+            login.loginUser("kyl_1", "guess" + i, "10.0.0.66");
+        }
+
+        assertEquals(5, verifier.getHashCheckCount());
+        assertEquals(attempts - 5, throttle.getThrottledCount());
+        assertEquals(5, throttle.getRejectedCount());
+    }
+}
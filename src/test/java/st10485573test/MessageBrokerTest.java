@@ -0,0 +1,194 @@
+package st10485573test;
+
+import st10485573.Mailbox;
+import st10485573.Message;
+import st10485573.MessageBroker;
+import st10485573.MessageJsonStore;
+import st10485573.MessagingService;
+import st10485573.Report;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for delivering messages to recipients' mailboxes, plus a benchmark
+ * with several senders delivering at once while a reader drains.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class MessageBrokerTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void testSendDeliversToTheRecipientsMailbox() throws Exception {
+        MessageBroker broker = new MessageBroker(MessageBroker.DEFAULT_MAILBOX_CAPACITY);
+        MessagingService messaging = new MessagingService("Funiwe", new Report(), new MessageJsonStore(folder), broker);
+        messaging.send(messaging.createMessage("+27838884567", "Did you get the cake?"));
+        messaging.send(messaging.createMessage("0838884567", "It is dinner time!"));
+        messaging.store(messaging.createMessage("+27838884567", "Where are you? You are late!"));
+        messaging.send(messaging.createMessage("Mom", "Call me"));
+
+        // Stored messages aren't delivered, and "Mom" isn't a number we can deliver to
+        assertEquals(2, broker.getQueueDepth("+27 83 888 4567"));
+        assertEquals(1, broker.getUndeliverableCount());
+        List<Message> received = messaging.receiveMessages("0838884567");
+        assertEquals(2, received.size());
+        assertEquals("Did you get the cake?", received.get(0).getMessagePayload());
+        assertEquals("It is dinner time!", received.get(1).getMessagePayload());
+        assertTrue(messaging.receiveMessages("0838884567").isEmpty());
+        assertEquals(2, broker.getReceivedCount());
+        assertEquals(2, broker.getDeliveryLatency().getCount());
+    }
+
+    @Test
+    public void testFullMailboxDropsInsteadOfWaiting() {
+        MessageBroker broker = new MessageBroker(4);
+        for (int i = 0; i < 6; i++) {
+            boolean delivered = broker.deliver(new Message("100000000" + i, "Funiwe", "+27834557896", "Message " + i, "Sent"));
+            assertEquals(i < 4, delivered);
+        }
+        assertEquals(4, broker.getMaxQueueDepth());
+        assertEquals(2, broker.getDroppedCount());
+
+        // Taking some out makes room again, and the batch size is respected
+        assertEquals(3, broker.receive("+27834557896", 3).size());
+        assertTrue(broker.deliver(new Message("1000000009", "Funiwe", "+27834557896", "Message 9", "Sent")));
+        List<Message> rest = broker.receive("+27834557896", 10);
+        assertEquals(List.of("Message 3", "Message 9"), List.of(rest.get(0).getMessagePayload(), rest.get(1).getMessagePayload()));
+        assertThrows(IllegalArgumentException.class, () -> new Mailbox(0));
+        assertEquals(8, new Mailbox(5).capacity());
+    }
+
+    @Test
+    public void testMailboxesStartSmallAndEmptyOnesAreDropped() {
+        Mailbox mailbox = new Mailbox(MessageBroker.DEFAULT_MAILBOX_CAPACITY);
+        assertEquals(0, mailbox.allocatedSlots());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(mailbox.offer(new Message("100000000" + i, "Funiwe", "+27834557896", "Message " + i, "Sent"), 0));
+        }
+        assertEquals(16, mailbox.allocatedSlots(), "Only the first chunk of slots was made");
+        assertFalse(mailbox.retireIfEmpty(), "It still has messages");
+        assertEquals(3, mailbox.drain((message, at) -> { }, 10));
+        assertTrue(mailbox.retireIfEmpty());
+        assertFalse(mailbox.offer(new Message("1000000009", "Funiwe", "+27834557896", "Too late", "Sent"), 0));
+
+        // Room for two recipients' mailboxes at a time
+        MessageBroker broker = new MessageBroker(MessageBroker.DEFAULT_MAILBOX_CAPACITY, 2);
+        assertTrue(broker.deliver(new Message("2000000001", "Funiwe", "+27834557896", "Hi", "Sent")));
+        assertTrue(broker.deliver(new Message("2000000002", "Funiwe", "+27838884567", "Hi", "Sent")));
+        assertFalse(broker.deliver(new Message("2000000003", "Funiwe", "+27834484567", "Hi", "Sent")));
+        assertEquals(1, broker.getDroppedCount());
+        assertEquals(2, broker.getMailboxCount());
+
+        // Reading everything lets the mailbox go, which makes room for the third recipient
+        assertEquals(1, broker.receive("+27834557896", 10).size());
+        assertEquals(1, broker.getMailboxCount());
+        assertTrue(broker.deliver(new Message("2000000004", "Funiwe", "+27834484567", "Hi again", "Sent")));
+        // And the first one gets a new mailbox when someone writes to them again
+        assertEquals(1, broker.receive("+27838884567", 10).size());
+        assertTrue(broker.deliver(new Message("2000000005", "Funiwe", "+27834557896", "Back again", "Sent")));
+        assertEquals("Back again", broker.receive("+27834557896", 10).get(0).getMessagePayload());
+        assertTrue(broker.receive("+27834557896", 10).isEmpty());
+    }
+
+    @Test
+    public void testWaitingMessagesAreCappedAcrossAllMailboxes() {
+        // Nobody ever reads in the GUI, so the total has to stop somewhere even with room in every mailbox
+        MessageBroker broker = new MessageBroker(MessageBroker.DEFAULT_MAILBOX_CAPACITY, MessageBroker.DEFAULT_MAX_MAILBOXES, 3);
+        assertTrue(broker.deliver(new Message("3000000001", "Funiwe", "+27834557896", "One", "Sent")));
+        assertTrue(broker.deliver(new Message("3000000002", "Funiwe", "+27838884567", "Two", "Sent")));
+        assertTrue(broker.deliver(new Message("3000000003", "Funiwe", "+27834484567", "Three", "Sent")));
+        assertFalse(broker.deliver(new Message("3000000004", "Funiwe", "+27834557896", "Four", "Sent")));
+        assertEquals(1, broker.getDroppedCount());
+        assertEquals(3, broker.getTotalQueueDepth());
+
+        // Reading one makes room for one more
+        assertEquals(1, broker.receive("+27838884567", 10).size());
+        assertTrue(broker.deliver(new Message("3000000005", "Funiwe", "+27834557896", "Five", "Sent")));
+        assertFalse(broker.deliver(new Message("3000000006", "Funiwe", "+27834557896", "Six", "Sent")));
+        assertEquals(2, broker.getQueueDepth("+27834557896"));
+        assertThrows(IllegalArgumentException.class, () -> new MessageBroker(4, 4, 0));
+    }
+
+    @Test
+    public void testManySendersOneReaderPerRecipient() throws Exception {
+        int perSender = 50_000;
+        int senders = Math.max(2, Runtime.getRuntime().availableProcessors());
+        int recipients = 64;
+        MessageBroker broker = new MessageBroker(4096);
+
+        // Build the messages first so the senders start delivering together
+        Message[][] outgoing = new Message[senders][perSender];
+        for (int s = 0; s < senders; s++) {
+            for (int i = 0; i < perSender; i++) {
+                // The payload says who sent it and in what order, so the reader can check the order
+                outgoing[s][i] = new Message("x", "sender" + s, String.format("+2783%07d", i % recipients), s + ":" + i, "Sent");
+            }
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean sendersDone = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int s = 0; s < senders; s++) {
+            Message[] mine = outgoing[s];
+            threads.add(Thread.ofPlatform().start(() -> {
+                awaitQuietly(start);
+                for (Message message : mine) {
+                    while (!broker.deliver(message)) {
+                        Thread.onSpinWait(); // Mailbox full: wait for the reader to catch up
+                    }
+                }
+            }));
+        }
+
+        // One reader for every mailbox, checking each sender's messages arrive in the order they were sent
+        int[][] nextExpected = new int[senders][recipients];
+        long[] received = new long[1];
+        List<String> problems = new ArrayList<>();
+        Thread reader = Thread.ofPlatform().start(() -> {
+            awaitQuietly(start);
+            while (!sendersDone.get() || broker.getTotalQueueDepth() > 0) {
+                for (int r = 0; r < recipients; r++) {
+                    received[0] += broker.receive(27_830_000_000L + r, 256, message -> {
+                        String[] parts = message.getMessagePayload().split(":");
+                        int sender = Integer.parseInt(parts[0]);
+                        int sequence = Integer.parseInt(parts[1]);
+                        if (sequence != nextExpected[sender][sequence % recipients] * recipients + sequence % recipients) {
+                            problems.add("Out of order: " + message.getMessagePayload());
+                        }
+                        nextExpected[sender][sequence % recipients]++;
+                    });
+                }
+            }
+        });
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        sendersDone.set(true);
+        reader.join();
+
+        long total = (long) senders * perSender;
+        assertTrue(problems.isEmpty(), problems.isEmpty() ? "" : problems.get(0));
+        assertEquals(total, received[0]);
+        assertEquals(total, broker.getDeliveredCount());
+        assertEquals(total, broker.getReceivedCount());
+        assertEquals(0, broker.getTotalQueueDepth());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package st10485573test;
+
+import st10485573.CountMinSketch;
+import st10485573.HyperLogLog;
+import st10485573.Message;
+import st10485573.MessageStatistics;
+import st10485573.Report;
+import st10485573.ReportAnalytics;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for MessageStatistics, HyperLogLog and CountMinSketch: the estimates
+ * are checked against the exact answers and the error bounds they promise.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class MessageStatisticsTest {
+
+    @Test
+    public void testDistinctCountsStayWithinTheirError() {
+        for (int precision : new int[] {10, 14}) {
+            HyperLogLog distinct = new HyperLogLog(precision);
+            int added = 0;
+            for (int size : new int[] {10, 1_000, 50_000, 1_000_000}) {
+                for (; added < size; added++) {
+                    distinct.add(HyperLogLog.hash64((long) added));
+                    distinct.add(HyperLogLog.hash64((long) added)); // Seeing it twice changes nothing
+                }
+                // Three standard errors, which 99.7% of estimates stay within
+                double allowed = Math.max(3 * distinct.getStandardError() * size, 1);
+                assertEquals(size, distinct.estimate(), allowed, "precision " + precision + ", " + size + " items");
+            }
+            assertEquals(1 << precision, distinct.getMemoryBytes(), "Memory stays the same however many are added");
+        }
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(HyperLogLog.MAX_PRECISION + 1));
+    }
+
+    @Test
+    public void testHeavyHittersMatchTheExactCounts() {
+        Report report = new Report();
+        // A few messages before it's attached, which it must still count
+        report.addMessage(new Message("1000000001", "Funiwe", "+27834557896", "Did you get the cake?", "Sent"));
+        report.addMessage(new Message("1000000002", "Funiwe", "0834557896", "It is dinner time!", "Stored"));
+        MessageStatistics statistics = new MessageStatistics().attachTo(report);
+        long memory = statistics.getMemoryBytes();
+
+        // Recipient number r gets about 1/r of the messages, like real chats with a few busy people
+        int recipientCount = 20_000;
+        double[] cumulative = new double[recipientCount];
+        double sum = 0;
+        for (int r = 0; r < recipientCount; r++) {
+            sum += 1.0 / (r + 1);
+            cumulative[r] = sum;
+        }
+        Random random = new Random(42);
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            int r = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            int recipient = r >= 0 ? r : -r - 1;
+            messages.add(new Message(String.format("%010d", i), "Sender " + (i % 700), String.format("+2783%07d", recipient),
+                    "Message " + i, i % 3 == 0 ? "Stored" : "Sent"));
+        }
+        report.addMessages(messages);
+
+        ReportAnalytics.Summary exact = report.summarize();
+        assertEquals(exact.getMessageCount(), statistics.getMessageCount());
+        double distinctError = 3 * statistics.getDistinctError();
+        long recipients = exact.getMessagesPerRecipient().size();
+        assertEquals(recipients, statistics.estimateDistinctRecipients(), distinctError * recipients);
+        assertEquals(700, statistics.estimateDistinctSenders(), distinctError * 700);
+
+        // Never under, and over by more than the bound for no more than the promised share of recipients
+        long bound = statistics.getCountErrorBound();
+        int tooHigh = 0;
+        for (Map.Entry<String, Long> entry : exact.getMessagesPerRecipient().entrySet()) {
+            long estimate = statistics.estimateMessagesTo(entry.getKey());
+            assertTrue(estimate >= entry.getValue(), entry.getKey() + " was under-counted");
+            if (estimate > entry.getValue() + bound) {
+                tooHigh++;
+            }
+        }
+        assertTrue(tooHigh <= statistics.getCountFailureChance() * recipients, tooHigh + " recipients over the bound of " + bound);
+        assertEquals(3, statistics.estimateMessagesTo("+27 83 455 7896"), bound, "Typed differently, still the same recipient");
+
+        // The busiest recipients are the same ones, in the same order
+        List<Map.Entry<String, Long>> top = statistics.getTopRecipients();
+        List<Map.Entry<String, Long>> exactTop = exact.getTopRecipients(MessageStatistics.DEFAULT_TOP);
+        assertEquals(MessageStatistics.DEFAULT_TOP, top.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(exactTop.get(i).getKey(), top.get(i).getKey());
+        }
+        for (Map.Entry<String, Long> entry : top) {
+            long count = exact.getMessagesTo(entry.getKey());
+            assertTrue(entry.getValue() >= count && entry.getValue() <= count + bound, entry.toString());
+        }
+
+        assertEquals(memory, statistics.getMemoryBytes(), "Memory is fixed when it's created");
+        assertTrue(memory < 128 * 1024, "The defaults are about 110 KB, not " + memory);
+
+        // Deleting doesn't take anything back out, and after detaching it stops counting
+        report.deleteMessageByHash(messages.get(0).getMessageHash());
+        assertEquals(exact.getMessageCount(), statistics.getMessageCount());
+        statistics.detachFrom(report);
+        report.addMessage(new Message("1000000003", "Funiwe", "+27838884567", "Where are you?", "Sent"));
+        assertEquals(exact.getMessageCount(), statistics.getMessageCount());
+    }
+
+    @Test
+    public void testSmallerSketchHasAWiderBound() {
+        CountMinSketch small = new CountMinSketch(64, 3);
+        for (long i = 0; i < 10_000; i++) {
+            small.add(HyperLogLog.hash64(i % 1_000));
+        }
+        // Each of the 1,000 items was added 10 times
+        long bound = small.getErrorBound();
+        assertEquals((long) Math.ceil(Math.E / 64 * 10_000), bound);
+        int tooHigh = 0;
+        for (long i = 0; i < 1_000; i++) {
+            long estimate = small.estimate(HyperLogLog.hash64(i));
+            assertTrue(estimate >= 10);
+            if (estimate > 10 + bound) {
+                tooHigh++;
+            }
+        }
+        assertTrue(tooHigh <= small.getFailureChance() * 1_000, tooHigh + " over the bound");
+        assertEquals(64 * 3 * Long.BYTES, small.getMemoryBytes());
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(0, 3));
+    }
+}
@@ -0,0 +1,153 @@
+package st10485573test;
+
+import st10485573.Message;
+import st10485573.MessageColumn;
+import st10485573.MessageTableModel;
+import st10485573.Report;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import javax.swing.SwingUtilities;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the message browser: the row queries in Report and the
+ * MessageTableModel that only fetches the rows on screen.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class MessageTableModelTest {
+
+    private Report report;
+
+    @BeforeEach
+    public void setUp() {
+        report = new Report();
+        report.addMessage(new Message("1000000001", "Funiwe", "+27834557896", "Did you get the cake?", "Sent"));
+        report.addMessage(new Message("1000000002", "Funiwe", "+27838884567", "Where are you? You are late!", "Stored"));
+        report.addMessage(new Message("1000000003", "Funiwe", "0838884567", "Ok, I am leaving without you.", "Sent"));
+        report.addMessage(new Message("1000000004", "Funiwe", "+27834557896", "It is dinner time!", "Sent"));
+    }
+
+    @Test
+    public void testFindRowsFiltersAndSorts() {
+        assertArrayEquals(new long[] {0, 1, 2, 3}, report.findRows(null, null, null, true));
+        assertArrayEquals(new long[] {0, 2, 3}, report.findRows("Sent", "", null, true));
+        // Both ways of writing the number match
+        assertArrayEquals(new long[] {1, 2}, report.findRows(null, "+27 83 888 4567", null, true));
+        assertArrayEquals(new long[] {2}, report.findRows("Sent", "0838884567", null, true));
+
+        // Equal recipients keep the order they were added in
+        assertArrayEquals(new long[] {0, 3, 1, 2}, report.findRows(null, null, MessageColumn.RECIPIENT, true));
+        assertArrayEquals(new long[] {2, 1, 0, 3}, report.findRows(null, null, MessageColumn.RECIPIENT, false));
+        assertArrayEquals(new long[] {0, 3, 2, 1}, report.findRows(null, null, MessageColumn.MESSAGE, true));
+    }
+
+    @Test
+    public void testGetRowsReturnsOnlyTheRange() {
+        long[] rows = report.findRows(null, null, MessageColumn.ID, false);
+        String[][] values = report.getRows(rows, 1, 3);
+        assertEquals(2, values.length);
+        assertEquals("1000000003", values[0][MessageColumn.ID.ordinal()]);
+        assertEquals("Where are you? You are late!", values[1][MessageColumn.MESSAGE.ordinal()]);
+
+        // After deleting rows[1], it comes back null and the messages around it are still the right ones
+        report.deleteMessageByHash(values[0][MessageColumn.HASH.ordinal()]);
+        values = report.getRows(rows, 0, 4);
+        assertEquals("1000000004", values[0][MessageColumn.ID.ordinal()]);
+        assertNull(values[1]);
+        assertEquals("1000000002", values[2][MessageColumn.ID.ordinal()]);
+        assertEquals("1000000001", values[3][MessageColumn.ID.ordinal()]);
+    }
+
+    @Test
+    public void testModelLoadsPagesOnlyWhenAsked() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            report.addMessage(new Message(String.format("2%09d", i), "Funiwe", "+27834557896", "Message " + i, "Stored"));
+        }
+        MessageTableModel model = onEdt(() -> new MessageTableModel(report));
+        SwingUtilities.invokeAndWait(() -> model.setFilter("Stored", null));
+        waitFor(() -> onEdtQuietly(model::getRowCount) == 1001);
+
+        // Looking at row 500 fetches its page and no other
+        assertEquals(MessageTableModel.LOADING, onEdt(() -> model.getValueAt(500, MessageColumn.MESSAGE.ordinal())));
+        waitFor(() -> onEdtQuietly(model::getPageLoadCount) == 1);
+        assertEquals("Message 499", onEdt(() -> model.getValueAt(500, MessageColumn.MESSAGE.ordinal())));
+        assertEquals(MessageTableModel.LOADING, onEdt(() -> model.getValueAt(0, 0)));
+
+        SwingUtilities.invokeAndWait(() -> model.sortBy(MessageColumn.MESSAGE));
+        waitFor(() -> onEdtQuietly(() -> model.getValueAt(0, MessageColumn.MESSAGE.ordinal())).equals("Message 0"));
+        assertTrue(onEdt(() -> model.getColumnName(MessageColumn.MESSAGE.ordinal())).startsWith("Message "));
+    }
+
+    @Test
+    public void testScrollingThroughManyMessages() throws Exception {
+        // Enough for a few hundred pages
+        int count = 50_000;
+        Report big = new Report();
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            String recipient = String.format("+2783%07d", random.nextInt(1000));
+            big.addMessage(new Message(String.format("%010d", i), "Funiwe", recipient, "Message number " + i, i % 3 == 0 ? "Stored" : "Sent"));
+        }
+
+        long[] rows = big.findRows("Sent", null, MessageColumn.RECIPIENT, true);
+
+        // Jump around like a scroll bar drag: each screen needs about 30 rows
+        for (int s = 0; s < 200; s++) {
+            int first = random.nextInt(rows.length - 30);
+            String[][] screen = big.getRows(rows, first, first + 30);
+            assertNotNull(screen[29]);
+        }
+
+        MessageTableModel model = onEdt(() -> new MessageTableModel(big));
+        SwingUtilities.invokeAndWait(() -> model.setFilter("Sent", null));
+        waitFor(() -> onEdtQuietly(model::getRowCount) == rows.length);
+        // 20 screens spread over the whole table, each row asked for by every column like a JTable paint
+        int step = rows.length / 20;
+        for (int s = 0; s < 20; s++) {
+            int first = s * step;
+            SwingUtilities.invokeAndWait(() -> {
+                for (int row = first; row < first + 30; row++) {
+                    for (int column = 0; column < model.getColumnCount(); column++) {
+                        model.getValueAt(row, column);
+                    }
+                }
+            });
+        }
+        waitFor(() -> onEdtQuietly(model::getPageLoadCount) >= 20);
+        Thread.sleep(50);
+        // A screen can straddle two pages, but we never load anything we didn't look at
+        assertTrue(onEdt(model::getPageLoadCount) <= 40, "Only the pages we looked at were loaded");
+    }
+
+    // --- Helpers to use the model on the Swing thread, like a JTable would ---
+
+    private interface EdtCall<T> {
+        T call();
+    }
+
+    private static <T> T onEdt(EdtCall<T> call) throws Exception {
+        AtomicReference<T> result = new AtomicReference<>();
+        SwingUtilities.invokeAndWait(() -> result.set(call.call()));
+        return result.get();
+    }
+
+    private static <T> T onEdtQuietly(EdtCall<T> call) {
+        try {
+            return onEdt(call);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the model");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package st10485573test;
+
+import st10485573.Message;
+import st10485573.MessageJsonStore;
+import st10485573.MessagingService;
+import st10485573.Report;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the MessagingService behind the messaging window.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class MessagingServiceTest {
+
+    @TempDir
+    Path folder;
+
+    private MessagingService messaging;
+
+    @BeforeEach
+    public void setUp() {
+        messaging = new MessagingService("Funiwe", new Report(), new MessageJsonStore(folder));
+    }
+
+    @Test
+    public void testSendStoreAndDisregard() throws Exception {
+        Message sent = messaging.send(messaging.createMessage("+27834557896", "Did you get the cake?"));
+        Message stored = messaging.store(messaging.createMessage("+27838884567", "Where are you? You are late! I have asked you to be on time."));
+        Message dropped = messaging.disregard(messaging.createMessage("+27834484567", "Yohoooo, I am at your gate."));
+
+        assertEquals("Sent", sent.getMessageStatus());
+        assertEquals("Funiwe", sent.getMessageSender());
+        assertTrue(Files.exists(folder.resolve(MessageJsonStore.fileNameFor(sent.getMessageID()))));
+        assertTrue(Files.exists(folder.resolve(MessageJsonStore.fileNameFor(stored.getMessageID()))));
+        assertFalse(Files.exists(folder.resolve(MessageJsonStore.fileNameFor(dropped.getMessageID()))),
+                "We don't save a JSON for disregarded messages");
+        assertEquals(1, messaging.getReport().getRecentDrafts().size());
+
+        assertTrue(messaging.sentMessageDetails().contains("Recipient: +27834557896"));
+        assertFalse(messaging.sentMessageDetails().contains("+27838884567"), "Stored messages were not sent");
+        assertEquals("Longest message found:\n\n\"Where are you? You are late! I have asked you to be on time.\"", messaging.longestMessage());
+        assertTrue(messaging.findMessageById(" " + stored.getMessageID() + " ").contains("Where are you?"));
+        assertTrue(messaging.findMessagesByRecipient("083 888 4567").contains("Where are you?"));
+        assertTrue(messaging.fullReport().contains("Did you get the cake?"));
+        assertEquals("Message \"Did you get the cake?\" successfully deleted.",
+                messaging.deleteMessageByHash(sent.getMessageHash().toLowerCase()));
+    }
+
+    @Test
+    public void testTooLongOrUnaddressedMessagesAreRefused() {
+        // Same rules as the SendPipeline, even without one
+        IllegalArgumentException tooLong = assertThrows(IllegalArgumentException.class,
+                () -> messaging.send(messaging.createMessage("+27838884567", "x".repeat(MessagingService.MAX_PAYLOAD_LENGTH + 1))));
+        assertTrue(tooLong.getMessage().contains("at most 250 characters"));
+        assertThrows(IllegalArgumentException.class, () -> messaging.store(messaging.createMessage(" ", "Hello")));
+        assertEquals(0, messaging.getReport().getMessageCount());
+    }
+
+    @Test
+    public void testLoadSavedMessagesSkipsOnesWeHave() throws Exception {
+        Message sent = messaging.send(messaging.createMessage("+27834557896", "Did you get the cake?"));
+
+        MessagingService nextSession = new MessagingService("Funiwe", new Report(), new MessageJsonStore(folder));
+        assertEquals(1, nextSession.loadSavedMessages());
+        assertEquals(0, nextSession.loadSavedMessages());
+        assertTrue(nextSession.fullReport().contains("Did you get the cake?"));
+        assertEquals(sent.getTimestampMillis(), nextSession.getReport().getMostRecent(1).get(0).getTimestampMillis(),
+                "The time is saved in the JSON");
+    }
+
+    @Test
+    public void testSendAllStored() throws Exception {
+        Message first = messaging.store(messaging.createMessage("+27820004701", "Did you get the cake?"));
+        Message second = messaging.store(messaging.createMessage("+27820004701", "It is dinner time!"));
+        messaging.send(messaging.createMessage("+27820004701", "Already sent"));
+
+        assertEquals(2, messaging.sendAllStored());
+        assertEquals(0, messaging.sendAllStored());
+        assertEquals(3, messaging.getReport().getStatusCount("Sent"));
+        assertEquals(3, messaging.receiveMessages("+27820004701").size());
+        // The saved files say Sent now too
+        MessageJsonStore store = new MessageJsonStore(folder);
+        for (Message msg : new Message[] {first, second}) {
+            assertEquals("Sent", store.load(folder.resolve(MessageJsonStore.fileNameFor(msg.getMessageID()))).getMessageStatus());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package st10485573test;
+
+import st10485573.Message;
+import st10485573.PartitionedReport;
+import st10485573.Report;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for PartitionedReport: it must give exactly the same answers as one Report,
+ * plus a benchmark comparing one partition with several.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class PartitionedReportTest {
+
+    @Test
+    public void testSameAnswersAsOneReport() {
+        Report single = new Report();
+        PartitionedReport partitioned = new PartitionedReport(4);
+        List<Message> messages = List.of(
+                new Message("1000000001", "Funiwe", "+27834557896", "Did you get the cake?", "Sent"),
+                new Message("1000000002", "Funiwe", "+27838884567", "Where are you? You are late! I have asked you to be on time.", "Stored"),
+                new Message("1000000003", "Funiwe", "+27834484567", "Yohoooo, I am at your gate.", "Disregarded"),
+                new Message("1000000004", "Funiwe", "0838884567", "It is dinner time!", "Sent"),
+                new Message("1000000005", "Funiwe", "+27838884567", "Ok, I am leaving without you.", "Stored"),
+                new Message("1000000006", "Funiwe", "Mom", "Same length as the cake one", "Sent"));
+        for (Message msg : messages) {
+            single.addMessage(msg);
+            partitioned.addMessage(new Message(msg.getMessageID(), msg.getMessageSender(), msg.getMessageRecipient(),
+                    msg.getMessagePayload(), msg.getMessageStatus()));
+        }
+        assertSameAnswers(single, partitioned);
+
+        // Deleting shifts the numbers in the full report the same way
+        String hash = messages.get(0).getMessageHash();
+        assertEquals(single.deleteMessageByHash(hash), partitioned.deleteMessageByHash(hash));
+        assertEquals(single.deleteMessageByHash(hash), partitioned.deleteMessageByHash(hash));
+        assertSameAnswers(single, partitioned);
+        assertEquals("No messages to compare.", new PartitionedReport(3).getLongestMessage());
+        assertEquals("No messages have been sent to report.", new PartitionedReport(3).generateFullReport());
+    }
+
+    private static void assertSameAnswers(Report single, PartitionedReport partitioned) {
+        assertEquals(single.getMessageCount(), partitioned.getMessageCount());
+        assertEquals(single.generateFullReport(), partitioned.generateFullReport());
+        assertEquals(single.displaySentMessageDetails(), partitioned.displaySentMessageDetails());
+        assertEquals(single.getLongestMessage(), partitioned.getLongestMessage());
+        for (String recipient : new String[] {"+27838884567", "0838884567", "Mom", "+27000000000"}) {
+            assertEquals(single.findMessagesByRecipient(recipient), partitioned.findMessagesByRecipient(recipient));
+        }
+        assertEquals(single.findRecipientsByPrefix("083", 10), partitioned.findRecipientsByPrefix("083", 10));
+        assertEquals(single.findMessageById("1000000004"), partitioned.findMessageById("1000000004"));
+        assertEquals(single.findMessageById("nope"), partitioned.findMessageById("nope"));
+        assertEquals(single.containsMessageId("1000000005"), partitioned.containsMessageId("1000000005"));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testThroughputWithMorePartitions() throws Exception {
+        // A million messages with -Dquickchat.bench.messages=1000000; fewer by default to keep the build quick
+        int count = Integer.getInteger("quickchat.bench.messages", 200_000);
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        Random random = new Random(42);
+        Message[] messages = new Message[count];
+        for (int i = 0; i < count; i++) {
+            messages[i] = new Message(String.format("%010d", i), "Funiwe", String.format("+2783%07d", random.nextInt(100_000)),
+                    "Message number " + i, i % 3 == 0 ? "Stored" : "Sent");
+        }
+
+        String expected = null;
+        StringBuilder summary = new StringBuilder("Partitioned report (" + count + " messages, " + threads + " adding threads):");
+        for (int partitionCount : new int[] {1, 4, 16}) {
+            PartitionedReport report = new PartitionedReport(partitionCount);
+            // Several threads adding at once, each with its own share of the messages
+            long start = System.nanoTime();
+            List<Thread> adders = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                adders.add(Thread.ofPlatform().start(() -> {
+                    for (int i = first; i < count; i += threads) {
+                        report.addMessage(messages[i]);
+                    }
+                }));
+            }
+            for (Thread adder : adders) {
+                adder.join();
+            }
+            double addMillis = (System.nanoTime() - start) / 1e6;
+            assertEquals(count, report.getMessageCount());
+
+            start = System.nanoTime();
+            String full = report.generateFullReport();
+            String longest = report.getLongestMessage();
+            report.displaySentMessageDetails();
+            double globalMillis = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            for (int i = 0; i < 200; i++) {
+                report.findMessagesByRecipient(messages[i].getMessageRecipient());
+            }
+            double recipientMicros = (System.nanoTime() - start) / 1e3 / 200;
+
+            // The threads added in a different order each run, so compare sizes rather than text
+            if (expected == null) {
+                expected = longest;
+            }
+            assertEquals(expected.length(), longest.length());
+            assertTrue(full.startsWith("--- Full Message Report ---\n\nMessage #"));
+            summary.append(String.format("%n  %2d partitions: add %.0f ms, 3 global reports %.0f ms, recipient search %.0f us",
+                    partitionCount, addMillis, globalMillis, recipientMicros));
+        }
+        System.out.println(summary);
+    }
+}
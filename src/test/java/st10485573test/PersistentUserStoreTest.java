@@ -0,0 +1,181 @@
+package st10485573test;
+
+import st10485573.PersistentUserStore;
+import st10485573.UserAccount;
+import st10485573.UserDirectory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the PersistentUserStore and its memory-mapped indexes.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class PersistentUserStoreTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void testUsersSurviveReopening() throws IOException {
+        try (PersistentUserStore store = PersistentUserStore.open(folder)) {
+            store.append(new UserAccount("kyl_1", "hash-1", "+27123456789", "John", "Doe"));
+            store.append(new UserAccount("jan_1", "hash-2", "0831234567", "Jane", "Doe"));
+        }
+
+        try (PersistentUserStore store = PersistentUserStore.open(folder)) {
+            assertEquals(2, store.size());
+            UserAccount john = store.find("kyl_1");
+            assertNotNull(john);
+            assertEquals("hash-1", john.getPasswordHash());
+            assertEquals("+27123456789", john.getCellPhoneNumber());
+            assertEquals("John", john.getFirstName());
+            assertEquals("+27831234567", store.find("jan_1").getCellPhoneNumber());
+            assertNull(store.find("nobody"));
+            assertTrue(store.containsCellPhoneKey(27831234567L));
+        }
+    }
+
+    @Test
+    public void testDirectoryRejectsUsersFromAnEarlierRun() throws IOException {
+        try (PersistentUserStore store = PersistentUserStore.open(folder)) {
+            new UserDirectory(store).register(new UserAccount("kyl_1", "hash-1", "+27123456789", "John", "Doe"));
+        }
+
+        try (PersistentUserStore store = PersistentUserStore.open(folder)) {
+            UserDirectory directory = new UserDirectory(store);
+            assertEquals(1, directory.size());
+            assertEquals("John", directory.find("kyl_1").getFirstName());
+            assertEquals(UserDirectory.Outcome.USERNAME_TAKEN,
+                    directory.register(new UserAccount("kyl_1", "hash-2", "+27987654321", "Jane", "Doe")));
+            assertEquals(UserDirectory.Outcome.CELL_NUMBER_TAKEN,
+                    directory.register(new UserAccount("jan_1", "hash-2", "0123456789", "Jane", "Doe")));
+            // The failed attempt must not keep jan_1's name claimed
+            assertNull(directory.find("jan_1"));
+            assertEquals(UserDirectory.Outcome.ADDED,
+                    directory.register(new UserAccount("jan_1", "hash-2", "+27987654321", "Jane", "Doe")));
+            assertEquals(2, directory.size());
+        }
+    }
+
+    @Test
+    public void testIndexGrowsPastItsFirstSize() throws IOException {
+        int users = 5_000;
+        try (PersistentUserStore store = PersistentUserStore.open(folder)) {
+            for (int i = 0; i < users; i++) {
+                store.append(user(i));
+            }
+        }
+        try (PersistentUserStore store = PersistentUserStore.open(folder)) {
+            assertEquals(users, store.size());
+            for (int i = 0; i < users; i += 97) {
+                assertEquals("user" + i, store.find("user" + i).getUserName());
+            }
+        }
+
+        // Pretend the app stopped half way through growing the name index: the bigger table is
+        // left half written next to it, but the index itself was never touched
+        Path halfGrown = folder.resolve("usernames.idx.grow");
+        Files.write(halfGrown, "QCIX half a table".getBytes(StandardCharsets.US_ASCII));
+        try (PersistentUserStore store = PersistentUserStore.open(folder)) {
+            assertFalse(Files.exists(halfGrown));
+            assertEquals(users, store.size());
+            assertEquals("user4999", store.find("user4999").getUserName());
+            // And it can still grow afterwards
+            for (int i = users; i < users * 2; i++) {
+                store.append(user(i));
+            }
+            assertEquals("user0", store.find("user0").getUserName());
+            assertEquals("user9999", store.find("user9999").getUserName());
+        }
+    }
+
+    @Test
+    public void testRecordsMissingFromTheIndexAreCaughtUp() throws IOException {
+        try (PersistentUserStore store = PersistentUserStore.open(folder)) {
+            store.append(user(1));
+        }
+        // Pretend the app stopped after writing users.dat but before indexing the new user:
+        // copy a fresh store's record onto the end of the data file by hand
+        Path other = folder.resolve("other");
+        try (PersistentUserStore store = PersistentUserStore.open(other)) {
+            store.append(user(2));
+        }
+        byte[] record = Files.readAllBytes(other.resolve("users.dat"));
+        Files.write(folder.resolve("users.dat"), record, StandardOpenOption.APPEND);
+        // And half of a third record
+        Files.write(folder.resolve("users.dat"), new byte[] { 0, 0, 0, 90, 1, 2 }, StandardOpenOption.APPEND);
+
+        try (PersistentUserStore store = PersistentUserStore.open(folder)) {
+            assertEquals(2, store.size());
+            assertNotNull(store.find("user2"));
+            store.append(user(3));
+        }
+        try (PersistentUserStore store = PersistentUserStore.open(folder)) {
+            assertEquals(3, store.size());
+            assertNotNull(store.find("user3"), "The half-written record was cut off before appending");
+        }
+    }
+
+    @Test
+    public void testDamagedRecordInTheMiddleIsNotCutOff() throws IOException {
+        fill(folder, 3);
+        // Spoil the second user's name in place; its length still fits inside the file
+        Path data = folder.resolve("users.dat");
+        byte[] bytes = Files.readAllBytes(data);
+        int second = 4 + ((bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff));
+        bytes[second + 4] = (byte) 0xff;
+        bytes[second + 5] = (byte) 0xff;
+        Files.write(data, bytes);
+        // Without the indexes, opening has to read every record again
+        Files.delete(folder.resolve("usernames.idx"));
+        Files.delete(folder.resolve("cells.idx"));
+
+        IOException e = assertThrows(IOException.class, () -> PersistentUserStore.open(folder));
+        assertTrue(e.getMessage().contains("damaged"), e.getMessage());
+        assertEquals(bytes.length, Files.size(data), "Nothing was cut off");
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testOpeningTakesAboutTheSameTimeForAnySize() throws IOException {
+        // Opening only maps the index files, so a big store shouldn't open much slower than a small one
+        int bigUsers = Integer.getInteger("quickchat.bench.users", 50_000);
+        Path small = folder.resolve("small");
+        Path big = folder.resolve("big");
+        fill(small, 10);
+        fill(big, bigUsers);
+
+        double smallMillis = timeOpenAndFind(small, "user5");
+        double bigMillis = timeOpenAndFind(big, "user" + (bigUsers / 2));
+        System.out.printf("PersistentUserStore: open + find with 10 users %.2f ms, with %,d users %.2f ms (data file %,d KB)%n",
+                smallMillis, bigUsers, bigMillis, Files.size(big.resolve("users.dat")) / 1024);
+    }
+
+    private static double timeOpenAndFind(Path directory, String userName) throws IOException {
+        long start = System.nanoTime();
+        try (PersistentUserStore store = PersistentUserStore.open(directory)) {
+            assertNotNull(store.find(userName));
+        }
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    private static void fill(Path directory, int users) throws IOException {
+        try (PersistentUserStore store = PersistentUserStore.open(directory)) {
+            for (int i = 0; i < users; i++) {
+                store.append(user(i));
+            }
+        }
+    }
+
+    private static UserAccount user(int i) {
+        return new UserAccount("user" + i, "pbkdf2-sha512$1$c2FsdA$aGFzaA", String.format("+27%09d", 100_000_000 + i), "First", "Last");
+    }
+}
@@ -0,0 +1,95 @@
+package st10485573test;
+
+import st10485573.LongList;
+import st10485573.PhoneNumber;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the PhoneNumber value type.
+ * Checks that the different ways of writing a number all pack to the same long
+ * and that packing and formatting round-trip.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class PhoneNumberTest {
+
+    @Test
+    public void testVariantsPackToTheSameValue() {
+        long expected = PhoneNumber.pack("+27838884567");
+        assertEquals(27838884567L, expected);
+        assertEquals(expected, PhoneNumber.pack("0838884567"));
+        assertEquals(expected, PhoneNumber.pack("083 888 4567"));
+        assertEquals(expected, PhoneNumber.pack("+27 83 888 4567"));
+        assertEquals(expected, PhoneNumber.pack("27838884567"));
+        assertEquals(expected, PhoneNumber.pack("0027838884567"));
+        assertEquals(expected, PhoneNumber.pack("083-888-4567"));
+    }
+
+    @Test
+    public void testInvalidNumbersDoNotPack() {
+        assertEquals(PhoneNumber.NONE, PhoneNumber.pack(null));
+        assertEquals(PhoneNumber.NONE, PhoneNumber.pack(""));
+        assertEquals(PhoneNumber.NONE, PhoneNumber.pack("12345"));
+        assertEquals(PhoneNumber.NONE, PhoneNumber.pack("+2783888456"));   // one digit short
+        assertEquals(PhoneNumber.NONE, PhoneNumber.pack("+448388845670")); // not South African
+        assertEquals(PhoneNumber.NONE, PhoneNumber.pack("1838884567"));    // local form must start with 0
+        assertEquals(PhoneNumber.NONE, PhoneNumber.pack("+27abc884567"));
+        assertNull(PhoneNumber.parse("Mike"));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        String[] numbers = {"+27000000000", "+27123456789", "+27718693002", "+27999999999"};
+        for (String number : numbers) {
+            long packed = PhoneNumber.pack(number);
+            assertEquals(number, PhoneNumber.format(packed));
+            assertEquals(number, PhoneNumber.fromPacked(packed).toString());
+            assertEquals(PhoneNumber.parse(number), PhoneNumber.fromPacked(packed));
+        }
+        assertEquals("718693002", PhoneNumber.parse("0718693002").nationalNumber());
+    }
+
+    @Test
+    public void testEqualityAndHashing() {
+        PhoneNumber a = PhoneNumber.parse("+27718693002");
+        PhoneNumber b = PhoneNumber.parse("071 869 3002");
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, PhoneNumber.parse("+27718693003"));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testPackedKeysUseLessMemoryThanStrings() {
+        // Rough comparison of keeping 200 000 recipients as Strings versus packed longs.
+        // Heap measurements are noisy, so we only print them and check the obvious bound.
+        int count = 200_000;
+        long before = usedMemory();
+        ArrayList<String> asStrings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            asStrings.add("+27" + (100_000_000 + i));
+        }
+        long stringBytes = usedMemory() - before;
+
+        before = usedMemory();
+        LongList asLongs = new LongList(count);
+        for (int i = 0; i < count; i++) {
+            asLongs.add(PhoneNumber.pack(asStrings.get(i)));
+        }
+        long longBytes = usedMemory() - before;
+
+        System.out.printf("Recipients as Strings: ~%d bytes each, packed: ~%d bytes each%n",
+                stringBytes / count, longBytes / count);
+        assertEquals(count, asLongs.size());
+        assertEquals(asStrings.get(count - 1), PhoneNumber.format(asLongs.get(count - 1)));
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
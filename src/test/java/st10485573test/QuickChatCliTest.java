@@ -0,0 +1,116 @@
+package st10485573test;
+
+import st10485573.Login;
+import st10485573.MessageJsonStore;
+import st10485573.PasswordHasher;
+import st10485573.QuickChatCli;
+import st10485573.Registration;
+import st10485573.Report;
+import st10485573.UserDirectory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the headless command line.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class QuickChatCliTest {
+
+    @TempDir
+    Path folder;
+
+    private QuickChatCli cli;
+
+    @BeforeEach
+    public void setUp() {
+        Registration registration = new Registration(new UserDirectory(), new PasswordHasher(1000));
+        cli = new QuickChatCli(registration, new Login(registration), new Report(), new MessageJsonStore(folder),
+                new PrintStream(new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void testCommands() {
+        assertEquals("OK registered kyl_1", cli.execute("register kyl_1 Passw0rd! +27838968976 John Doe"));
+        assertEquals("ERROR registration failed: USERNAME_TAKEN", cli.execute("register kyl_1 Passw0rd! +27838968977 John Doe"));
+        assertEquals("ERROR registration failed: USERNAME,PASSWORD", cli.execute("register kyle!!!!!!! password +27838968978 John Doe"));
+        assertEquals("ERROR please log in first", cli.execute("send +27834557896 \"Did you get the cake?\""));
+        assertTrue(cli.execute("login kyl_1 wrong").startsWith("ERROR Username & Password do not match"));
+        assertEquals("OK logged in as kyl_1", cli.execute("login kyl_1 Passw0rd!"));
+
+        String sent = cli.execute("send +27834557896 \"Did you get the cake?\"");
+        assertTrue(sent.startsWith("OK sent "), sent);
+        assertTrue(cli.execute("store 0838884567 \"Where are you? You are late!\"").startsWith("OK stored "));
+        assertTrue(cli.execute("disregard +27834484567 \"Yohoooo, I am at your gate.\"").startsWith("OK disregarded "));
+        assertEquals("OK 2", cli.execute("query count"));
+        assertTrue(cli.execute("query recipient \"+27 83 888 4567\"").endsWith("- Where are you? You are late!\nOK"));
+        assertEquals("+27838884567 1\nOK", cli.execute("query prefix 08388"));
+        assertEquals("+27834557896 1\n+27838884567 1\nAverage length: Sent 21.0, Stored 28.0\nOK", cli.execute("query top 2"));
+        assertEquals("OK 2 in the last 60 minutes", cli.execute("query last 60"));
+        assertEquals("About 2 recipients and 1 senders from 2 messages\n+27834557896 1\n+27838884567 1\nOK", cli.execute("query estimate"));
+        assertTrue(cli.execute("query recent 1").endsWith(" 0838884567: Where are you? You are late!\nOK"));
+        assertTrue(cli.execute("query longest").contains("Where are you? You are late!"));
+        assertTrue(cli.execute("query id " + sent.split(" ")[2]).startsWith("Message Found!"));
+
+        String hash = sent.split(" ")[3];
+        assertEquals("OK Message \"Did you get the cake?\" successfully deleted.", cli.execute("delete " + hash));
+        assertTrue(cli.execute("delete " + hash).startsWith("ERROR "));
+        assertEquals("OK 1", cli.execute("query count"));
+
+        assertNull(cli.execute("# a comment"));
+        assertNull(cli.execute("   "));
+        assertEquals("OK logged out", cli.execute("logout"));
+        assertEquals("ERROR please log in first", cli.execute("query count"));
+        assertTrue(cli.execute("fly away").startsWith("ERROR unknown command"));
+        assertEquals(24, cli.getCommandCount());
+        assertEquals(7, cli.getErrorCount());
+    }
+
+    @Test
+    public void testTokenize() {
+        assertEquals(List.of("send", "+27834557896", "Hi there"), QuickChatCli.tokenize("  send +27834557896 \"Hi there\" "));
+        assertEquals(List.of("say", "She said \"hi\"", ""), QuickChatCli.tokenize("say \"She said \"\"hi\"\"\" \"\""));
+        assertTrue(QuickChatCli.tokenize("").isEmpty());
+    }
+
+    @Test
+    public void testHeadlessRunLoadsNoSwingClasses() throws Exception {
+        // Build a script like a load test would: register, log in, then lots of sends and queries
+        int sends = 2000;
+        List<String> script = new ArrayList<>();
+        script.add("register kyl_1 Passw0rd! +27838968976 John Doe");
+        script.add("login kyl_1 Passw0rd!");
+        for (int i = 0; i < sends; i++) {
+            script.add("send +2783" + String.format("%07d", i % 500) + " \"Message number " + i + "\"");
+        }
+        script.add("query count");
+        Path scriptFile = folder.resolve("script.txt");
+        Files.write(scriptFile, script);
+
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-verbose:class", "-cp", System.getProperty("java.class.path"),
+                "st10485573.FuniweNgobeniApp", "--headless", "--in-memory", "--script", scriptFile.toString(),
+                "--messages", folder.toString(), "--hash-iterations", "1000")
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+
+        assertEquals(0, process.exitValue(), output.lines().filter(l -> l.startsWith("ERROR")).findFirst().orElse(""));
+        assertTrue(output.contains("OK " + sends + "\n"));
+        List<String> guiClasses = output.lines()
+                .filter(l -> l.contains(" javax.swing.") || l.contains(" java.awt."))
+                .toList();
+        assertTrue(guiClasses.isEmpty(), "GUI classes were loaded: " + guiClasses);
+    }
+}
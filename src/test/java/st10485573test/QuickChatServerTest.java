@@ -0,0 +1,179 @@
+package st10485573test;
+
+import st10485573.MessageBroker;
+import st10485573.MessageJsonStore;
+import st10485573.PasswordHasher;
+import st10485573.QuickChatLoadClient;
+import st10485573.QuickChatProtocol;
+import st10485573.QuickChatServer;
+import st10485573.Registration;
+import st10485573.Report;
+import st10485573.SendPipeline;
+import st10485573.UserDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the TCP server: the protocol, a client session, and a loopback load test.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class QuickChatServerTest {
+
+    @TempDir
+    Path folder;
+
+    private Registration registration;
+    private Report report;
+    private MessageBroker broker;
+    private QuickChatServer server;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        registration = new Registration(new UserDirectory(), new PasswordHasher(1000));
+        assertTrue(registration.register("kyl_1", "Passw0rd!", "+27838968976", "John", "Doe").isSuccessful());
+        report = new Report();
+        broker = new MessageBroker(MessageBroker.DEFAULT_MAILBOX_CAPACITY);
+        MessageJsonStore store = new MessageJsonStore(folder);
+        server = new QuickChatServer(registration, report, store, QuickChatServer.unlimitedThrottle(),
+                new SendPipeline(report, store, broker));
+        server.start(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void testClientSession() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            assertReply(in, out, QuickChatProtocol.ERROR, "ERROR please log in first", QuickChatProtocol.SEND, "+27834557896", "Hi");
+            assertReply(in, out, QuickChatProtocol.OK, "OK logged in as kyl_1", QuickChatProtocol.LOGIN, "kyl_1", "Passw0rd!");
+            // Spaces and quotes need no escaping; every field is sent as it is
+            QuickChatProtocol.Frame sent = request(in, out, QuickChatProtocol.SEND, "+27820005121", "She said \"Did you get the cake?\"");
+            assertEquals(QuickChatProtocol.OK, sent.getCode());
+            assertTrue(sent.getText().startsWith("OK sent "));
+            assertReply(in, out, QuickChatProtocol.OK, "OK 1", QuickChatProtocol.QUERY, "count");
+            // Someone else's mailbox can't be read, and the message stays there for them
+            assertReply(in, out, QuickChatProtocol.ERROR, "ERROR you can only read your own inbox, so inbox takes no number",
+                    QuickChatProtocol.INBOX, "0820005121");
+            assertEquals(1, broker.getQueueDepth("0820005121"));
+            // A note to self arrives in kyl_1's own inbox
+            assertEquals(QuickChatProtocol.OK, request(in, out, QuickChatProtocol.SEND, "0838968976", "Buy the cake").getCode());
+            assertReply(in, out, QuickChatProtocol.OK, "kyl_1: Buy the cake\nOK 0 still waiting", QuickChatProtocol.INBOX);
+            assertReply(in, out, QuickChatProtocol.ERROR, "ERROR unknown request code 99", (byte) 99);
+            assertReply(in, out, QuickChatProtocol.OK, "OK bye", QuickChatProtocol.QUIT);
+            assertNull(QuickChatProtocol.readFrame(in), "The server hangs up after QUIT");
+        }
+        assertEquals(2, report.getMessageCount());
+    }
+
+    @Test
+    public void testQueriesOnlyShowYourOwnMessages() throws IOException {
+        assertTrue(registration.register("jan_1", "Passw0rd!", "+27831234567", "Jane", "Doe").isSuccessful());
+        String secretId;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            assertReply(in, out, QuickChatProtocol.OK, "OK logged in as kyl_1", QuickChatProtocol.LOGIN, "kyl_1", "Passw0rd!");
+            // "OK sent <id> <hash>"
+            secretId = request(in, out, QuickChatProtocol.SEND, "+27820005121", "The surprise party is on Friday").getText().split(" ")[2];
+            assertEquals(QuickChatProtocol.OK, request(in, out, QuickChatProtocol.SEND, "0831234567", "Hi Jane").getCode());
+            assertTrue(request(in, out, QuickChatProtocol.QUERY, "id", secretId).getText().contains("The surprise party"),
+                    "kyl_1 can still see what they sent");
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            assertReply(in, out, QuickChatProtocol.OK, "OK logged in as jan_1", QuickChatProtocol.LOGIN, "jan_1", "Passw0rd!");
+            for (String[] query : new String[][] {
+                    {"report"}, {"sent"}, {"longest"}, {"recent"}, {"id", secretId}, {"recipient", "+27820005121"}}) {
+                QuickChatProtocol.Frame reply = request(in, out, QuickChatProtocol.QUERY, query);
+                assertFalse(reply.getText().contains("surprise party"), "query " + query[0] + ": " + reply.getText());
+            }
+            // Nor who kyl_1 has been writing to
+            assertFalse(request(in, out, QuickChatProtocol.QUERY, "top").getText().contains("820005121"));
+            assertFalse(request(in, out, QuickChatProtocol.QUERY, "prefix", "+2782").getText().contains("820005121"));
+            // A message sent to jan_1 is theirs to see
+            assertTrue(request(in, out, QuickChatProtocol.QUERY, "report").getText().contains("Hi Jane"));
+            // The counts still cover everyone
+            assertReply(in, out, QuickChatProtocol.OK, "OK 2", QuickChatProtocol.QUERY, "count");
+        }
+    }
+
+    @Test
+    public void testConnectionsShareOneSetOfEstimates() throws IOException {
+        int listenersBefore = report.getChangeListenerCount();
+        for (int i = 0; i < 3; i++) {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                assertReply(in, out, QuickChatProtocol.OK, "OK logged in as kyl_1", QuickChatProtocol.LOGIN, "kyl_1", "Passw0rd!");
+                assertEquals(QuickChatProtocol.OK, request(in, out, QuickChatProtocol.SEND, "+27834557896", "Message " + i).getCode());
+                QuickChatProtocol.Frame estimate = request(in, out, QuickChatProtocol.QUERY, "estimate");
+                assertTrue(estimate.getText().startsWith("About 1 recipients and 1 senders from " + (i + 1) + " messages"),
+                        estimate.getText());
+                assertReply(in, out, QuickChatProtocol.OK, "OK bye", QuickChatProtocol.QUIT);
+            }
+        }
+        // One listener for the whole server, not one left behind by every connection
+        assertEquals(listenersBefore + 1, report.getChangeListenerCount());
+        assertEquals(3, server.getStatistics().getMessageCount());
+        server.close();
+        assertEquals(listenersBefore, report.getChangeListenerCount());
+    }
+
+    @Test
+    public void testBadFramesAreRejected() {
+        byte[] tooLong = {0x7f, 0, 0, 0};
+        assertThrows(IOException.class, () -> QuickChatProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(tooLong))));
+        // One field claiming 100 bytes in a 6 byte frame
+        byte[] badField = {0, 0, 0, 6, QuickChatProtocol.SEND, 0, 0, 0, 100, 0};
+        assertThrows(IOException.class, () -> QuickChatProtocol.readFrame(new DataInputStream(new ByteArrayInputStream(badField))));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testLoopbackLoad() throws Exception {
+        int connections = Integer.getInteger("quickchat.bench.sessions", 50);
+        int messages = Integer.getInteger("quickchat.bench.commands", 100);
+        QuickChatLoadClient client = new QuickChatLoadClient(InetAddress.getLoopbackAddress().getHostAddress(), server.getPort());
+        QuickChatLoadClient.Result result = client.run(connections, messages, "kyl_1", "Passw0rd!");
+
+        assertEquals((long) connections * messages, result.getMessagesSent());
+        assertEquals(0, result.getErrors());
+        assertEquals(connections * messages, report.getMessageCount());
+        System.out.println("QuickChat server load test: " + result);
+    }
+
+    private static void assertReply(DataInputStream in, DataOutputStream out, byte expectedCode, String expectedText,
+            byte code, String... fields) throws IOException {
+        QuickChatProtocol.Frame reply = request(in, out, code, fields);
+        assertEquals(expectedText, reply.getText());
+        assertEquals(expectedCode, reply.getCode());
+    }
+
+    private static QuickChatProtocol.Frame request(DataInputStream in, DataOutputStream out, byte code, String... fields) throws IOException {
+        QuickChatProtocol.writeFrame(out, code, fields);
+        out.flush();
+        return QuickChatProtocol.readFrame(in);
+    }
+}
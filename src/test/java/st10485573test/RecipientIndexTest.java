@@ -0,0 +1,91 @@
+package st10485573test;
+
+import st10485573.Message;
+import st10485573.MessageColumn;
+import st10485573.RecipientIndex;
+import st10485573.Report;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for search-as-you-type: RecipientIndex and the prefix search in Report.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class RecipientIndexTest {
+
+    @Test
+    public void testNormalizePrefix() {
+        assertEquals("+2783", RecipientIndex.normalizePrefix("083"));
+        assertEquals("+2783", RecipientIndex.normalizePrefix(" +27 83"));
+        assertEquals("+278", RecipientIndex.normalizePrefix("0027-8"));
+        assertEquals("+27", RecipientIndex.normalizePrefix("27"));
+        assertEquals("Mom", RecipientIndex.normalizePrefix(" Mom "));
+        assertEquals("", RecipientIndex.normalizePrefix("   "));
+    }
+
+    @Test
+    public void testReportKeepsCountsAsMessagesComeAndGo() {
+        Report report = new Report();
+        report.addMessage(new Message("1000000001", "Funiwe", "+27834557896", "Did you get the cake?", "Sent"));
+        report.addMessage(new Message("1000000002", "Funiwe", "+27838884567", "Where are you? You are late!", "Stored"));
+        report.addMessage(new Message("1000000003", "Funiwe", "0838884567", "Ok, I am leaving without you.", "Sent"));
+        report.addMessage(new Message("1000000004", "Funiwe", "+27834484567", "Yohoooo, I am at your gate.", "Disregarded"));
+        report.addMessage(new Message("1000000005", "Funiwe", "Mom", "Call me", "Stored"));
+
+        // Both ways of writing 083 888 4567 count as one recipient, and the draft isn't counted at all
+        assertEquals(List.of(new RecipientIndex.Match("+27834557896", 1), new RecipientIndex.Match("+27838884567", 2)),
+                report.findRecipientsByPrefix("083", 10));
+        assertEquals(List.of(new RecipientIndex.Match("+27838884567", 2)), report.findRecipientsByPrefix("+27 838", 10));
+        assertEquals(1, report.findRecipientsByPrefix("0", 1).size());
+        assertEquals(List.of(new RecipientIndex.Match("Mom", 1)), report.findRecipientsByPrefix("Mo", 10));
+        assertTrue(report.findRecipientsByPrefix("", 10).isEmpty());
+
+        report.deleteMessageByHash(findHash(report, "Did you get the cake?"));
+        assertTrue(report.findRecipientsByPrefix("08345", 10).isEmpty());
+        assertEquals("+27838884567 (2 messages)", report.findRecipientsByPrefix("083", 10).get(0).toString());
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testKeystrokesDoNotScanEveryMessage() {
+        // A million messages with -Dquickchat.bench.messages=1000000; fewer by default to keep the build quick
+        int count = Integer.getInteger("quickchat.bench.messages", 200_000);
+        Report report = new Report();
+        for (int i = 0; i < count; i++) {
+            report.addMessage(new Message(String.format("%010d", i), "Funiwe", String.format("+2783%07d", i % 50_000), "Message " + i, "Sent"));
+        }
+
+        // Typing "0831234567" one key at a time, many times over
+        String typed = "0831234567";
+        int rounds = 2000;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int length = 1; length <= typed.length(); length++) {
+                report.findRecipientsByPrefix(typed.substring(0, length), 10);
+            }
+        }
+        double microsPerKeystroke = (System.nanoTime() - start) / 1e3 / (rounds * typed.length());
+
+        start = System.nanoTime();
+        report.findMessagesByRecipient("+27830012345");
+        double scanMicros = (System.nanoTime() - start) / 1e3;
+
+        assertEquals(10, report.findRecipientsByPrefix("083", 10).size());
+        assertEquals(new RecipientIndex.Match("+27830012345", count / 50_000), report.findRecipientsByPrefix("0830012345", 10).get(0));
+        System.out.printf("Recipient prefix search: %,d messages, %.1f us per keystroke, full scan %.0f us%n",
+                count, microsPerKeystroke, scanMicros);
+    }
+
+    private static String findHash(Report report, String payload) {
+        String[][] rows = report.getRows(report.findRows(null, null, null, true), 0, report.getMessageCount());
+        for (String[] row : rows) {
+            if (payload.equals(row[MessageColumn.MESSAGE.ordinal()])) {
+                return row[MessageColumn.HASH.ordinal()];
+            }
+        }
+        throw new AssertionError("No message " + payload);
+    }
+}
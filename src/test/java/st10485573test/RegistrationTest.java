@@ -23,7 +23,12 @@
  */
 package st10485573test;
 
+import st10485573.PasswordHasher;
 import st10485573.Registration;
+import st10485573.UserDirectory;
+import st10485573.RegistrationResult;
+import st10485573.RegistrationRule;
+import java.util.EnumSet;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
@@ -64,7 +69,7 @@ public class RegistrationTest {
 
     @BeforeEach
     public void setUp() {
-        registration = new Registration();
+        registration = new Registration(new UserDirectory(), new PasswordHasher(1000));
     }
 
     @Test
@@ -123,4 +128,49 @@ public class RegistrationTest {
         assertTrue(result.contains(LAST_NAME_ERROR));
         assertTrue(result.contains(REGISTRATION_ABORTED));
     }
+
+    @Test
+    public void testDuplicateUsernameIsRejected() {
+        registration.registerUser(VALID_USERNAME, VALID_PASSWORD, VALID_CELL_PHONE, VALID_FIRST_NAME, VALID_LAST_NAME);
+        String result = registration.registerUser(VALID_USERNAME, VALID_PASSWORD, "+27987654321", VALID_FIRST_NAME, VALID_LAST_NAME);
+        assertTrue(result.contains("Username is already taken"));
+        assertTrue(result.contains(REGISTRATION_ABORTED));
+    }
+
+    @Test
+    public void testDuplicateCellPhoneIsRejected() {
+        registration.registerUser(VALID_USERNAME, VALID_PASSWORD, VALID_CELL_PHONE, VALID_FIRST_NAME, VALID_LAST_NAME);
+        String result = registration.registerUser("oth_1", VALID_PASSWORD, VALID_CELL_PHONE, VALID_FIRST_NAME, VALID_LAST_NAME);
+        assertTrue(result.contains("Cellphone number is already registered"));
+        assertTrue(result.contains(REGISTRATION_ABORTED));
+        assertEquals(VALID_USERNAME, registration.getUserName());
+    }
+
+    @Test
+    public void testStructuredResultForValidRegistration() {
+        RegistrationResult result = registration.register(VALID_USERNAME, VALID_PASSWORD, VALID_CELL_PHONE, VALID_FIRST_NAME, VALID_LAST_NAME);
+        assertTrue(result.isSuccessful());
+        assertTrue(result.getFailedRules().isEmpty());
+        assertSame(RegistrationResult.SUCCESS, result);
+    }
+
+    @Test
+    public void testStructuredResultListsFailedRules() {
+        RegistrationResult result = registration.register(INVALID_USERNAME, VALID_PASSWORD, INVALID_CELL_PHONE, VALID_FIRST_NAME, INVALID_LAST_NAME);
+        assertFalse(result.isSuccessful());
+        assertEquals(EnumSet.of(RegistrationRule.USERNAME, RegistrationRule.CELL_PHONE, RegistrationRule.LAST_NAME), result.getFailedRules());
+
+        // The text is the same as the old registerUser() feedback
+        assertEquals(USERNAME_ERROR + "\n" + PASSWORD_SUCCESS + "\n" + CELL_PHONE_ERROR + "\n"
+                + FIRST_NAME_SUCCESS + "\n" + LAST_NAME_ERROR + ".\n" + REGISTRATION_ABORTED, result.getFeedback());
+    }
+
+    @Test
+    public void testStructuredResultForTakenUsername() {
+        registration.register(VALID_USERNAME, VALID_PASSWORD, VALID_CELL_PHONE, VALID_FIRST_NAME, VALID_LAST_NAME);
+        RegistrationResult result = registration.register(VALID_USERNAME, VALID_PASSWORD, "+27987654321", VALID_FIRST_NAME, VALID_LAST_NAME);
+        assertFalse(result.isSuccessful());
+        assertTrue(result.hasFailed(RegistrationRule.USERNAME_TAKEN));
+        assertEquals(1, result.getFailedRules().size());
+    }
 }
@@ -0,0 +1,106 @@
+package st10485573test;
+
+import st10485573.RegistrationValidator;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.util.Random;
+import java.util.regex.Pattern;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the RegistrationValidator.
+ * Besides the normal cases, the validator is compared against the old regular
+ * expressions on random input, and timed against them for bulk onboarding.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class RegistrationValidatorTest {
+
+    // The rules as Registration used to check them
+    private static final Pattern CAPITAL = Pattern.compile(".*[A-Z].*");
+    private static final Pattern DIGIT = Pattern.compile(".*[0-9].*");
+    private static final Pattern SPECIAL = Pattern.compile(".*[!@#$%^&*()].*");
+    private static final Pattern CELL = Pattern.compile("^\\+27[0-9]{9}$");
+    private static final Pattern NAME = Pattern.compile("^[a-zA-Z]+$");
+
+    @Test
+    public void testValidFieldsGiveEmptyMask() {
+        assertEquals(0, RegistrationValidator.validate("kyl_1", "Passw0rd!", "+27123456789", "Funiwe", "Ngobeni"));
+    }
+
+    @Test
+    public void testEachFailedRuleSetsItsOwnBit() {
+        assertEquals(RegistrationValidator.USERNAME,
+                RegistrationValidator.validate("kyle", "Passw0rd!", "+27123456789", "Funiwe", "Ngobeni"));
+        assertEquals(RegistrationValidator.PASSWORD,
+                RegistrationValidator.validate("kyl_1", "password", "+27123456789", "Funiwe", "Ngobeni"));
+        assertEquals(RegistrationValidator.CELL_PHONE,
+                RegistrationValidator.validate("kyl_1", "Passw0rd!", "0123456789", "Funiwe", "Ngobeni"));
+        assertEquals(RegistrationValidator.FIRST_NAME | RegistrationValidator.LAST_NAME,
+                RegistrationValidator.validate("kyl_1", "Passw0rd!", "+27123456789", "Funiwe123", ""));
+        assertEquals(0b11111, RegistrationValidator.validate(null, null, null, null, null));
+    }
+
+    @Test
+    public void testMatchesTheOldRegularExpressions() {
+        Random random = new Random(42);
+        String alphabet = "aZ9_!+ x2@7B";
+        for (int i = 0; i < 50_000; i++) {
+            String text = randomText(random, alphabet, 14);
+            String cell = "+27" + randomText(random, "0123456789a", 9 + random.nextInt(2) - random.nextInt(2));
+
+            assertEquals(oldPasswordCheck(text), RegistrationValidator.isPasswordValid(text), text);
+            assertEquals(CELL.matcher(cell).matches(), RegistrationValidator.isCellPhoneNumberValid(cell), cell);
+            assertEquals(CELL.matcher(text).matches(), RegistrationValidator.isCellPhoneNumberValid(text), text);
+            assertEquals(!text.trim().isEmpty() && NAME.matcher(text).matches(), RegistrationValidator.isNameValid(text), text);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testBulkOnboardingCost() {
+        // Times validating many registrations the old way and the new way.
+        // This only prints the numbers; timings on a shared build machine vary too much to assert on.
+        int registrations = 200_000;
+        String[][] rows = new String[registrations][];
+        for (int i = 0; i < registrations; i++) {
+            rows[i] = new String[] {"u_" + (i % 1000), "Passw0rd!" + i, "+27" + (100_000_000 + i), "First", "Last"};
+        }
+
+        int oldFailures = 0;
+        long start = System.nanoTime();
+        for (String[] row : rows) {
+            boolean ok = row[0].length() <= 5 && row[0].contains("_")
+                    && row[1].length() >= 8 && row[1].matches(".*[A-Z].*") && row[1].matches(".*[0-9].*") && row[1].matches(".*[!@#$%^&*()].*")
+                    && Pattern.matches("^\\+27[0-9]{9}$", row[2])
+                    && row[3].matches("^[a-zA-Z]+$") && row[4].matches("^[a-zA-Z]+$");
+            if (!ok) oldFailures++;
+        }
+        long oldNanos = System.nanoTime() - start;
+
+        int newFailures = 0;
+        start = System.nanoTime();
+        for (String[] row : rows) {
+            if (RegistrationValidator.validate(row[0], row[1], row[2], row[3], row[4]) != 0) newFailures++;
+        }
+        long newNanos = System.nanoTime() - start;
+
+        assertEquals(oldFailures, newFailures);
+        System.out.printf("Registration checks: regex %.0f ns/registration, single pass %.0f ns/registration%n",
+                (double) oldNanos / registrations, (double) newNanos / registrations);
+    }
+
+    private static boolean oldPasswordCheck(String password) {
+        return password.length() >= 8 && CAPITAL.matcher(password).matches()
+                && DIGIT.matcher(password).matches() && SPECIAL.matcher(password).matches();
+    }
+
+    private static String randomText(Random random, String alphabet, int maxLength) {
+        int length = maxLength <= 0 ? 0 : random.nextInt(maxLength + 1);
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package st10485573test;
+
+import st10485573.Message;
+import st10485573.ReplicationFollower;
+import st10485573.ReplicationPrimary;
+import st10485573.Report;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for replicating a Report to a follower over loopback:
+ * catching up, carrying on after a restart, and a throughput check.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class ReplicationTest {
+
+    @TempDir
+    Path folder;
+
+    private Report report;
+    private ReplicationPrimary primary;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        report = new Report();
+        // One message from before replication started, which the follower must still get
+        report.addMessage(new Message("1000000001", "Funiwe", "+27834557896", "Did you get the cake?", "Sent"));
+        primary = new ReplicationPrimary(report);
+        primary.start(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        primary.close();
+    }
+
+    @Test
+    public void testFollowerCatchesUpAndResumes() throws Exception {
+        Message late = new Message("1000000002", "Funiwe", "+27838884567", "Where are you? You are late! I have asked you to be on time.", "Stored");
+        report.addMessage(late);
+        report.addMessage(new Message("1000000003", "Funiwe", "+27834484567", "Yohoooo, I am at your gate.", "Disregarded"));
+
+        try (ReplicationFollower follower = new ReplicationFollower(folder)) {
+            follower.connect(InetAddress.getLoopbackAddress().getHostAddress(), primary.getPort());
+            assertTrue(follower.awaitOffset(primary.getEpoch(), primary.getLatestOffset(), 10_000));
+            assertEquals(primary.getEpoch(), follower.getEpoch());
+            assertEquals(2, follower.getMessageCount(), "Drafts aren't replicated");
+            assertEquals(report.generateFullReport(), follower.generateFullReport());
+        }
+
+        // While the follower is down: a delete, a status change and a new message
+        report.deleteMessageByHash(late.getMessageHash());
+        assertTrue(report.updateMessageStatus("1000000001", "Stored"));
+        report.addMessage(new Message("1000000004", "Funiwe", "0838884567", "It is dinner time!", "Sent"));
+
+        // Pretend the follower crashed half way through writing a record
+        Files.write(folder.resolve(ReplicationFollower.LOG_FILE), new byte[] {0, 0, 0}, StandardOpenOption.APPEND);
+
+        try (ReplicationFollower follower = new ReplicationFollower(folder)) {
+            assertEquals(2, follower.getAppliedOffset(), "It picks up from its own log, torn record cut off");
+            follower.connect(InetAddress.getLoopbackAddress().getHostAddress(), primary.getPort());
+            assertTrue(follower.awaitOffset(primary.getEpoch(), primary.getLatestOffset(), 10_000));
+            assertEquals(report.getMessageCount(), follower.getMessageCount());
+            assertEquals(report.generateFullReport(), follower.generateFullReport());
+            assertEquals(report.displaySentMessageDetails(), follower.displaySentMessageDetails());
+            assertEquals(report.findMessagesByRecipient("0838884567"), follower.findMessagesByRecipient("0838884567"));
+        }
+    }
+
+    @Test
+    public void testNewPrimaryStartsTheCopyAgain() throws Exception {
+        try (ReplicationFollower follower = new ReplicationFollower(folder)) {
+            follower.connect(InetAddress.getLoopbackAddress().getHostAddress(), primary.getPort());
+            assertTrue(follower.awaitOffset(primary.getEpoch(), primary.getLatestOffset(), 10_000));
+        }
+
+        // A restarted primary has a new epoch and different messages
+        Report other = new Report();
+        other.addMessage(new Message("2000000001", "Funiwe", "+27838968976", "Hello from the new primary", "Sent"));
+        try (ReplicationPrimary restarted = new ReplicationPrimary(other);
+                ReplicationFollower follower = new ReplicationFollower(folder)) {
+            restarted.start(InetAddress.getLoopbackAddress(), 0);
+            follower.connect(InetAddress.getLoopbackAddress().getHostAddress(), restarted.getPort());
+            assertTrue(follower.awaitOffset(restarted.getEpoch(), restarted.getLatestOffset(), 10_000));
+            assertEquals(restarted.getEpoch(), follower.getEpoch());
+            assertEquals(other.generateFullReport(), follower.generateFullReport());
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testReplicationThroughput() throws Exception {
+        int count = Integer.getInteger("quickchat.bench.messages", 20_000);
+        try (ReplicationFollower follower = new ReplicationFollower(folder)) {
+            follower.connect(InetAddress.getLoopbackAddress().getHostAddress(), primary.getPort());
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                report.addMessage(new Message(String.format("%010d", i), "Funiwe", String.format("+2783%07d", i % 5_000),
+                        "Message number " + i, "Sent"));
+            }
+            assertTrue(follower.awaitOffset(primary.getEpoch(), primary.getLatestOffset(), 60_000));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            assertEquals(report.getMessageCount(), follower.getMessageCount());
+            System.out.printf("Replication: %,d changes in %.2f s (%,.0f changes/s), primary: %s%n",
+                    count, seconds, count / seconds, primary.getStatistics());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package st10485573test;
+
+import st10485573.Message;
+import st10485573.PartitionedReport;
+import st10485573.Report;
+import st10485573.ReportAnalytics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the message analytics: the counts match a plain loop, whether the
+ * work is split up or not, plus a benchmark (run with mvn -Pbench test).
+ *
+ * @author Funiwe Ngobeni
+ */
+public class ReportAnalyticsTest {
+
+    @Test
+    public void testSmallReport() {
+        Report report = new Report();
+        report.addMessage(new Message("id1", "Funiwe", "+27834557896", "Did you get the cake?", "Sent"));
+        report.addMessage(new Message("id2", "Funiwe", "+27838884567", "Where are you? You are late! I have asked you to be on time.", "Stored"));
+        report.addMessage(new Message("id3", "Funiwe", "+27834484567", "Yohoooo, I am at your gate.", "Disregarded"));
+        report.addMessage(new Message("id4", "Kyle", "0838884567", "It is dinner time!", "Sent"));
+        report.addMessage(new Message("id5", "Funiwe", "+27838884567", "Ok, I am leaving without you.", "Stored"));
+        report.addMessage(new Message("id6", "Kyle", "Mom", "Hi Mom", "Sent"));
+
+        ReportAnalytics.Summary summary = report.summarize();
+        assertEquals(5, summary.getMessageCount(), "Drafts aren't counted");
+        // 0838884567 and +27838884567 are the same number
+        assertEquals(3, summary.getMessagesTo("083 888 4567"));
+        assertEquals(1, summary.getMessagesTo("Mom"));
+        assertEquals(Map.of("Funiwe", 3L, "Kyle", 2L), summary.getMessagesPerSender());
+        assertEquals(List.of(Map.entry("+27838884567", 3L), Map.entry("+27834557896", 1L)), summary.getTopRecipients(2));
+        assertEquals((21 + 18 + 6) / 3.0, summary.getAveragePayloadLength("Sent"), 1e-9);
+        assertEquals((60 + 29) / 2.0, summary.getAveragePayloadLength("Stored"), 1e-9);
+        assertEquals(0, new Report().summarize().getAveragePayloadLength("Sent"));
+
+        // A message loaded from a JSON file with no sender is counted under ""
+        report.addMessage(new Message("id7", null, "+27834557896", "No sender", "Sent"));
+        summary = report.summarize();
+        assertEquals(Map.of("Funiwe", 3L, "Kyle", 2L, "", 1L), summary.getMessagesPerSender());
+        assertEquals(1, summary.getMessagesFrom(null));
+    }
+
+    @Test
+    public void testParallelCountsMatchAPlainLoop() {
+        // Enough rows to be split across the pool several times
+        int count = 300_000;
+        Report report = new Report();
+        PartitionedReport partitioned = new PartitionedReport(4);
+        Map<String, Long> perRecipient = new HashMap<>();
+        Map<String, Long> perSender = new HashMap<>();
+        long sentLength = 0;
+        long sent = 0;
+        Random random = new Random(7);
+        for (int i = 0; i < count; i++) {
+            // Mostly cell numbers, and some names that aren't
+            String recipient = i % 10 == 0 ? "Friend " + random.nextInt(50) : String.format("+2783%07d", random.nextInt(20_000));
+            String sender = "user" + random.nextInt(30);
+            String payload = "x".repeat(1 + random.nextInt(100));
+            String status = i % 3 == 0 ? "Stored" : "Sent";
+            report.addMessage(new Message(String.format("%010d", i), sender, recipient, payload, status));
+            partitioned.addMessage(new Message(String.format("%010d", i), sender, recipient, payload, status));
+            perRecipient.merge(recipient, 1L, Long::sum);
+            perSender.merge(sender, 1L, Long::sum);
+            if ("Sent".equals(status)) {
+                sent++;
+                sentLength += payload.length();
+            }
+        }
+
+        ReportAnalytics.Summary summary = report.summarize(new ForkJoinPool(4));
+        assertEquals(perRecipient, summary.getMessagesPerRecipient());
+        assertEquals(perSender, summary.getMessagesPerSender());
+        assertEquals((double) sentLength / sent, summary.getAveragePayloadLength("Sent"), 1e-9);
+
+        ReportAnalytics.Summary fromPartitions = partitioned.summarize();
+        assertEquals(summary.getMessagesPerRecipient(), fromPartitions.getMessagesPerRecipient());
+        assertEquals(summary.getTopRecipients(10), fromPartitions.getTopRecipients(10));
+        assertEquals(summary.getAveragePayloadLength("Stored"), fromPartitions.getAveragePayloadLength("Stored"), 1e-9);
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testAnalyticsSpeed() {
+        // Tens of millions with -Dquickchat.bench.messages=20000000 (and a big heap); fewer by default
+        int count = Integer.getInteger("quickchat.bench.messages", 1_000_000);
+        Report report = new Report();
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            report.addMessage(new Message(String.format("%010d", i), "user" + random.nextInt(1_000),
+                    String.format("+2783%07d", random.nextInt(100_000)), "Message number " + i, i % 3 == 0 ? "Stored" : "Sent"));
+        }
+
+        StringBuilder results = new StringBuilder("Report analytics (" + count + " messages):");
+        for (int threads : new int[] {1, Runtime.getRuntime().availableProcessors()}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            report.summarize(pool); // Warm up
+            long start = System.nanoTime();
+            ReportAnalytics.Summary summary = report.summarize(pool);
+            double millis = (System.nanoTime() - start) / 1e6;
+            assertEquals(count, summary.getMessageCount());
+            results.append(String.format("%n  %d thread(s): %.0f ms, %,.0f rows/s", threads, millis, count / millis * 1000));
+            pool.shutdown();
+        }
+        System.out.println(results);
+    }
+}
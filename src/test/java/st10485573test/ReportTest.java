@@ -4,6 +4,7 @@ import st10485573.Message;
 import st10485573.Report;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -67,13 +68,24 @@ public class ReportTest {
 
     @Test
     public void testSearchAllMessagesForRecipient() {
-        // Search for all messages sent or stored to +27838884567
+        // Search for all messages sent or stored to +27838884567.
+        // msg4 was addressed to 0838884567, which is the same number written the local way.
         String expected = "--- Messages for +27838884567 ---\n" +
                           "- Where are you? You are late! I have asked you to be on time.\n" +
+                          "- It is dinner time!\n" +
                           "- Ok, I am leaving without you.\n";
         assertEquals(expected, report.findMessagesByRecipient("+27838884567"));
     }
 
+    @Test
+    public void testSearchForRecipientIgnoresNumberFormatting() {
+        String expected = "--- Messages for 083 888 4567 ---\n" +
+                          "- Where are you? You are late! I have asked you to be on time.\n" +
+                          "- It is dinner time!\n" +
+                          "- Ok, I am leaving without you.\n";
+        assertEquals(expected, report.findMessagesByRecipient("083 888 4567"));
+    }
+
     @Test
     public void testDeleteMessageUsingMessageHash() {
         // Hash for msg2: ID part is "id", so starts with "ID". Sender is Funiwe. First/last words are WHERE/time.
@@ -84,21 +96,107 @@ public class ReportTest {
 
         // Now, if we search for that recipient again, msg2 should be gone
         String expectedAfterDelete = "--- Messages for +27838884567 ---\n" +
+                                     "- It is dinner time!\n" +
                                      "- Ok, I am leaving without you.\n";
         assertEquals(expectedAfterDelete, report.findMessagesByRecipient("+27838884567"));
     }
 
+    @Test
+    public void testRecipientsShowTheWayTheyWereTyped() {
+        // Only "0838884567" and "Mom" need their own text kept; the +27 ones are rebuilt from the number.
+        // msg3 is Disregarded, so it sits in the drafts and never shows up here.
+        report.addMessage(new Message("id6", "Funiwe", "Mom", "Home soon", "Sent"));
+        report.deleteMessageByHash(msg2.getMessageHash());
+
+        long[] rows = report.findRows(null, null, null, true);
+        String[][] values = report.getRows(rows, 0, rows.length);
+        String[] expected = {"+27834557896", "0838884567", "+27838884567", "Mom"};
+        assertEquals(expected.length, values.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], values[i][2]);
+        }
+        assertEquals("Message Found!\nRecipient: Mom\nMessage: Home soon", report.findMessageById("id6"));
+    }
+
+    @Test
+    public void testDisregardedMessageGoesToDraftBuffer() {
+        // msg3 was Disregarded, so it is only kept as a recent draft
+        assertEquals(1, report.getRecentDrafts().size());
+        assertSame(msg3, report.getRecentDrafts().get(0));
+        assertEquals("Message with ID [id3] not found.", report.findMessageById("id3"));
+
+        // Recovering it takes it out of the buffer
+        assertSame(msg3, report.recoverDraft("id3"));
+        assertTrue(report.getRecentDrafts().isEmpty());
+        assertNull(report.recoverDraft("id3"));
+    }
+
+    @Test
+    public void testDraftBufferCountsOverwrittenDrafts() {
+        Report smallReport = new Report(2);
+        smallReport.addMessage(new Message("d1", "Funiwe", "+27834557896", "one", "Disregarded"));
+        smallReport.addMessage(new Message("d2", "Funiwe", "+27834557896", "two", "New"));
+        smallReport.addMessage(new Message("d3", "Funiwe", "+27834557896", "three", "Disregarded"));
+
+        assertEquals(2, smallReport.getRecentDrafts().size());
+        assertEquals("d2", smallReport.getRecentDrafts().get(0).getMessageID());
+        assertEquals("d3", smallReport.getRecentDrafts().get(1).getMessageID());
+        assertEquals(1, smallReport.getOverwrittenDraftCount());
+        assertEquals("No messages to compare.", smallReport.getLongestMessage());
+    }
+
     @Test
     public void testDisplayReport() {
+        // msg3 was Disregarded and never stored, so msg4 is the third stored message
         String expected = "--- Full Message Report ---\n\n" +
                           "Message #1\n" +
                           "  Hash: " + msg1.getMessageHash() + "\n" +
                           "  Recipient: +27834557896\n" +
                           "  Message: Did you get the cake?\n\n" +
-                          "Message #4\n" +
+                          "Message #3\n" +
                           "  Hash: " + msg4.getMessageHash() + "\n" +
                           "  Recipient: 0838884567\n" +
                           "  Message: It is dinner time!\n\n";
         assertEquals(expected, report.generateFullReport());
     }
+
+    @Test
+    public void testStatusChangesKeepTheCountsRight() {
+        assertEquals(2, report.getStatusCount("Sent"));
+        assertEquals(2, report.getStatusCount("Stored"));
+        assertEquals(0, report.getStatusCount("Disregarded"), "Drafts aren't kept in the reports");
+
+        assertTrue(report.updateMessageStatus("id2", "Sent"));
+        assertFalse(report.updateMessageStatus("nope", "Sent"));
+        assertThrows(IllegalArgumentException.class, () -> report.updateMessageStatus("id1", "Disregarded"));
+        assertEquals(3, report.getStatusCount("Sent"));
+        assertEquals(1, report.getStatusCount("Stored"));
+
+        // Someone else's stored message stays put
+        report.addMessage(new Message("id6", "Kyle", "+27838968976", "Not from Funiwe", "Stored"));
+        List<Message> sent = report.sendAllStored("Funiwe");
+        assertEquals(1, sent.size());
+        assertEquals("id5", sent.get(0).getMessageID());
+        assertEquals("Sent", sent.get(0).getMessageStatus());
+        assertEquals(4, report.getStatusCount("Sent"));
+        assertEquals(1, report.getStatusCount("Stored"));
+        assertTrue(report.sendAllStored("Funiwe").isEmpty(), "Nothing left to send");
+        assertTrue(report.displaySentMessageDetails().contains("Recipient: +27838884567"));
+
+        report.deleteMessageByHash(msg1.getMessageHash());
+        assertEquals(3, report.getStatusCount("Sent"));
+    }
+
+    @Test
+    public void testSendAllStoredSkipsMessagesWithNoSender() {
+        // Messages loaded from JSON files might be missing their sender
+        Report loaded = new Report();
+        loaded.addMessage(new Message("id1", null, "+27834557896", "Did you get the cake?", "Stored"));
+        loaded.addMessage(new Message("id2", "bob", "+27834557896", "On my way", "Stored"));
+
+        List<Message> sent = loaded.sendAllStored("bob");
+        assertEquals(1, sent.size());
+        assertEquals("id2", sent.get(0).getMessageID());
+        assertEquals(1, loaded.getStatusCount("Stored"));
+    }
 }
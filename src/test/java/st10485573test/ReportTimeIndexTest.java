@@ -0,0 +1,114 @@
+package st10485573test;
+
+import st10485573.Message;
+import st10485573.MessageColumn;
+import st10485573.Report;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the time index in Report: range searches, counts per period,
+ * the newest messages, and a comparison with going through every message.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class ReportTimeIndexTest {
+
+    private static final long MINUTE = 60_000;
+    private static final long HOUR = 60 * MINUTE;
+    // 2025-01-01 00:00 UTC, so the numbers in the test are easy to follow
+    private static final long START = 1_735_689_600_000L;
+
+    @Test
+    public void testTimeQueries() {
+        Report report = new Report();
+        report.addMessage(new Message("id1", "Funiwe", "+27834557896", "Did you get the cake?", "Sent", START + 5 * MINUTE));
+        report.addMessage(new Message("id2", "Funiwe", "+27838884567", "Where are you?", "Stored", START + 65 * MINUTE));
+        report.addMessage(new Message("id3", "Funiwe", "+27834484567", "A draft", "Disregarded", START + 66 * MINUTE));
+        report.addMessage(new Message("id4", "Funiwe", "0838884567", "It is dinner time!", "Sent", START + 65 * MINUTE + 30_000));
+        // Loaded late from an old file: older than the others but added last
+        report.addMessage(new Message("id5", "Funiwe", "+27838884567", "From last year", "Sent", START - 2 * HOUR));
+
+        assertEquals(List.of("id2", "id4"), ids(report.findMessagesBetween(START + HOUR, START + 2 * HOUR)));
+        // Half way through a minute: only the part of the bucket inside the range counts
+        assertEquals(List.of("id4"), ids(report.findMessagesBetween(START + 65 * MINUTE + 1, START + 2 * HOUR)));
+        assertEquals(1, report.countMessagesBetween(START + 65 * MINUTE + 1, START + 2 * HOUR));
+        assertEquals(4, report.countMessagesBetween(Long.MIN_VALUE / 2, Long.MAX_VALUE / 2));
+        assertEquals(0, report.countMessagesBetween(START + HOUR, START));
+
+        assertEquals(Map.of(START - 2 * HOUR, 1, START, 1, START + HOUR, 2),
+                report.countMessagesPer(HOUR, START - 3 * HOUR, START + 3 * HOUR));
+        assertThrows(IllegalArgumentException.class, () -> report.countMessagesPer(1_000, START, START + HOUR));
+
+        assertEquals(List.of("id4", "id2", "id1"), ids(report.getMostRecent(3)));
+        assertEquals(START + 5 * MINUTE, report.getMostRecent(3).get(2).getTimestampMillis());
+        assertEquals(List.of("id4", "id2", "id1", "id5"), ids(report.getMostRecent(10)));
+
+        // The browser can sort by time too
+        assertArrayEquals(new long[] {3, 0, 1, 2}, report.findRows(null, null, MessageColumn.TIME, true));
+
+        // Deleting takes the message out of its bucket
+        report.deleteMessageByHash(report.getMostRecent(1).get(0).getMessageHash());
+        assertEquals(List.of("id2"), ids(report.findMessagesBetween(START + HOUR, START + 2 * HOUR)));
+        assertEquals(List.of("id2", "id1", "id5"), ids(report.getMostRecent(3)));
+    }
+
+    private static List<String> ids(List<Message> messages) {
+        List<String> ids = new ArrayList<>();
+        for (Message msg : messages) {
+            ids.add(msg.getMessageID());
+        }
+        return ids;
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testIndexedQueriesAgainstAFullScan() {
+        // A month of messages, a few a minute
+        int count = Integer.getInteger("quickchat.bench.messages", 200_000);
+        long span = 30L * 24 * HOUR;
+        Report report = new Report();
+        long[] times = new long[count];
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            times[i] = START + span * i / count + random.nextInt(30_000);
+            report.addMessage(new Message(String.format("%010d", i), "Funiwe", String.format("+2783%07d", random.nextInt(100_000)),
+                    "Message number " + i, "Sent", times[i]));
+        }
+        long lastHourStart = START + span - HOUR;
+
+        long start = System.nanoTime();
+        int scanned = 0;
+        for (int repeat = 0; repeat < 100; repeat++) {
+            scanned = 0;
+            for (long time : times) {
+                if (time >= lastHourStart && time < START + span) {
+                    scanned++;
+                }
+            }
+        }
+        double scanMicros = (System.nanoTime() - start) / 1e3 / 100;
+
+        start = System.nanoTime();
+        int counted = 0;
+        for (int repeat = 0; repeat < 100; repeat++) {
+            counted = report.countMessagesBetween(lastHourStart, START + span);
+        }
+        double indexMicros = (System.nanoTime() - start) / 1e3 / 100;
+
+        start = System.nanoTime();
+        List<Message> newest = report.getMostRecent(20);
+        double recentMicros = (System.nanoTime() - start) / 1e3;
+
+        assertEquals(scanned, counted);
+        assertEquals(20, newest.size());
+        assertTrue(newest.get(0).getTimestampMillis() >= newest.get(19).getTimestampMillis());
+        System.out.printf("Time index (%,d messages): last hour count %.1f us (scan of a plain array %.0f us), newest 20 in %.0f us%n",
+                count, indexMicros, scanMicros, recentMicros);
+    }
+}
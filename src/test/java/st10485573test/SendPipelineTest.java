@@ -0,0 +1,253 @@
+package st10485573test;
+
+import st10485573.Message;
+import st10485573.MessageBroker;
+import st10485573.MessageJsonStore;
+import st10485573.MessagingService;
+import st10485573.Report;
+import st10485573.SendPipeline;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for SendPipeline: messages come out the same as MessagingService.send,
+ * the three overflow policies, and a batch size benchmark.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class SendPipelineTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void testMessagesGoThroughEveryStage() throws Exception {
+        Report report = new Report();
+        try (SendPipeline pipeline = new SendPipeline(report, new MessageJsonStore(folder), new MessageBroker(MessageBroker.DEFAULT_MAILBOX_CAPACITY))) {
+            MessagingService messaging = new MessagingService("Funiwe", pipeline);
+            Message sent = messaging.send(messaging.createMessage("+27834557896", "Did you get the cake?"));
+            assertEquals("Sent", sent.getMessageStatus());
+            assertEquals(sent.getMessageID().substring(0, 2) + ":F:DIDCAKE?", sent.getMessageHash());
+            assertEquals(1, report.getMessageCount());
+            assertTrue(Files.exists(folder.resolve(MessageJsonStore.fileNameFor(sent.getMessageID()))));
+            assertEquals(1, messaging.receiveMessages("+27834557896").size());
+
+            // Too long for a message: it fails validation and never reaches the report
+            IllegalArgumentException tooLong = assertThrows(IllegalArgumentException.class,
+                    () -> messaging.store(messaging.createMessage("+27838884567", "x".repeat(MessagingService.MAX_PAYLOAD_LENGTH + 1))));
+            assertTrue(tooLong.getMessage().contains("at most 250 characters"));
+            assertEquals(1, report.getMessageCount());
+            assertEquals(1, pipeline.getFailedCount());
+        }
+    }
+
+    @Test
+    public void testSendAllStoredSavesThroughThePersistStage() throws Exception {
+        Report report = new Report();
+        MessageBroker broker = new MessageBroker(MessageBroker.DEFAULT_MAILBOX_CAPACITY);
+        try (SendPipeline pipeline = new SendPipeline(report, new MessageJsonStore(folder), broker, 4, 4, SendPipeline.OverflowPolicy.FAIL_FAST)) {
+            MessagingService messaging = new MessagingService("Funiwe", pipeline);
+            List<Message> stored = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                stored.add(messaging.store(messaging.createMessage("+27834557896", "Message " + i)));
+            }
+            // Far more than the queues hold, but the saves wait for room instead of failing fast
+            assertEquals(40, messaging.sendAllStored());
+            assertEquals(80, pipeline.getSubmittedCount(), "Stored once and saved again as Sent");
+            assertEquals(40, report.getStatusCount("Sent"));
+            assertEquals(40, report.getMessageCount(), "They were already in the report, so they aren't added again");
+            assertEquals(40, messaging.receiveMessages("+27834557896").size());
+            MessageJsonStore store = new MessageJsonStore(folder);
+            for (Message msg : stored) {
+                assertEquals("Sent", store.load(folder.resolve(MessageJsonStore.fileNameFor(msg.getMessageID()))).getMessageStatus());
+            }
+        }
+    }
+
+    @Test
+    public void testOverflowPolicies() throws Exception {
+        for (SendPipeline.OverflowPolicy policy : SendPipeline.OverflowPolicy.values()) {
+            CountDownLatch diskReady = new CountDownLatch(1);
+            // A disk that hangs until we say so, so the queues fill up
+            MessageJsonStore slowStore = new MessageJsonStore(folder) {
+                @Override
+                public Path save(Message msg) throws IOException {
+                    try {
+                        diskReady.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return super.save(msg);
+                }
+            };
+            Report report = new Report();
+            SendPipeline pipeline = new SendPipeline(report, slowStore, new MessageBroker(MessageBroker.DEFAULT_MAILBOX_CAPACITY), 4, 1, policy);
+            List<CompletableFuture<Message>> accepted = new CopyOnWriteArrayList<>();
+            // Far more than fits in four queues of 4 while the disk is stuck
+            int tries = 100;
+
+            if (policy == SendPipeline.OverflowPolicy.BLOCK) {
+                Thread producer = Thread.ofVirtual().start(() -> {
+                    for (int i = 0; i < tries; i++) {
+                        accepted.add(pipeline.submit(message(i), "Stored"));
+                    }
+                });
+                producer.join(300);
+                assertTrue(producer.isAlive(), "The producer waits while the pipeline is full");
+                diskReady.countDown();
+                producer.join();
+            } else {
+                int turnedAway = 0;
+                for (int i = 0; i < tries; i++) {
+                    try {
+                        CompletableFuture<Message> result = pipeline.submit(message(i), "Stored");
+                        if (result.isCompletedExceptionally()) {
+                            CompletionException e = assertThrows(CompletionException.class, result::join);
+                            assertTrue(e.getCause() instanceof RejectedExecutionException);
+                            turnedAway++;
+                        } else {
+                            accepted.add(result);
+                        }
+                    } catch (RejectedExecutionException e) {
+                        assertEquals(SendPipeline.OverflowPolicy.FAIL_FAST, policy);
+                        turnedAway++;
+                    }
+                    Thread.sleep(1); // Give the stages a moment to pass messages along
+                }
+                assertTrue(turnedAway > 0, policy + " turns messages away once the pipeline is full");
+                assertEquals(turnedAway, policy == SendPipeline.OverflowPolicy.DROP_NEWEST
+                        ? pipeline.getDroppedCount() : pipeline.getRejectedCount());
+                assertTrue(pipeline.getQueueDepths()[0] > 0);
+                diskReady.countDown();
+            }
+            pipeline.close();
+            for (CompletableFuture<Message> future : accepted) {
+                assertEquals("Stored", future.get(10, TimeUnit.SECONDS).getMessageStatus());
+            }
+            assertEquals(accepted.size(), report.getMessageCount(), policy + " keeps every message it accepted");
+            assertThrows(RejectedExecutionException.class, () -> pipeline.submit(message(tries), "Stored"));
+        }
+    }
+
+    @Test
+    public void testStageKeepsGoingAfterABatchThrows() throws Exception {
+        // A report that breaks on one particular message, like a bug in a stage would
+        Report report = new Report() {
+            @Override
+            public synchronized void addMessages(List<Message> messages) {
+                for (Message msg : messages) {
+                    if (msg.getMessagePayload().equals("Message 1")) {
+                        throw new IllegalStateException("Broken report");
+                    }
+                }
+                super.addMessages(messages);
+            }
+        };
+        try (SendPipeline pipeline = new SendPipeline(report, new MessageJsonStore(folder), new MessageBroker(MessageBroker.DEFAULT_MAILBOX_CAPACITY), 4, 1,
+                SendPipeline.OverflowPolicy.BLOCK)) {
+            CompletableFuture<Message> first = pipeline.submit(message(0), "Stored");
+            CompletableFuture<Message> broken = pipeline.submit(message(1), "Stored");
+            CompletableFuture<Message> after = pipeline.submit(message(2), "Stored");
+            assertEquals("Stored", first.get(10, TimeUnit.SECONDS).getMessageStatus());
+            CompletionException e = assertThrows(CompletionException.class, broken::join);
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertEquals("Stored", after.get(10, TimeUnit.SECONDS).getMessageStatus(), "The index stage is still running");
+            assertEquals(2, report.getMessageCount());
+            assertEquals(1, pipeline.getFailedCount());
+        }
+    }
+
+    @Test
+    public void testCloseWhileSubmittersWaitLosesNothing() throws Exception {
+        CountDownLatch diskReady = new CountDownLatch(1);
+        MessageJsonStore slowStore = new MessageJsonStore(folder) {
+            @Override
+            public Path save(Message msg) throws IOException {
+                try {
+                    diskReady.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return super.save(msg);
+            }
+        };
+        SendPipeline pipeline = new SendPipeline(new Report(), slowStore, new MessageBroker(MessageBroker.DEFAULT_MAILBOX_CAPACITY), 1, 1,
+                SendPipeline.OverflowPolicy.BLOCK);
+        List<CompletableFuture<Message>> accepted = new CopyOnWriteArrayList<>();
+        List<Thread> submitters = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            int number = i;
+            submitters.add(Thread.ofVirtual().start(() -> {
+                try {
+                    accepted.add(pipeline.submit(message(number), "Stored"));
+                } catch (RejectedExecutionException e) {
+                    // Came in after close, which is fine
+                }
+            }));
+        }
+        Thread.sleep(100); // The queues are full by now and most submitters are waiting for room
+        Thread closer = Thread.ofVirtual().start(pipeline::close);
+        Thread.sleep(50);
+        diskReady.countDown();
+        closer.join();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        // Every message that got in was saved; none was left behind the end marker with no answer
+        for (CompletableFuture<Message> future : accepted) {
+            assertEquals("Stored", future.get(10, TimeUnit.SECONDS).getMessageStatus());
+        }
+        assertEquals(accepted.size(), pipeline.getCompletedCount());
+    }
+
+    private static Message message(int number) {
+        return new Message(String.format("%010d", number), "Funiwe", "+27834557896", "Message " + number, "New");
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testBatchingThroughput() throws Exception {
+        int count = Integer.getInteger("quickchat.bench.commands", 2_000);
+        int producers = 8;
+        StringBuilder summary = new StringBuilder("Send pipeline (" + count + " messages, " + producers + " producers):");
+        for (int batchSize : new int[] {1, 32}) {
+            Path directory = Files.createDirectories(folder.resolve("batch-" + batchSize));
+            Report report = new Report();
+            SendPipeline pipeline = new SendPipeline(report, new MessageJsonStore(directory), new MessageBroker(MessageBroker.DEFAULT_MAILBOX_CAPACITY),
+                    SendPipeline.DEFAULT_QUEUE_CAPACITY, batchSize, SendPipeline.OverflowPolicy.BLOCK);
+            long start = System.nanoTime();
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int first = p;
+                threads.add(Thread.ofVirtual().start(() -> {
+                    for (int i = first; i < count; i += producers) {
+                        pipeline.submit(new Message(String.format("%010d", i), "Funiwe", String.format("+2783%07d", i % 500),
+                                "Message number " + i, "New"), "Sent");
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            pipeline.close();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            assertEquals(count, report.getMessageCount());
+            assertEquals(count, pipeline.getCompletedCount());
+            summary.append(String.format("%n batch %d: %,.0f messages/s%n%s", batchSize, count / seconds, pipeline.getStatistics()));
+        }
+        System.out.println(summary);
+    }
+}
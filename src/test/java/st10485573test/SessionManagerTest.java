@@ -0,0 +1,112 @@
+package st10485573test;
+
+import st10485573.SessionManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the SessionManager, using a fake clock so expiry can be tested without waiting.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class SessionManagerTest {
+
+    private static final long TIMEOUT = 10_000;
+    private static final long TICK = 1_000;
+
+    private AtomicLong clock;
+    private SessionManager sessions;
+
+    @BeforeEach
+    public void setUp() {
+        clock = new AtomicLong(1_000_000);
+        sessions = new SessionManager(TIMEOUT, TICK, clock::get);
+    }
+
+    @Test
+    public void testTokensAreUniqueAndValidate() {
+        String first = sessions.createSession("kyl_1");
+        String second = sessions.createSession("kyl_1");
+        assertNotEquals(first, second);
+        assertEquals("kyl_1", sessions.validate(first));
+        assertNull(sessions.validate("made-up-token"));
+        assertNull(sessions.validate(null));
+    }
+
+    @Test
+    public void testIdleSessionExpires() {
+        String token = sessions.createSession("kyl_1");
+        clock.addAndGet(TIMEOUT + 1);
+        assertNull(sessions.validate(token));
+    }
+
+    @Test
+    public void testUsingASessionKeepsItAlive() {
+        String token = sessions.createSession("kyl_1");
+        for (int i = 0; i < 5; i++) {
+            clock.addAndGet(TIMEOUT / 2);
+            sessions.sweep();
+            assertEquals("kyl_1", sessions.validate(token));
+        }
+        assertEquals(1, sessions.getActiveSessionCount());
+    }
+
+    @Test
+    public void testSweepRemovesOnlyIdleSessions() {
+        String idle = sessions.createSession("idle_");
+        String busy = sessions.createSession("busy_");
+
+        clock.addAndGet(TIMEOUT - TICK);
+        sessions.validate(busy);
+        clock.addAndGet(3 * TICK);
+
+        assertEquals(1, sessions.sweep());
+        assertEquals(1, sessions.getActiveSessionCount());
+        assertNull(sessions.validate(idle));
+        assertEquals("busy_", sessions.validate(busy));
+
+        // Long after everything went idle, one sweep clears the rest
+        clock.addAndGet(10 * TIMEOUT);
+        assertEquals(1, sessions.sweep());
+        assertEquals(0, sessions.getActiveSessionCount());
+    }
+
+    @Test
+    public void testInvalidateEndsSession() {
+        String token = sessions.createSession("kyl_1");
+        sessions.invalidate(token);
+        assertNull(sessions.validate(token));
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testValidationThroughputWithManyLiveSessions() {
+        // Run with -Dquickchat.bench.sessions=2000000 (and enough heap) to try millions of sessions
+        int count = Integer.getInteger("quickchat.bench.sessions", 200_000);
+        String[] tokens = new String[count];
+        for (int i = 0; i < count; i++) {
+            tokens[i] = sessions.createSession("u_" + (i % 1000));
+        }
+
+        int lookups = 2_000_000;
+        long start = System.nanoTime();
+        int valid = 0;
+        for (int i = 0; i < lookups; i++) {
+            if (sessions.validate(tokens[(int) ((i * 2_654_435_761L) % count)]) != null) valid++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertEquals(lookups, valid);
+
+        // Sweeping one tick only touches that tick's bucket, which is empty here
+        clock.addAndGet(TICK);
+        long sweepStart = System.nanoTime();
+        assertEquals(0, sessions.sweep());
+        long sweepNanos = System.nanoTime() - sweepStart;
+
+        System.out.printf("SessionManager: %,d live sessions, %.0f validations/sec, one-tick sweep %d us%n",
+                count, lookups / seconds, sweepNanos / 1000);
+    }
+}
@@ -0,0 +1,100 @@
+package st10485573test;
+
+import st10485573.UserAccount;
+import st10485573.UserDirectory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JUnit tests for the UserDirectory, including registrations from many threads at once.
+ *
+ * @author Funiwe Ngobeni
+ */
+public class UserDirectoryTest {
+
+    private UserDirectory directory;
+
+    @BeforeEach
+    public void setUp() {
+        directory = new UserDirectory();
+    }
+
+    @Test
+    public void testRegisterAndFind() {
+        UserAccount account = new UserAccount("kyl_1", "Passw0rd!", "+27123456789", "John", "Doe");
+        assertEquals(UserDirectory.Outcome.ADDED, directory.register(account));
+        assertSame(account, directory.find("kyl_1"));
+        assertNull(directory.find("nobody"));
+        assertNull(directory.find(null));
+    }
+
+    @Test
+    public void testDuplicateUsernameIsRejected() {
+        directory.register(new UserAccount("kyl_1", "Passw0rd!", "+27123456789", "John", "Doe"));
+        UserAccount second = new UserAccount("kyl_1", "Passw0rd!", "+27987654321", "Jane", "Doe");
+        assertEquals(UserDirectory.Outcome.USERNAME_TAKEN, directory.register(second));
+
+        // The second user's cell number must not stay claimed after the failed attempt
+        assertFalse(directory.isCellPhoneNumberTaken("+27987654321"));
+        assertEquals(1, directory.size());
+    }
+
+    @Test
+    public void testDuplicateCellNumberIsRejectedInAnyFormat() {
+        directory.register(new UserAccount("kyl_1", "Passw0rd!", "+27123456789", "John", "Doe"));
+        UserAccount second = new UserAccount("jan_1", "Passw0rd!", "0123456789", "Jane", "Doe");
+        assertEquals(UserDirectory.Outcome.CELL_NUMBER_TAKEN, directory.register(second));
+        assertNull(directory.find("jan_1"));
+    }
+
+    @Test
+    public void testTakenUsernameIsReportedBeforeTakenCellNumber() {
+        directory.register(new UserAccount("kyl_1", "Passw0rd!", "+27123456789", "John", "Doe"));
+        // Same username and same number: the username is what the user has to change first
+        UserAccount same = new UserAccount("kyl_1", "Passw0rd!", "0123456789", "John", "Doe");
+        assertEquals(UserDirectory.Outcome.USERNAME_TAKEN, directory.register(same));
+        assertEquals(1, directory.size());
+    }
+
+    @Test
+    public void testConcurrentRegistrationsStayUnique() throws Exception {
+        // Every thread tries to register the same users, so each one must be added exactly once
+        int threads = 8;
+        int users = 20_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                int added = 0;
+                for (int i = 0; i < users; i++) {
+                    UserAccount account = new UserAccount("u_" + i, "Passw0rd!", "+27" + (100_000_000 + i), "First", "Last");
+                    if (directory.register(account) == UserDirectory.Outcome.ADDED) {
+                        added++;
+                    }
+                }
+                return added;
+            }));
+        }
+
+        start.countDown();
+        int totalAdded = 0;
+        for (Future<Integer> result : results) {
+            totalAdded += result.get();
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(users, totalAdded);
+        assertEquals(users, directory.size());
+    }
+}